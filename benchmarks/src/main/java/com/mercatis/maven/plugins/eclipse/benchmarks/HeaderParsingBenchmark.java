@@ -0,0 +1,148 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Manifest;
+
+import org.eclipse.osgi.util.ManifestElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+
+import com.mercatis.maven.plugins.eclipse.HeaderTokenizer;
+import com.mercatis.maven.plugins.eclipse.ManifestReader;
+
+/**
+ * Reading manifests out of bundle jars and parsing their Export-Package,
+ * Import-Package and Require-Bundle headers, with
+ * {@link ManifestElement#parseHeader(String, String)} as a baseline and with
+ * the {@link HeaderTokenizer} used by the scanner.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HeaderParsingBenchmark {
+
+	/**
+	 * The headers of a synthetic target platform, kept in memory.
+	 */
+	@State(Scope.Benchmark)
+	public static class Headers {
+
+		@Param({ "100", "1000", "10000" })
+		public int bundles;
+
+		public List<String> exportPackage = new ArrayList<String>();
+
+		public List<String> importPackage = new ArrayList<String>();
+
+		public List<String> requireBundle = new ArrayList<String>();
+
+		@Setup
+		public void collectHeaders() {
+			for (Manifest manifest : new SyntheticTargetPlatform(bundles, 0).getManifests()) {
+				add(exportPackage, manifest, Constants.EXPORT_PACKAGE);
+				add(importPackage, manifest, Constants.IMPORT_PACKAGE);
+				add(requireBundle, manifest, Constants.REQUIRE_BUNDLE);
+			}
+		}
+
+		private static void add(List<String> headers, Manifest manifest, String name) {
+			String value = manifest.getMainAttributes().getValue(name);
+			if (value != null)
+				headers.add(value);
+		}
+	}
+
+	@Benchmark
+	public void parseExportPackage(Headers headers, Blackhole blackhole) throws BundleException {
+		parse(Constants.EXPORT_PACKAGE, headers.exportPackage, blackhole);
+	}
+
+	@Benchmark
+	public void parseImportPackage(Headers headers, Blackhole blackhole) throws BundleException {
+		parse(Constants.IMPORT_PACKAGE, headers.importPackage, blackhole);
+	}
+
+	@Benchmark
+	public void parseRequireBundle(Headers headers, Blackhole blackhole) throws BundleException {
+		parse(Constants.REQUIRE_BUNDLE, headers.requireBundle, blackhole);
+	}
+
+	@Benchmark
+	public void tokenizeExportPackage(Headers headers, Blackhole blackhole) throws BundleException {
+		tokenize(headers.exportPackage, blackhole);
+	}
+
+	@Benchmark
+	public void tokenizeImportPackage(Headers headers, Blackhole blackhole) throws BundleException {
+		tokenize(headers.importPackage, blackhole);
+	}
+
+	@Benchmark
+	public void tokenizeRequireBundle(Headers headers, Blackhole blackhole) throws BundleException {
+		tokenize(headers.requireBundle, blackhole);
+	}
+
+	@Benchmark
+	public void readManifests(TargetPlatformState state, Blackhole blackhole) throws IOException {
+		for (File bundle : state.pluginFolder.listFiles()) {
+			blackhole.consume(ManifestReader.read(bundle));
+		}
+	}
+
+	private static void parse(String name, List<String> headers, Blackhole blackhole) throws BundleException {
+		for (String header : headers) {
+			for (ManifestElement element : ManifestElement.parseHeader(name, header)) {
+				blackhole.consume(element.getValueComponents());
+				blackhole.consume(element.getAttribute(Constants.VERSION_ATTRIBUTE));
+			}
+		}
+	}
+
+	private static void tokenize(List<String> headers, Blackhole blackhole) throws BundleException {
+		HeaderTokenizer tokenizer = new HeaderTokenizer();
+		for (String header : headers) {
+			tokenizer.reset(header);
+			while (tokenizer.nextClause()) {
+				for (int i = 0; i < tokenizer.getValueCount(); i++) {
+					blackhole.consume(tokenizer.getValue(i).length());
+				}
+				blackhole.consume(tokenizer.getAttribute(Constants.VERSION_ATTRIBUTE));
+			}
+		}
+	}
+}
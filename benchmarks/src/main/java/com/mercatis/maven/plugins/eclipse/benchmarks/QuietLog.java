@@ -0,0 +1,61 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse.benchmarks;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * A log that only prints warnings and errors, so logging doesn't dominate
+ * the measurements.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class QuietLog extends SystemStreamLog {
+
+	@Override
+	public void debug(CharSequence content) {
+	}
+
+	@Override
+	public void debug(CharSequence content, Throwable error) {
+	}
+
+	@Override
+	public void debug(Throwable error) {
+	}
+
+	@Override
+	public void info(CharSequence content) {
+	}
+
+	@Override
+	public void info(CharSequence content, Throwable error) {
+	}
+
+	@Override
+	public void info(Throwable error) {
+	}
+
+	@Override
+	public boolean isDebugEnabled() {
+		return false;
+	}
+
+	@Override
+	public boolean isInfoEnabled() {
+		return false;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mercatis.maven.plugins.eclipse.BuildMetrics;
+import com.mercatis.maven.plugins.eclipse.BundleDescriptor;
+import com.mercatis.maven.plugins.eclipse.BundleGraph;
+import com.mercatis.maven.plugins.eclipse.BundleIndex;
+import com.mercatis.maven.plugins.eclipse.TargetPlatformModel;
+
+/**
+ * Transitive resolution on a scanned target platform: building the bundle
+ * graph, resolving the closure of every bundle on a fresh graph and
+ * resolving the deepest bundle on a graph whose closures are memoized.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResolutionBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Scanned extends TargetPlatformState {
+
+		public List<BundleDescriptor> descriptors;
+
+		public TargetPlatformModel model;
+
+		public BundleGraph.Requirements top;
+
+		@Setup
+		public void scan() throws IOException, MojoExecutionException {
+			model = TargetPlatformModel.scan(location, ENVIRONMENTS, getThreads(), new BuildMetrics("benchmark"), LOG);
+			descriptors = BundleIndex.load(location, LOG).update(pluginFolder);
+			top = model.getBundleGraph().resolve(null, platform.getTopBundle(), null);
+			model.getBundleGraph().getClosure(top);
+		}
+
+		public BundleGraph createGraph() {
+			return new BundleGraph(descriptors, model.getSymbolicNameLookup(), model.getExportPackageIndex(),
+					model.getFragmentHostLookup());
+		}
+	}
+
+	@Benchmark
+	public BundleGraph buildGraph(Scanned state) {
+		return state.createGraph();
+	}
+
+	@Benchmark
+	public void resolveAll(Scanned state, Blackhole blackhole) {
+		BundleGraph graph = state.createGraph();
+		for (BundleDescriptor descriptor : state.descriptors) {
+			String symbolicName = descriptor.getSymbolicName();
+			if (graph.getFile(symbolicName) != null)
+				blackhole.consume(graph.getClosure(graph.resolve(null, symbolicName, null)));
+		}
+	}
+
+	@Benchmark
+	public List<String> resolveTopMemoized(Scanned state) {
+		return state.model.getBundleGraph().getClosure(state.top);
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mercatis.maven.plugins.eclipse.BuildMetrics;
+import com.mercatis.maven.plugins.eclipse.BundleIndex;
+import com.mercatis.maven.plugins.eclipse.TargetPlatformLayout;
+import com.mercatis.maven.plugins.eclipse.TargetPlatformModel;
+
+/**
+ * Scanning a target platform the way gatherDependencies does before it
+ * resolves: updating the bundle index, matching fragments against all
+ * environments and building the bundle graphs. <code>scanCold</code> starts
+ * without a bundle index and reads every manifest, <code>scanWarm</code>
+ * reuses the index of the previous invocation.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class WithoutIndex extends TargetPlatformState {
+
+		@Setup(Level.Invocation)
+		public void deleteIndex() {
+			TargetPlatformLayout.getMetadataFile(location, BundleIndex.INDEX_FILE).delete();
+		}
+	}
+
+	@Benchmark
+	public TargetPlatformModel scanCold(WithoutIndex state) throws MojoExecutionException {
+		return TargetPlatformModel.scan(state.location, TargetPlatformState.ENVIRONMENTS, state.getThreads(),
+				new BuildMetrics("benchmark"), TargetPlatformState.LOG);
+	}
+
+	@Benchmark
+	public TargetPlatformModel scanWarm(TargetPlatformState state) throws MojoExecutionException {
+		return TargetPlatformModel.scan(state.location, TargetPlatformState.ENVIRONMENTS, state.getThreads(),
+				new BuildMetrics("benchmark"), TargetPlatformState.LOG);
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.osgi.framework.Constants;
+
+import com.mercatis.maven.plugins.eclipse.BundleDescriptor;
+import com.mercatis.maven.plugins.eclipse.TargetPlatformLayout;
+
+/**
+ * Generates synthetic target platforms of a given size. The bundles are
+ * shaped like those of an eclipse SDK:
+ * <ul>
+ * <li>every bundle exports a few versioned packages, some with
+ * <code>uses</code> directives,</li>
+ * <li>bundles require and import from bundles generated shortly before them,
+ * which yields deep dependency chains, with the occasional reexport,
+ * optional or unsatisfiable requirement and a few cycles,</li>
+ * <li>every twentieth bundle is a host for win32, linux and macosx
+ * fragments carrying an Eclipse-PlatformFilter.</li>
+ * </ul>
+ * The same size and seed always produce the same platform.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class SyntheticTargetPlatform {
+
+	/**
+	 * The symbolic name prefix of all generated bundles.
+	 */
+	public static final String PREFIX = "org.example.bundle";
+
+	private static final int WINDOW = 50;
+
+	private static final int FRAGMENT_HOST_EVERY = 20;
+
+	private static final String[][] ENVIRONMENTS = {
+			{ "win32", "win32", "x86" },
+			{ "linux", "gtk", "x86_64" },
+			{ "macosx", "cocoa", "x86_64" } };
+
+	private final int bundles;
+
+	private final Random random;
+
+	private final List<Manifest> manifests = new ArrayList<Manifest>();
+
+	private final List<List<String>> exports = new ArrayList<List<String>>();
+
+	/**
+	 * @param bundles
+	 *            the number of bundles and fragments to generate
+	 */
+	public SyntheticTargetPlatform(int bundles, long seed) {
+		this.bundles = bundles;
+		this.random = new Random(seed);
+		generate();
+	}
+
+	/**
+	 * Writes a target platform from the command line:
+	 * <code>SyntheticTargetPlatform &lt;location&gt; &lt;bundles&gt; [seed]</code>
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: SyntheticTargetPlatform <targetPlatformLocation> <bundles> [seed]");
+			System.exit(1);
+		}
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+		new SyntheticTargetPlatform(Integer.parseInt(args[1]), seed).write(new File(args[0]));
+	}
+
+	/**
+	 * @return the manifests of all bundles and fragments, hosts before their
+	 *         fragments
+	 */
+	public List<Manifest> getManifests() {
+		return manifests;
+	}
+
+	/**
+	 * @return the symbolic name of the last generated host, the bundle with
+	 *         the deepest dependencies
+	 */
+	public String getTopBundle() {
+		return PREFIX + (exports.size() - 1);
+	}
+
+	/**
+	 * Writes every manifest into a jar in the plugin folder of the given
+	 * target platform.
+	 */
+	public void write(File targetPlatformLocation) throws IOException {
+		File pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		if (!pluginFolder.isDirectory() && !pluginFolder.mkdirs())
+			throw new IOException("Unable to create " + pluginFolder.getAbsolutePath());
+
+		byte[] content = new byte[2048];
+		for (Manifest manifest : manifests) {
+			Attributes attributes = manifest.getMainAttributes();
+			String symbolicName = BundleDescriptor.parseSymbolicName(attributes.getValue(Constants.BUNDLE_SYMBOLICNAME));
+			String version = attributes.getValue(Constants.BUNDLE_VERSION);
+			JarOutputStream out = new JarOutputStream(new FileOutputStream(new File(pluginFolder, symbolicName + "_" + version + ".jar")), manifest);
+			try {
+				random.nextBytes(content);
+				out.putNextEntry(new ZipEntry(symbolicName.replace('.', '/') + "/Activator.class"));
+				out.write(content);
+				out.closeEntry();
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	private void generate() {
+		for (int host = 0; manifests.size() < bundles; host++) {
+			manifests.add(createBundle(host));
+			if (host % FRAGMENT_HOST_EVERY == 0) {
+				for (String[] environment : ENVIRONMENTS) {
+					if (manifests.size() < bundles)
+						manifests.add(createFragment(host, environment));
+				}
+			}
+		}
+	}
+
+	private Manifest createBundle(int index) {
+		String symbolicName = PREFIX + index;
+		String version = getVersion(index);
+		Manifest manifest = createManifest(symbolicName + ";singleton:=true", version);
+		Attributes attributes = manifest.getMainAttributes();
+
+		List<String> packages = new ArrayList<String>();
+		int packageCount = 1 + random.nextInt(5);
+		for (int i = 0; i < packageCount; i++) {
+			packages.add(symbolicName + ".p" + i);
+		}
+		exports.add(packages);
+
+		StringBuilder exportPackage = new StringBuilder();
+		for (int i = 0; i < packages.size(); i++) {
+			append(exportPackage, packages.get(i) + ";version=\"" + version + "\"");
+			if (i > 0 && random.nextInt(3) == 0)
+				exportPackage.append(";uses:=\"").append(packages.get(0)).append(',').append(packages.get(i - 1)).append('"');
+		}
+		attributes.putValue(Constants.EXPORT_PACKAGE, exportPackage.toString());
+
+		StringBuilder requireBundle = new StringBuilder();
+		StringBuilder importPackage = new StringBuilder();
+		if (index > 0) {
+			int requires = random.nextInt(4);
+			for (int i = 0; i < requires; i++) {
+				String required = PREFIX + pickEarlier(index);
+				if (random.nextInt(5) == 0)
+					required += ";bundle-version=\"[1.0.0,2.0.0)\"";
+				if (random.nextInt(7) == 0)
+					required += ";visibility:=reexport";
+				if (random.nextInt(10) == 0)
+					required += ";resolution:=optional";
+				append(requireBundle, required);
+			}
+			int imports = random.nextInt(7);
+			for (int i = 0; i < imports; i++) {
+				List<String> candidates = exports.get(pickEarlier(index));
+				String imported = candidates.get(random.nextInt(candidates.size())) + ";version=\"[1.0.0,2.0.0)\"";
+				if (random.nextInt(10) == 0)
+					imported += ";resolution:=optional";
+				append(importPackage, imported);
+			}
+		}
+		// a few requirements on later bundles close cycles
+		if (random.nextInt(50) == 0)
+			append(requireBundle, PREFIX + (index + 1 + random.nextInt(10)) + ";resolution:=optional");
+		if (random.nextInt(100) == 0)
+			append(importPackage, "org.example.missing.p" + index + ";resolution:=optional");
+
+		if (requireBundle.length() > 0)
+			attributes.putValue(Constants.REQUIRE_BUNDLE, requireBundle.toString());
+		if (importPackage.length() > 0)
+			attributes.putValue(Constants.IMPORT_PACKAGE, importPackage.toString());
+		return manifest;
+	}
+
+	private Manifest createFragment(int host, String[] environment) {
+		String symbolicName = PREFIX + host + "." + environment[0] + "." + environment[1] + "." + environment[2];
+		Manifest manifest = createManifest(symbolicName, getVersion(host));
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.putValue(Constants.FRAGMENT_HOST, PREFIX + host + ";bundle-version=\"[1.0.0,2.0.0)\"");
+		attributes.putValue(BundleDescriptor.PLATFORM_FILTER, "(& (osgi.os=" + environment[0] + ") (osgi.ws="
+				+ environment[1] + ") (osgi.arch=" + environment[2] + "))");
+		return manifest;
+	}
+
+	private static Manifest createManifest(String symbolicName, String version) {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+		attributes.putValue(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+		attributes.putValue(Constants.BUNDLE_VERSION, version);
+		return manifest;
+	}
+
+	private int pickEarlier(int index) {
+		return Math.max(0, index - 1 - random.nextInt(Math.min(index, WINDOW)));
+	}
+
+	private static String getVersion(int index) {
+		return "1." + (index % 5) + "." + (index % 3) + ".v2008";
+	}
+
+	private static void append(StringBuilder header, String clause) {
+		if (header.length() > 0)
+			header.append(',');
+		header.append(clause);
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.mercatis.maven.plugins.eclipse.TargetEnvironment;
+import com.mercatis.maven.plugins.eclipse.TargetPlatformLayout;
+
+/**
+ * A synthetic target platform written to a temporary folder for the duration
+ * of a benchmark trial.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+@State(Scope.Benchmark)
+public class TargetPlatformState {
+
+	/**
+	 * The environments fragments are matched against, as configured for a
+	 * build producing win32, linux and macosx products.
+	 */
+	public static final List<TargetEnvironment> ENVIRONMENTS = Arrays.asList(
+			new TargetEnvironment("win32", "win32", "x86", "en"),
+			new TargetEnvironment("linux", "gtk", "x86_64", "en"),
+			new TargetEnvironment("macosx", "cocoa", "x86_64", "en"));
+
+	public static final QuietLog LOG = new QuietLog();
+
+	@Param({ "100", "1000", "10000" })
+	public int bundles;
+
+	public SyntheticTargetPlatform platform;
+
+	public File location;
+
+	public File pluginFolder;
+
+	@Setup
+	public void createPlatform() throws IOException {
+		platform = new SyntheticTargetPlatform(bundles, 0);
+		location = File.createTempFile("target-platform", "");
+		location.delete();
+		platform.write(location);
+		pluginFolder = TargetPlatformLayout.getPluginFolder(location);
+	}
+
+	@TearDown
+	public void deletePlatform() throws IOException {
+		FileUtils.deleteDirectory(location);
+	}
+
+	public int getThreads() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+}
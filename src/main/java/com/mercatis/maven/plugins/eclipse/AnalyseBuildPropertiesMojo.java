@@ -61,19 +61,33 @@ public class AnalyseBuildPropertiesMojo extends AbstractMojo {
 	 */
 	private File basedir;
 	
+	/**
+	 * @parameter expression="${reactorProjects}"
+	 * @readonly
+	 */
+	private List<MavenProject> reactorProjects;
+	
 	private Map<String,Resource> resourcesLookup;
 	
+	private BuildMetrics metrics;
+	
 	public void execute() throws MojoExecutionException, MojoFailureException {
-		initializeResourcesLookup();
-		Properties props = readBuildProperties();
-		
-		addBinIncludesToResources(props);
-		
-		if (getLog().isDebugEnabled()) {
-			logDebugResources();
+		metrics = new BuildMetrics("analyseBuildProperties");
+		try {
+			metrics.phase("analyse");
+			initializeResourcesLookup();
+			Properties props = readBuildProperties();
+			
+			addBinIncludesToResources(props);
+			
+			if (getLog().isDebugEnabled()) {
+				logDebugResources();
+			}
+	
+			adjustJarMojoConfiguration();
+		} finally {
+			MetricsReport.record(project, reactorProjects, metrics, getLog());
 		}
-
-		adjustJarMojoConfiguration();
 	}
 
 	@SuppressWarnings("unchecked")
@@ -166,5 +180,6 @@ public class AnalyseBuildPropertiesMojo extends AbstractMojo {
 	private void addResourceFile(File folder, String name) {
 		Resource resource = addResourceFolder(folder);
 		resource.addInclude(name);
+		metrics.count("resources.added", 1);
 	}
 }
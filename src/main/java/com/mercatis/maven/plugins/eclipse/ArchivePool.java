@@ -0,0 +1,277 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Keeps a bounded number of archives open for the mojos of a build, so
+ * threads and modules reading the same package share one {@link ZipFile}
+ * and its central directory instead of each opening their own. Bundles whose
+ * manifest is read directly from the archive are held as a
+ * {@link FileChannel}, within the same bound.
+ * <p>
+ * An archive is {@link #lease(File) leased} and the lease closed once it has
+ * been read. Archives nobody leases are closed in least recently used order
+ * as soon as more than the maximum number of archives is open, leased ones
+ * only once their last lease is closed. An archive that has been changed on
+ * disk since it was opened is opened again. Mojos call
+ * {@link #closeIdle(Log)} when they are done, so no file stays open between
+ * builds and a package can be replaced by the next one.
+ * <p>
+ * {@link ZipFile} is thread safe, a lease may be shared by the threads of an
+ * extraction. A channel is only read at explicit positions, so it may be
+ * shared as well.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public final class ArchivePool {
+
+	public static final int DEFAULT_MAXIMUM_OPEN = 16;
+
+	private static final ArchivePool SHARED = new ArchivePool(DEFAULT_MAXIMUM_OPEN);
+
+	private static final class Archive {
+
+		private final String key;
+
+		/** a {@link JarFile} or a {@link FileChannel} */
+		private final Closeable resource;
+
+		private final long length;
+
+		private final long lastModified;
+
+		private int leases;
+
+		/** removed from the pool, closed by its last lease */
+		private boolean retired;
+
+		Archive(String key, Closeable resource, long length, long lastModified) {
+			this.key = key;
+			this.resource = resource;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+
+		boolean isCurrent(long length, long lastModified) {
+			return this.length == length && this.lastModified == lastModified;
+		}
+	}
+
+	/**
+	 * An open archive leased by a caller.
+	 */
+	public final class Lease implements Closeable {
+
+		private final Archive archive;
+
+		private boolean released;
+
+		Lease(Archive archive) {
+			this.archive = archive;
+		}
+
+		public ZipFile getZipFile() {
+			return (ZipFile) archive.resource;
+		}
+
+		public JarFile getJarFile() {
+			return (JarFile) archive.resource;
+		}
+
+		/**
+		 * @return the channel of a lease opened by {@link #leaseChannel(File)}
+		 */
+		public FileChannel getChannel() {
+			return (FileChannel) archive.resource;
+		}
+
+		/**
+		 * Hands the archive back to the pool, closing it again has no effect.
+		 */
+		public void close() {
+			List<Closeable> closing;
+			synchronized (ArchivePool.this) {
+				if (released)
+					return;
+				released = true;
+				archive.leases--;
+				if (archive.retired) {
+					closing = new ArrayList<Closeable>(1);
+					if (archive.leases == 0)
+						closing.add(archive.resource);
+				} else {
+					closing = evict(maximumOpen);
+				}
+			}
+			closeAll(closing);
+		}
+	}
+
+	/** in access order, the least recently used archive first */
+	private final LinkedHashMap<String,Archive> archives = new LinkedHashMap<String,Archive>(16, 0.75f, true);
+
+	private int maximumOpen;
+
+	private long opened;
+
+	private long reused;
+
+	public ArchivePool(int maximumOpen) {
+		setMaximumOpen(maximumOpen);
+	}
+
+	/**
+	 * @return the pool shared by all mojos of a build
+	 */
+	public static ArchivePool getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Changes the number of archives kept open, closing idle archives above
+	 * it.
+	 */
+	public void setMaximumOpen(int maximumOpen) {
+		if (maximumOpen < 1)
+			throw new IllegalArgumentException("At least one archive has to be kept open, not " + maximumOpen);
+		List<Closeable> closing;
+		synchronized (this) {
+			this.maximumOpen = maximumOpen;
+			closing = evict(maximumOpen);
+		}
+		closeAll(closing);
+	}
+
+	/**
+	 * Opens an archive or leases the open one. The archive is a
+	 * {@link JarFile} whose signatures aren't verified.
+	 */
+	public Lease lease(File file) throws IOException {
+		return lease(file, false);
+	}
+
+	/**
+	 * Opens a channel reading an archive or leases the open one, for readers
+	 * that locate the entries they need themselves.
+	 */
+	public Lease leaseChannel(File file) throws IOException {
+		return lease(file, true);
+	}
+
+	private Lease lease(File file, boolean channel) throws IOException {
+		String key = (channel ? "channel:" : "zip:") + file.getAbsolutePath();
+		long length = file.length();
+		long lastModified = file.lastModified();
+		List<Closeable> stale = new ArrayList<Closeable>(1);
+		synchronized (this) {
+			Archive archive = archives.get(key);
+			if (archive != null && archive.isCurrent(length, lastModified)) {
+				archive.leases++;
+				reused++;
+				return new Lease(archive);
+			}
+			retire(archive, stale);
+		}
+		closeAll(stale);
+
+		// outside the lock, the central directory of a big package takes a while to read
+		Closeable resource = channel ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : new JarFile(file, false);
+		Archive archive = new Archive(key, resource, length, lastModified);
+		List<Closeable> closing = new ArrayList<Closeable>();
+		synchronized (this) {
+			Archive concurrent = archives.get(key);
+			if (concurrent != null && concurrent.isCurrent(length, lastModified)) {
+				// another thread opened it meanwhile
+				concurrent.leases++;
+				reused++;
+				closing.add(resource);
+				archive = concurrent;
+			} else {
+				retire(concurrent, closing);
+				archive.leases++;
+				opened++;
+				archives.put(key, archive);
+				closing.addAll(evict(maximumOpen));
+			}
+		}
+		closeAll(closing);
+		return new Lease(archive);
+	}
+
+	/**
+	 * Closes every archive nobody leases, e.g. at the end of a mojo.
+	 */
+	public void closeIdle(Log log) {
+		List<Closeable> closing;
+		synchronized (this) {
+			closing = evict(0);
+			log.debug("Closing " + closing.size() + " archives, opened " + opened + " and reused " + reused
+					+ " archives so far.");
+		}
+		closeAll(closing);
+	}
+
+	/**
+	 * Removes idle archives in least recently used order until at most the
+	 * given number of archives is open.
+	 *
+	 * @return the archives to close once the lock is released
+	 */
+	private List<Closeable> evict(int limit) {
+		List<Closeable> closing = new ArrayList<Closeable>();
+		for (Iterator<Archive> i = archives.values().iterator(); i.hasNext() && archives.size() > limit;) {
+			Archive archive = i.next();
+			if (archive.leases == 0) {
+				i.remove();
+				closing.add(archive.resource);
+			}
+		}
+		return closing;
+	}
+
+	private void retire(Archive archive, List<Closeable> closing) {
+		if (archive == null)
+			return;
+		archives.remove(archive.key);
+		archive.retired = true;
+		if (archive.leases == 0)
+			closing.add(archive.resource);
+	}
+
+	private static void closeAll(List<Closeable> closing) {
+		for (Closeable resource : closing) {
+			try {
+				resource.close();
+			} catch (IOException ex) {
+				// nothing is read from it anymore
+			}
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and counters of a single goal execution. A goal runs through
+ * consecutive phases, every phase is timed from its start to the start of
+ * the next one. Counters may be incremented from any thread.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class BuildMetrics {
+
+	public static final String BUNDLES_SCANNED = "bundles.scanned";
+
+	public static final String MANIFESTS_PARSED = "manifests.parsed";
+
+	public static final String RESOLUTION_EDGES = "resolution.edges";
+
+	public static final String BYTES_DOWNLOADED = "bytes.downloaded";
+
+	public static final String ENTRIES_EXTRACTED = "entries.extracted";
+
+	public static final String BYTES_EXTRACTED = "bytes.extracted";
+
+	public static final String FILES_COPIED = "files.copied";
+
+	public static final String BYTES_COPIED = "bytes.copied";
+
+	private final String goal;
+
+	private final long start = System.currentTimeMillis();
+
+	private final Map<String,Long> phases = new LinkedHashMap<String,Long>();
+
+	private final ConcurrentMap<String,AtomicLong> counters = new ConcurrentSkipListMap<String,AtomicLong>();
+
+	private String phase;
+
+	private long phaseStart;
+
+	private long millis = -1;
+
+	public BuildMetrics(String goal) {
+		this.goal = goal;
+	}
+
+	/**
+	 * Ends the current phase and starts the given one.
+	 */
+	public synchronized void phase(String name) {
+		endPhase();
+		phase = name;
+		phaseStart = System.currentTimeMillis();
+	}
+
+	/**
+	 * Ends the current phase and the execution.
+	 */
+	public synchronized void finish() {
+		endPhase();
+		if (millis < 0)
+			millis = System.currentTimeMillis() - start;
+	}
+
+	private void endPhase() {
+		if (phase == null)
+			return;
+		Long previous = phases.get(phase);
+		long duration = System.currentTimeMillis() - phaseStart;
+		phases.put(phase, previous == null ? duration : previous + duration);
+		phase = null;
+	}
+
+	public void count(String name, long delta) {
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(name, created);
+			if (counter == null)
+				counter = created;
+		}
+		counter.addAndGet(delta);
+	}
+
+	public String getGoal() {
+		return goal;
+	}
+
+	/**
+	 * @return the duration of the execution, <code>-1</code> until it has
+	 *         finished
+	 */
+	public synchronized long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * @return the duration of every finished phase, in the order they ran
+	 */
+	public synchronized Map<String,Long> getPhases() {
+		return new LinkedHashMap<String,Long>(phases);
+	}
+
+	/**
+	 * @return the value of every counter, sorted by name
+	 */
+	public Map<String,Long> getCounters() {
+		Map<String,Long> values = new LinkedHashMap<String,Long>();
+		for (Map.Entry<String,AtomicLong> counter : counters.entrySet()) {
+			values.put(counter.getKey(), counter.getValue().get());
+		}
+		return values;
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+
+import org.osgi.framework.Constants;
+
+/**
+ * The manifest headers of a single bundle in the target platform, together
+ * with the size and modification time of the bundle they were read from.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class BundleDescriptor {
+
+	public static final String PLATFORM_FILTER = "Eclipse-PlatformFilter";
+
+	/**
+	 * The manifest headers kept for every bundle. Changing this list requires
+	 * a new {@link BundleIndex} format version.
+	 */
+	static final String[] HEADERS = new String[] {
+			Constants.BUNDLE_SYMBOLICNAME, // first, see getSymbolicName()
+			Constants.BUNDLE_VERSION,
+			Constants.FRAGMENT_HOST,
+			PLATFORM_FILTER,
+			Constants.EXPORT_PACKAGE,
+			Constants.IMPORT_PACKAGE,
+			Constants.REQUIRE_BUNDLE };
+
+	private final File file;
+
+	private final long length;
+
+	private final long lastModified;
+
+	private final String[] headers;
+
+	private final String symbolicName;
+
+	BundleDescriptor(File file, long length, long lastModified, String[] headers) {
+		this.file = file;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.headers = headers;
+		this.symbolicName = parseSymbolicName(headers[0]);
+	}
+
+	/**
+	 * Creates a descriptor from the main attributes of a manifest. A bundle
+	 * without manifest is passed <code>null</code> attributes.
+	 */
+	static BundleDescriptor create(File file, long length, long lastModified, Attributes attributes) {
+		String[] headers = new String[HEADERS.length];
+		if (attributes != null) {
+			for (int i = 0; i < HEADERS.length; i++) {
+				headers[i] = attributes.getValue(HEADERS[i]);
+			}
+		}
+		return new BundleDescriptor(file, length, lastModified, headers);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return the raw value of the given manifest header or <code>null</code>
+	 *         if the bundle doesn't declare it
+	 */
+	public String getHeader(String name) {
+		for (int i = 0; i < HEADERS.length; i++) {
+			if (HEADERS[i].equals(name))
+				return headers[i];
+		}
+		throw new IllegalArgumentException("Header " + name + " is not indexed.");
+	}
+
+	/**
+	 * @return the symbolic name without any directives or <code>null</code>
+	 *         if this isn't an OSGi bundle
+	 */
+	public String getSymbolicName() {
+		return symbolicName;
+	}
+
+	/**
+	 * Strips the directives from a Bundle-SymbolicName header.
+	 */
+	public static String parseSymbolicName(String header) {
+		if (header == null)
+			return null;
+		if (header.contains(";"))
+			header = header.substring(0, header.indexOf(";"));
+		return header.trim();
+	}
+
+	String[] getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return <code>true</code> if the file still has the size and
+	 *         modification time this descriptor was created from
+	 */
+	public boolean isUpToDate(File candidate) {
+		File stamp = getStampFile(candidate);
+		return stamp.length() == length && stamp.lastModified() == lastModified;
+	}
+
+	/**
+	 * @return <code>true</code> if the plugin folder entry of the given name
+	 *         is a bundle extracted into a directory rather than a jar
+	 */
+	static boolean isExploded(String name) {
+		return !name.endsWith("jar");
+	}
+
+	/**
+	 * @return the file whose size and modification time stand for the given
+	 *         bundle: the jar itself or the manifest of an exploded bundle
+	 */
+	static File getStampFile(File bundle) {
+		return isExploded(bundle.getName()) ? new File(bundle, JarFile.MANIFEST_NAME) : bundle;
+	}
+}
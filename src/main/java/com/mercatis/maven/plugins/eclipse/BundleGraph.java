@@ -0,0 +1,448 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.osgi.service.resolver.VersionRange;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+
+/**
+ * The Require-Bundle and Import-Package dependencies between the bundles of a
+ * target platform, built once from the scanned manifest headers.
+ * <p>
+ * Strongly connected components are collapsed with Tarjan's algorithm. The
+ * transitive closure of a component is computed on first use from the
+ * closures of its successors and memoized, so every bundle is resolved at
+ * most once no matter how many bundles depend on it.
+ * <p>
+ * Alternatively only the bundles visible under OSGi class loading rules are
+ * computed, see {@link #getVisibleBundles(Requirements)}.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class BundleGraph {
+
+	/**
+	 * The bundles a set of Require-Bundle and Import-Package headers resolves
+	 * to, together with the requirements that couldn't be satisfied.
+	 */
+	public static class Requirements {
+
+		private final Set<Integer> targets = new LinkedHashSet<Integer>();
+
+		private final Set<Integer> required = new LinkedHashSet<Integer>();
+
+		private final Set<Integer> reexported = new LinkedHashSet<Integer>();
+
+		private final Set<Integer> imported = new LinkedHashSet<Integer>();
+
+		private final List<String> problems = new ArrayList<String>();
+
+		public List<String> getProblems() {
+			return problems;
+		}
+	}
+
+	private final List<String> names = new ArrayList<String>();
+
+	private final List<File> files = new ArrayList<File>();
+
+	private final SymbolTable symbols;
+
+	/** the node of every symbol id, <code>-1</code> if it isn't a node */
+	private final int[] nodes;
+
+	private final ExportPackageIndex exportPackageIndex;
+
+	private final SymbolMap<Integer> fragmentHostLookup;
+
+	private int[][] edges;
+
+	/** the bundles every bundle requires with visibility:=reexport */
+	private int[][] reexports;
+
+	private List<List<String>> problems;
+
+	private int[] component;
+
+	private int[][] componentSuccessors;
+
+	private BitSet[] componentMembers;
+
+	private BitSet[] closures;
+
+	/**
+	 * @param bundles
+	 *            the bundles of the target platform
+	 * @param symbolicNameLookup
+	 *            the bundle file to use for every symbolic name
+	 * @param exportPackageIndex
+	 *            the packages exported by the bundles
+	 * @param fragmentHostLookup
+	 *            the symbol id of the fragment to attach to a host bundle
+	 */
+	public BundleGraph(List<BundleDescriptor> bundles, SymbolMap<File> symbolicNameLookup,
+			ExportPackageIndex exportPackageIndex, SymbolMap<Integer> fragmentHostLookup) {
+		this.symbols = exportPackageIndex.getSymbols();
+		this.exportPackageIndex = exportPackageIndex;
+		this.fragmentHostLookup = fragmentHostLookup;
+
+		nodes = new int[symbols.size()];
+		Arrays.fill(nodes, -1);
+		List<BundleDescriptor> descriptors = new ArrayList<BundleDescriptor>();
+		for (BundleDescriptor bundle : bundles) {
+			String symbolicName = bundle.getSymbolicName();
+			int id = symbols.lookup(symbolicName);
+			if (symbolicName == null || !bundle.getFile().equals(symbolicNameLookup.get(id)))
+				continue;
+			nodes[id] = names.size();
+			names.add(symbolicName);
+			files.add(bundle.getFile());
+			descriptors.add(bundle);
+		}
+
+		edges = new int[descriptors.size()][];
+		reexports = new int[descriptors.size()][];
+		problems = new ArrayList<List<String>>(descriptors.size());
+		for (int i = 0; i < descriptors.size(); i++) {
+			BundleDescriptor bundle = descriptors.get(i);
+			Requirements requirements = resolve(names.get(i), bundle.getHeader(Constants.REQUIRE_BUNDLE),
+					bundle.getHeader(Constants.IMPORT_PACKAGE));
+			edges[i] = toArray(requirements.targets);
+			reexports[i] = toArray(requirements.reexported);
+			problems.add(requirements.getProblems());
+		}
+
+		collapseComponents();
+		closures = new BitSet[componentMembers.length];
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+	/**
+	 * @return the number of edges between bundles
+	 */
+	public int getEdgeCount() {
+		int count = 0;
+		for (int[] targets : edges) {
+			count += targets.length;
+		}
+		return count;
+	}
+
+	/**
+	 * Resolves the Require-Bundle and Import-Package headers of a bundle
+	 * against the bundles of this graph.
+	 *
+	 * @param symbolicName
+	 *            the symbolic name of the requiring bundle, its own exports are
+	 *            not taken into account
+	 */
+	public Requirements resolve(String symbolicName, String requireBundle, String importPackage) {
+		Requirements requirements = new Requirements();
+		HeaderTokenizer tokenizer = new HeaderTokenizer(requireBundle);
+		try {
+			while (tokenizer.nextClause()) {
+				for (int i = 0; i < tokenizer.getValueCount(); i++) {
+					int target = getNode(symbols.lookup(tokenizer.getValue(i)));
+					if (target >= 0) {
+						requirements.targets.add(target);
+						requirements.required.add(target);
+						if (tokenizer.hasDirective(Constants.VISIBILITY_DIRECTIVE, Constants.VISIBILITY_REEXPORT))
+							requirements.reexported.add(target);
+					} else
+						requirements.problems.add("RequireBundle directive for " + tokenizer.getValue(i) + " is not satisfied.");
+				}
+			}
+		} catch (BundleException ex) {
+			requirements.problems.add("Unable to parse Require-Bundle of " + symbolicName + ": " + ex.getMessage());
+		}
+
+		tokenizer.reset(importPackage);
+		try {
+			int importer = symbols.lookup(symbolicName);
+			while (tokenizer.nextClause()) {
+				VersionRange range;
+				try {
+					range = ExportPackageIndex.getVersionRange(tokenizer);
+				} catch (IllegalArgumentException ex) {
+					// a broken third party manifest only loses the broken import
+					requirements.problems.add("Ignoring an Import-Package clause of " + symbolicName + ": " + ex.getMessage());
+					continue;
+				}
+				for (int i = 0; i < tokenizer.getValueCount(); i++) {
+					resolveImport(importer, tokenizer, i, range, requirements);
+				}
+			}
+		} catch (BundleException ex) {
+			requirements.problems.add("Unable to parse Import-Package of " + symbolicName + ": " + ex.getMessage());
+		}
+		return requirements;
+	}
+
+	private void resolveImport(int importer, HeaderTokenizer clause, int value, VersionRange range,
+			Requirements requirements) {
+		int exporter = exportPackageIndex.lookup(symbols.lookup(clause.getValue(value)), range);
+		if (exporter < 0) {
+			if (!clause.hasDirective(Constants.RESOLUTION_DIRECTIVE, Constants.RESOLUTION_OPTIONAL))
+				requirements.problems.add("ImportPackage directive for " + clause.getValue(value) + " "
+						+ (range == null ? "" : range + " ") + "is not satisfied.");
+			return;
+		}
+		if (exporter == importer)
+			return;
+
+		int target = getNode(exporter);
+		if (target < 0)
+			return;
+		requirements.targets.add(target);
+		requirements.imported.add(target);
+
+		// if we've got a fragment for this bundle, attach it as well
+		Integer fragment = fragmentHostLookup.get(exporter);
+		if (fragment != null && getNode(fragment) >= 0)
+			requirements.targets.add(getNode(fragment));
+	}
+
+	/**
+	 * @return the node of a symbol id or <code>-1</code> if the symbol isn't a
+	 *         bundle of this graph
+	 */
+	private int getNode(int symbol) {
+		return symbol >= 0 && symbol < nodes.length ? nodes[symbol] : -1;
+	}
+
+	/**
+	 * Computes the bundles reachable from the given requirements, including
+	 * the required bundles themselves.
+	 *
+	 * @return the symbolic names of the reachable bundles in scan order
+	 */
+	public List<String> getClosure(Requirements requirements) {
+		BitSet closure = new BitSet(size());
+		for (int target : requirements.targets) {
+			closure.or(getComponentClosure(component[target]));
+		}
+		List<String> result = new ArrayList<String>(closure.cardinality());
+		for (int i = closure.nextSetBit(0); i >= 0; i = closure.nextSetBit(i + 1)) {
+			result.add(names.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the bundles visible to a bundle with the given requirements
+	 * under OSGi class loading rules: the required bundles together with the
+	 * bundles they re-export, transitively, and the exporters of the imported
+	 * packages. Bundles that are only reached through other dependencies
+	 * aren't visible. Every visible bundle is followed by its fragment.
+	 *
+	 * @return the symbolic names of the visible bundles in the order the
+	 *         requirements are declared, re-exported bundles right after the
+	 *         bundle re-exporting them
+	 */
+	public List<String> getVisibleBundles(Requirements requirements) {
+		Set<Integer> visible = new LinkedHashSet<Integer>();
+		List<Integer> stack = new ArrayList<Integer>();
+		for (int target : requirements.required) {
+			stack.add(target);
+			while (!stack.isEmpty()) {
+				int current = stack.remove(stack.size() - 1);
+				if (!addVisible(current, visible))
+					continue;
+				// push in reverse, so re-exports are visited in declaration order
+				for (int i = reexports[current].length - 1; i >= 0; i--) {
+					stack.add(reexports[current][i]);
+				}
+			}
+		}
+		for (int target : requirements.imported) {
+			addVisible(target, visible);
+		}
+
+		List<String> result = new ArrayList<String>(visible.size());
+		for (int node : visible) {
+			result.add(names.get(node));
+		}
+		return result;
+	}
+
+	private boolean addVisible(int node, Set<Integer> visible) {
+		if (!visible.add(node))
+			return false;
+		Integer fragment = fragmentHostLookup.get(symbols.lookup(names.get(node)));
+		if (fragment != null && getNode(fragment) >= 0)
+			visible.add(getNode(fragment));
+		return true;
+	}
+
+	/**
+	 * @return the number of edges leaving the given bundles, i.e. the edges
+	 *         a resolution of their closure follows
+	 */
+	public int getEdgeCount(List<String> closure) {
+		int count = 0;
+		for (String symbolicName : closure) {
+			int node = getNode(symbols.lookup(symbolicName));
+			if (node >= 0)
+				count += edges[node].length;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the problems found while resolving the given bundle's
+	 *         requirements
+	 */
+	public List<String> getProblems(String symbolicName) {
+		int node = getNode(symbols.lookup(symbolicName));
+		return node < 0 ? Collections.<String>emptyList() : problems.get(node);
+	}
+
+	public File getFile(String symbolicName) {
+		int node = getNode(symbols.lookup(symbolicName));
+		return node < 0 ? null : files.get(node);
+	}
+
+	private synchronized BitSet getComponentClosure(int root) {
+		if (closures[root] != null)
+			return closures[root];
+
+		// components are numbered in reverse topological order, successors
+		// have lower numbers, so an explicit stack avoids deep recursion
+		List<Integer> stack = new ArrayList<Integer>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			int current = stack.get(stack.size() - 1);
+			if (closures[current] != null) {
+				stack.remove(stack.size() - 1);
+				continue;
+			}
+			boolean ready = true;
+			for (int successor : componentSuccessors[current]) {
+				if (closures[successor] == null) {
+					stack.add(successor);
+					ready = false;
+				}
+			}
+			if (!ready)
+				continue;
+
+			BitSet closure = (BitSet) componentMembers[current].clone();
+			for (int successor : componentSuccessors[current]) {
+				closure.or(closures[successor]);
+			}
+			closures[current] = closure;
+			stack.remove(stack.size() - 1);
+		}
+		return closures[root];
+	}
+
+	/**
+	 * Iterative version of Tarjan's strongly connected components algorithm.
+	 */
+	private void collapseComponents() {
+		int n = size();
+		component = new int[n];
+		int[] index = new int[n];
+		int[] lowlink = new int[n];
+		boolean[] onStack = new boolean[n];
+		int[] edgePosition = new int[n];
+		int[] sccStack = new int[n];
+		int sccTop = 0;
+		int[] callStack = new int[n];
+		int callTop;
+		int counter = 1;
+		List<BitSet> members = new ArrayList<BitSet>();
+
+		for (int start = 0; start < n; start++) {
+			if (index[start] != 0)
+				continue;
+			callTop = 0;
+			callStack[callTop++] = start;
+			index[start] = lowlink[start] = counter++;
+			sccStack[sccTop++] = start;
+			onStack[start] = true;
+
+			while (callTop > 0) {
+				int v = callStack[callTop - 1];
+				if (edgePosition[v] < edges[v].length) {
+					int w = edges[v][edgePosition[v]++];
+					if (index[w] == 0) {
+						index[w] = lowlink[w] = counter++;
+						sccStack[sccTop++] = w;
+						onStack[w] = true;
+						callStack[callTop++] = w;
+					} else if (onStack[w]) {
+						lowlink[v] = Math.min(lowlink[v], index[w]);
+					}
+					continue;
+				}
+
+				callTop--;
+				if (callTop > 0) {
+					int parent = callStack[callTop - 1];
+					lowlink[parent] = Math.min(lowlink[parent], lowlink[v]);
+				}
+				if (lowlink[v] == index[v]) {
+					BitSet scc = new BitSet(n);
+					int w;
+					do {
+						w = sccStack[--sccTop];
+						onStack[w] = false;
+						component[w] = members.size();
+						scc.set(w);
+					} while (w != v);
+					members.add(scc);
+				}
+			}
+		}
+
+		componentMembers = members.toArray(new BitSet[members.size()]);
+		componentSuccessors = new int[componentMembers.length][];
+		for (int c = 0; c < componentMembers.length; c++) {
+			Set<Integer> successors = new LinkedHashSet<Integer>();
+			BitSet scc = componentMembers[c];
+			for (int v = scc.nextSetBit(0); v >= 0; v = scc.nextSetBit(v + 1)) {
+				for (int w : edges[v]) {
+					if (component[w] != c)
+						successors.add(component[w]);
+				}
+			}
+			componentSuccessors[c] = toArray(successors);
+		}
+	}
+
+	private static int[] toArray(Set<Integer> values) {
+		int[] result = new int[values.size()];
+		int i = 0;
+		for (int value : values) {
+			result[i++] = value;
+		}
+		return result;
+	}
+}
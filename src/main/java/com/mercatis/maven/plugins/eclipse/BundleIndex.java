@@ -0,0 +1,392 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Persistent index of the bundle manifests found in the plugin folder of a
+ * target platform.
+ * <p>
+ * The index is kept in a binary file inside the target platform. It is memory
+ * mapped when loaded and updated incrementally: bundles are keyed by file name,
+ * size and modification time, so only new or changed jars are opened again and
+ * removed jars are dropped. Bundles extracted into a directory are keyed by
+ * their <code>META-INF/MANIFEST.MF</code> instead, which is read directly.
+ * Manifests are read through {@link ManifestReader}, optionally on several
+ * threads.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class BundleIndex {
+
+	public static final String INDEX_FILE = "bundles.idx";
+
+	private static final int MAGIC = 0x42494458;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String ENCODING = "UTF-8";
+
+	private static final FilenameFilter BUNDLE_FILTER = new FilenameFilter() {
+
+		public boolean accept(File dir, String name) {
+			return !BundleDescriptor.isExploded(name) || new File(dir, name + "/" + JarFile.MANIFEST_NAME).isFile();
+		}
+	};
+
+	private final File indexFile;
+
+	private final Log log;
+
+	private Map<String,BundleDescriptor> entries = new HashMap<String,BundleDescriptor>();
+
+	private boolean modified;
+
+	private int readCount;
+
+	private BundleIndex(File indexFile, Log log) {
+		this.indexFile = indexFile;
+		this.log = log;
+	}
+
+	/**
+	 * Loads the index of the given target platform. A missing, outdated or
+	 * corrupt index file results in an empty index.
+	 */
+	public static BundleIndex load(File targetPlatformLocation, Log log) {
+		BundleIndex index = new BundleIndex(TargetPlatformLayout.getMetadataFile(targetPlatformLocation, INDEX_FILE), log);
+		index.read(TargetPlatformLayout.getPluginFolder(targetPlatformLocation));
+		return index;
+	}
+
+	/**
+	 * Brings the index in line with the content of the plugin folder, reading
+	 * new or changed bundles on the calling thread.
+	 *
+	 * @return the descriptors of all bundles in the plugin folder, in
+	 *         directory listing order
+	 */
+	public List<BundleDescriptor> update(File pluginFolder) throws IOException {
+		return update(pluginFolder, 1);
+	}
+
+	/**
+	 * Brings the index in line with the content of the plugin folder. New or
+	 * changed bundles are read by up to <code>threads</code> threads; the
+	 * result doesn't depend on the number of threads.
+	 *
+	 * @return the descriptors of all bundles in the plugin folder, in
+	 *         directory listing order
+	 */
+	public List<BundleDescriptor> update(File pluginFolder, int threads) throws IOException {
+		File[] bundles = listBundles(pluginFolder);
+
+		BundleDescriptor[] descriptors = new BundleDescriptor[bundles.length];
+		List<Integer> stale = new ArrayList<Integer>();
+		for (int i = 0; i < bundles.length; i++) {
+			BundleDescriptor descriptor = entries.get(bundles[i].getName());
+			if (descriptor == null || !descriptor.isUpToDate(bundles[i]))
+				stale.add(i);
+			else
+				descriptors[i] = descriptor;
+		}
+		int reread = stale.size();
+		readCount = reread;
+		if (threads > 1 && reread > 1)
+			readBundlesInParallel(bundles, stale, descriptors, threads);
+		else {
+			for (int i : stale) {
+				descriptors[i] = readBundle(bundles[i]);
+			}
+		}
+
+		Map<String,BundleDescriptor> current = new HashMap<String,BundleDescriptor>();
+		List<BundleDescriptor> result = new ArrayList<BundleDescriptor>(bundles.length);
+		for (int i = 0; i < bundles.length; i++) {
+			current.put(bundles[i].getName(), descriptors[i]);
+			result.add(descriptors[i]);
+		}
+
+		int dropped = 0;
+		for (String name : entries.keySet()) {
+			if (!current.containsKey(name))
+				dropped++;
+		}
+		if (reread > 0 || dropped > 0)
+			modified = true;
+		log.debug("Bundle index: " + bundles.length + " bundles, " + reread + " (re)read, " + dropped + " dropped.");
+		entries = current;
+		return result;
+	}
+
+	/**
+	 * Brings the entry of a single plugin folder entry in line with the
+	 * plugin folder: the bundle is read if it is new or has changed and
+	 * dropped if it is gone.
+	 *
+	 * @param name
+	 *            the name of the jar or bundle directory in the plugin folder
+	 * @return <code>true</code> if the index has changed
+	 */
+	public boolean update(File pluginFolder, String name) throws IOException {
+		File bundle = new File(pluginFolder, name);
+		if (!bundle.exists() || !BUNDLE_FILTER.accept(pluginFolder, name)) {
+			if (entries.remove(name) == null)
+				return false;
+			modified = true;
+			return true;
+		}
+		BundleDescriptor descriptor = entries.get(name);
+		if (descriptor != null && descriptor.isUpToDate(bundle))
+			return false;
+		entries.put(name, readBundle(bundle));
+		modified = true;
+		return true;
+	}
+
+	/**
+	 * Records a bundle whose manifest has been read elsewhere, e.g. while the
+	 * bundle was extracted.
+	 *
+	 * @param manifest
+	 *            the manifest of the bundle or <code>null</code> if it has none
+	 */
+	void put(File bundle, Manifest manifest) {
+		File stamp = BundleDescriptor.getStampFile(bundle);
+		entries.put(bundle.getName(), BundleDescriptor.create(bundle, stamp.length(), stamp.lastModified(),
+				manifest == null ? null : manifest.getMainAttributes()));
+		modified = true;
+	}
+
+	/**
+	 * Records a bundle with the headers it has been catalogued with before it
+	 * was extracted.
+	 */
+	void put(File bundle, BundleDescriptor catalogued) {
+		File stamp = BundleDescriptor.getStampFile(bundle);
+		entries.put(bundle.getName(), new BundleDescriptor(bundle, stamp.length(), stamp.lastModified(), catalogued.getHeaders()));
+		modified = true;
+	}
+
+	/**
+	 * Computes a fingerprint of the plugin folder from the name, size and
+	 * modification time of every bundle, without reading any of them. The
+	 * fingerprint changes whenever an update of the index would.
+	 */
+	public static String getFingerprint(File pluginFolder) throws IOException {
+		String[] bundles = pluginFolder.list(BUNDLE_FILTER);
+		if (bundles == null)
+			bundles = new String[0];
+		Arrays.sort(bundles);
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		Path folder = pluginFolder.toPath();
+		ByteBuffer buffer = ByteBuffer.allocate(16);
+		for (String bundle : bundles) {
+			BasicFileAttributes attributes;
+			try {
+				Path stamp = BundleDescriptor.isExploded(bundle) ? folder.resolve(bundle).resolve(JarFile.MANIFEST_NAME) : folder.resolve(bundle);
+				attributes = Files.readAttributes(stamp, BasicFileAttributes.class);
+			} catch (NoSuchFileException ex) {
+				// removed since listing, no different from never listed
+				continue;
+			}
+			digest.update(bundle.getBytes(ENCODING));
+			buffer.clear();
+			buffer.putLong(attributes.size()).putLong(attributes.lastModifiedTime().toMillis());
+			digest.update(buffer.array());
+		}
+		StringBuilder fingerprint = new StringBuilder();
+		for (byte b : digest.digest()) {
+			fingerprint.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return fingerprint.toString();
+	}
+
+	/**
+	 * @return the number of manifests read by the last update
+	 */
+	public int getReadCount() {
+		return readCount;
+	}
+
+	/**
+	 * Writes the index back to disk if it has been modified.
+	 */
+	public void store() throws IOException {
+		if (!modified)
+			return;
+
+		File tmp = BundleStore.createTempFile(indexFile);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<String,BundleDescriptor> entry : entries.entrySet()) {
+				BundleDescriptor descriptor = entry.getValue();
+				writeString(out, entry.getKey());
+				out.writeLong(descriptor.getLength());
+				out.writeLong(descriptor.getLastModified());
+				for (String header : descriptor.getHeaders()) {
+					writeString(out, header);
+				}
+			}
+		} finally {
+			out.close();
+		}
+
+		// mapped by concurrent readers, which keep the replaced file
+		BundleStore.move(tmp.toPath(), indexFile.toPath());
+		modified = false;
+	}
+
+	private void readBundlesInParallel(final File[] bundles, List<Integer> stale, final BundleDescriptor[] descriptors,
+			int threads) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, stale.size()));
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(stale.size());
+			for (final int i : stale) {
+				futures.add(executor.submit(new Callable<Object>() {
+
+					public Object call() throws IOException {
+						descriptors[i] = readBundle(bundles[i]);
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while scanning bundles");
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException)
+				throw (IOException) ex.getCause();
+			throw new IllegalStateException("Unable to scan bundles", ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static File[] listBundles(File pluginFolder) {
+		File[] bundles = pluginFolder.listFiles(BUNDLE_FILTER);
+		return bundles != null ? bundles : new File[0];
+	}
+
+	private static BundleDescriptor readBundle(File bundle) throws IOException {
+		File stamp = BundleDescriptor.getStampFile(bundle);
+		long length = stamp.length();
+		long lastModified = stamp.lastModified();
+		Manifest manifest = stamp != bundle ? ManifestReader.readExploded(bundle) : ManifestReader.read(bundle);
+		return BundleDescriptor.create(bundle, length, lastModified, manifest == null ? null : manifest.getMainAttributes());
+	}
+
+	private void read(File pluginFolder) {
+		if (!indexFile.isFile())
+			return;
+
+		try {
+			RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+			MappedByteBuffer buffer;
+			try {
+				buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			} finally {
+				file.close();
+			}
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+				log.debug("Ignoring bundle index of unknown format " + indexFile.getAbsolutePath());
+				return;
+			}
+			int count = buffer.getInt();
+			Map<String,BundleDescriptor> read = new HashMap<String,BundleDescriptor>(count * 2);
+			for (int i = 0; i < count; i++) {
+				String name = readString(buffer);
+				long length = buffer.getLong();
+				long lastModified = buffer.getLong();
+				String[] headers = new String[BundleDescriptor.HEADERS.length];
+				for (int j = 0; j < headers.length; j++) {
+					headers[j] = readString(buffer);
+				}
+				read.put(name, new BundleDescriptor(new File(pluginFolder, name), length, lastModified, headers));
+			}
+			entries = read;
+		} catch (BufferUnderflowException ex) {
+			log.warn("Bundle index " + indexFile.getAbsolutePath() + " is truncated, rebuilding it.");
+		} catch (IOException ex) {
+			log.warn("Unable to read bundle index " + indexFile.getAbsolutePath() + ", rebuilding it.");
+		}
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(ENCODING);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length < 0)
+			return null;
+		if (length > buffer.remaining())
+			throw new BufferUnderflowException();
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, ENCODING);
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.jar.Manifest;
+import java.util.zip.ZipException;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Adds bundles to the {@link BundleIndex} of a target platform while they are
+ * being extracted into it.
+ * <p>
+ * Extraction threads hand every plugin jar and exploded bundle manifest over
+ * as soon as it has been written, together with its content if it is small
+ * enough to be kept in memory. A single thread takes them from a bounded
+ * queue and parses their manifests, so indexing overlaps with extraction and
+ * extraction slows down rather than piling up content if indexing falls
+ * behind. The next scan of the target platform finds all of them already
+ * indexed.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class BundleIndexer {
+
+	/**
+	 * Bundles up to this size are handed over with their content.
+	 */
+	public static final int MAX_CONTENT_LENGTH = 1024 * 1024;
+
+	private static class Item {
+
+		private final File bundle;
+
+		private final byte[] content;
+
+		Item(File bundle, byte[] content) {
+			this.bundle = bundle;
+			this.content = content;
+		}
+	}
+
+	private static final Item END = new Item(null, null);
+
+	private final BlockingQueue<Item> queue;
+
+	private final BundleIndex index;
+
+	private final Log log;
+
+	private final Thread thread;
+
+	private int indexed;
+
+	private RuntimeException failure;
+
+	/**
+	 * Loads the index of the target platform and starts indexing.
+	 *
+	 * @param capacity
+	 *            the number of bundles waiting to be indexed before
+	 *            extraction blocks
+	 */
+	public BundleIndexer(File targetPlatformLocation, int capacity, Log log) {
+		this.queue = new ArrayBlockingQueue<Item>(Math.max(1, capacity));
+		this.index = BundleIndex.load(targetPlatformLocation, log);
+		this.log = log;
+		this.thread = new Thread(new Runnable() {
+
+			public void run() {
+				drain();
+			}
+		}, "bundle-indexer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Hands over a bundle that has just been written, waiting while the queue
+	 * is full.
+	 *
+	 * @param bundle
+	 *            a jar or the directory of an exploded bundle in the plugin
+	 *            folder
+	 * @param content
+	 *            the jar or manifest just written or <code>null</code> if it
+	 *            has to be read from disk
+	 */
+	public void offer(File bundle, byte[] content) throws InterruptedIOException {
+		try {
+			queue.put(new Item(bundle, content));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while handing over " + bundle.getName());
+		}
+	}
+
+	/**
+	 * Waits for the remaining bundles to be indexed and stores the index.
+	 *
+	 * @return the number of bundles indexed
+	 */
+	public int finish() throws IOException {
+		try {
+			queue.put(END);
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while indexing bundles");
+		}
+		if (failure != null)
+			throw new IOException("Unable to index bundles", failure);
+		index.store();
+		return indexed;
+	}
+
+	private void drain() {
+		try {
+			for (Item item = queue.take(); item != END; item = queue.take()) {
+				// keep taking after a failure, extraction would block otherwise
+				if (failure != null)
+					continue;
+				try {
+					index.put(item.bundle, readManifest(item));
+					indexed++;
+				} catch (IOException ex) {
+					log.debug("Unable to index " + item.bundle.getName() + ", the next scan reads it again: " + ex.getMessage());
+				} catch (RuntimeException ex) {
+					failure = ex;
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static Manifest readManifest(Item item) throws IOException {
+		if (BundleDescriptor.isExploded(item.bundle.getName())) {
+			if (item.content == null)
+				return ManifestReader.readExploded(item.bundle);
+			return new Manifest(new ByteArrayInputStream(item.content));
+		}
+		if (item.content != null) {
+			try {
+				return ManifestReader.read(ByteBuffer.wrap(item.content));
+			} catch (ZipException ex) {
+				// e.g. zip64, left to the fallback of the file based reader
+			}
+		}
+		return ManifestReader.read(item.bundle);
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the bundles the build has placed into the plugin folder of a target
+ * platform, as opposed to those materialized from eclipse packages. A
+ * selective clean removes exactly these.
+ * <p>
+ * Every entry is recorded with the size and modification time it had when
+ * the build wrote it, of the manifest for an exploded bundle. An entry that
+ * has been replaced since, e.g. by a bundle of the same name materialized
+ * from a package, doesn't match anymore and is kept by the clean.
+ * <p>
+ * The ledger is a text file in the target platform metadata holding one
+ * plugin folder entry per line, with its size and modification time
+ * separated by tabs. Entries recorded without them never match.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public final class BundleLedger {
+
+	private static final String LEDGER_FILE = "ledger";
+
+	private static final String ENCODING = "UTF-8";
+
+	/**
+	 * A plugin folder entry as written by the build.
+	 */
+	public static final class Entry {
+
+		private final String name;
+
+		private final long length;
+
+		private final long lastModified;
+
+		Entry(String name, long length, long lastModified) {
+			this.name = name;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return <code>true</code> if the entry in the plugin folder is still
+		 *         the one the build wrote
+		 */
+		public boolean matches(File pluginFolder) {
+			if (length < 0)
+				return false;
+			File stamp = BundleDescriptor.getStampFile(new File(pluginFolder, name));
+			return stamp.isFile() && stamp.length() == length && stamp.lastModified() == lastModified;
+		}
+
+		private boolean hasStampOf(Entry other) {
+			return other != null && length == other.length && lastModified == other.lastModified;
+		}
+	}
+
+	private BundleLedger() {
+	}
+
+	/**
+	 * @return the recorded plugin folder entries by name, empty if there is
+	 *         no ledger
+	 */
+	public static synchronized Map<String,Entry> read(File targetPlatformLocation) throws IOException {
+		Map<String,Entry> entries = new TreeMap<String,Entry>();
+		File file = getLedgerFile(targetPlatformLocation);
+		if (!file.isFile())
+			return entries;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() == 0)
+					continue;
+				Entry entry = parse(line);
+				entries.put(entry.getName(), entry);
+			}
+		} finally {
+			reader.close();
+		}
+		return entries;
+	}
+
+	/**
+	 * Adds bundles the build has just written to the plugin folder to the
+	 * ledger, with their current size and modification time.
+	 */
+	public static synchronized void record(File targetPlatformLocation, Collection<File> bundles) throws IOException {
+		if (bundles.isEmpty())
+			return;
+		// other builds add their entries concurrently
+		FileLocks.Lock lock = lock(targetPlatformLocation);
+		try {
+			Map<String,Entry> entries = read(targetPlatformLocation);
+			boolean modified = false;
+			for (File bundle : bundles) {
+				File stamp = BundleDescriptor.getStampFile(bundle);
+				Entry entry = new Entry(bundle.getName(), stamp.length(), stamp.lastModified());
+				if (!entry.hasStampOf(entries.put(entry.getName(), entry)))
+					modified = true;
+			}
+			if (!modified)
+				return;
+
+			File file = getLedgerFile(targetPlatformLocation);
+			File tmp = BundleStore.createTempFile(file);
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), ENCODING));
+			try {
+				for (Entry entry : entries.values()) {
+					writer.write(entry.name + '\t' + entry.length + '\t' + entry.lastModified + '\n');
+				}
+			} finally {
+				writer.close();
+			}
+			BundleStore.move(tmp.toPath(), file.toPath());
+		} finally {
+			lock.close();
+		}
+	}
+
+	/**
+	 * Forgets all recorded entries.
+	 */
+	public static synchronized void clear(File targetPlatformLocation) throws IOException {
+		FileLocks.Lock lock = lock(targetPlatformLocation);
+		try {
+			File file = getLedgerFile(targetPlatformLocation);
+			if (file.exists() && !file.delete())
+				throw new IOException("Unable to delete " + file.getAbsolutePath());
+		} finally {
+			lock.close();
+		}
+	}
+
+	/**
+	 * Locks the ledger against being changed by another build, e.g. while a
+	 * selective clean removes the recorded entries.
+	 */
+	public static FileLocks.Lock lock(File targetPlatformLocation) throws IOException {
+		return FileLocks.lock(TargetPlatformLayout.getLockFile(targetPlatformLocation, LEDGER_FILE));
+	}
+
+	private static Entry parse(String line) {
+		// names may not contain tabs, lines of older ledgers hold the name only
+		int length = line.indexOf('\t');
+		int lastModified = line.indexOf('\t', length + 1);
+		if (length > 0 && lastModified > 0) {
+			try {
+				return new Entry(line.substring(0, length), Long.parseLong(line.substring(length + 1, lastModified)),
+						Long.parseLong(line.substring(lastModified + 1)));
+			} catch (NumberFormatException ex) {
+				// recorded incompletely, never matches
+			}
+		}
+		return new Entry(length > 0 ? line.substring(0, length) : line, -1, -1);
+	}
+
+	private static File getLedgerFile(File targetPlatformLocation) {
+		return TargetPlatformLayout.getMetadataFile(targetPlatformLocation, LEDGER_FILE);
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Content addressed store for bundles, kept next to the
+ * <code>eclipse-target-repository</code>. Every bundle is stored once under
+ * its SHA-1 digest and placed into a target platform by hard link. Where hard
+ * links aren't available a symbolic link is used, and a copy as last resort.
+ * <p>
+ * A bundle whose target already has the size and modification time of the
+ * source is not touched at all, one that links to the same stored content is
+ * not replaced. Optionally, a target with the size of its source is compared
+ * by digest, so a rebuilt but identical source doesn't replace it either.
+ * Digests come from a {@link DigestCache}, so a target linked to the store
+ * keeps the modification time of whichever source stored it first without
+ * being digested again by every build.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class BundleStore {
+
+	public static final String DEFAULT_FOLDER = "eclipse-bundle-store";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final int TRANSFER_CHUNK = 1024 * 1024;
+
+	private final File location;
+
+	private final DigestCache digests;
+
+	private final Log log;
+
+	public BundleStore(File location, DigestCache digests, Log log) {
+		this.location = location;
+		this.digests = digests;
+		this.log = log;
+	}
+
+	/**
+	 * @return the default store location next to the local repository
+	 */
+	public static File getDefaultLocation(ArtifactRepository localRepository) {
+		return new File(new File(localRepository.getBasedir()).getParentFile(), DEFAULT_FOLDER);
+	}
+
+	/**
+	 * Places a bundle into a folder of a target platform under its own file
+	 * name.
+	 *
+	 * @return <code>true</code> if the folder content changed
+	 */
+	public boolean place(File source, File folder) throws IOException {
+		return place(source, folder, false);
+	}
+
+	/**
+	 * Places a bundle into a folder of a target platform under its own file
+	 * name.
+	 *
+	 * @param compareDigest
+	 *            compare a target with the size of the source by digest if
+	 *            their modification times differ
+	 * @return <code>true</code> if the folder content changed
+	 */
+	public boolean place(File source, File folder, boolean compareDigest) throws IOException {
+		File target = new File(folder, source.getName());
+		if (isUpToDate(source, target, compareDigest, digests))
+			return false;
+
+		File stored = store(source);
+		if (target.exists() && Files.isSameFile(target.toPath(), stored.toPath()))
+			return false;
+
+		Path tmp = createTempFile(target).toPath();
+		try {
+			Files.delete(tmp);
+			link(stored.toPath(), tmp);
+			move(tmp, target.toPath());
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a file to the store unless its content is already there.
+	 *
+	 * @return the stored file
+	 */
+	public File store(File source) throws IOException {
+		String digest = digests.digest(source);
+		File folder = new File(location, digest.substring(0, 2));
+		String name = source.getName();
+		String extension = name.lastIndexOf('.') > 0 ? name.substring(name.lastIndexOf('.')) : "";
+		File stored = new File(folder, digest + extension);
+		if (stored.exists())
+			return stored;
+
+		Path tmp = createTempFile(stored).toPath();
+		try {
+			Files.copy(source.toPath(), tmp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+			move(tmp, stored.toPath());
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		log.debug("Stored " + source.getName() + " as " + stored.getName());
+		return stored;
+	}
+
+	/**
+	 * Copies a bundle into a folder without using the store. The copy is
+	 * written to a temporary file and renamed, so a target hard linked into
+	 * the store is replaced rather than written through.
+	 *
+	 * @param compareDigest
+	 *            compare a target with the size of the source by digest if
+	 *            their modification times differ
+	 * @return <code>true</code> if the folder content changed
+	 */
+	public static boolean copy(File source, File folder, boolean compareDigest, DigestCache digests) throws IOException {
+		File target = new File(folder, source.getName());
+		if (isUpToDate(source, target, compareDigest, digests))
+			return false;
+
+		File tmp = createTempFile(target);
+		FileInputStream in = new FileInputStream(source);
+		try {
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				FileChannel from = in.getChannel();
+				FileChannel to = out.getChannel();
+				long size = from.size();
+				for (long position = 0; position < size;) {
+					position += from.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), to);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		tmp.setLastModified(source.lastModified());
+		move(tmp.toPath(), target.toPath());
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> if the target has the size and modification
+	 *         time or, if asked for, the digest of the source
+	 */
+	static boolean isUpToDate(File source, File target, boolean compareDigest, DigestCache digests) throws IOException {
+		if (!target.isFile() || target.length() != source.length())
+			return false;
+		if (target.lastModified() == source.lastModified())
+			return true;
+		return compareDigest && digests.digest(source).equals(digests.digest(target));
+	}
+
+	/**
+	 * Creates an empty temporary file next to a target, to be moved onto the
+	 * target once written. Its name is unique across threads and processes,
+	 * so concurrent builds writing the same target don't write through each
+	 * other's temporary files.
+	 */
+	static File createTempFile(File target) throws IOException {
+		File folder = target.getAbsoluteFile().getParentFile();
+		folder.mkdirs();
+		// unlike Files.createTempFile, keeps the permissions a plain file would get
+		return File.createTempFile("." + target.getName() + ".", ".tmp", folder);
+	}
+
+	private void link(Path stored, Path link) throws IOException {
+		try {
+			Files.createLink(link, stored);
+			return;
+		} catch (UnsupportedOperationException ex) {
+			log.debug("Hard links not supported: " + ex.getMessage());
+		} catch (IOException ex) {
+			log.debug("Unable to create hard link " + link + ": " + ex.getMessage());
+		}
+		try {
+			Files.createSymbolicLink(link, stored);
+			return;
+		} catch (UnsupportedOperationException ex) {
+			log.debug("Symbolic links not supported: " + ex.getMessage());
+		} catch (IOException ex) {
+			log.debug("Unable to create symbolic link " + link + ": " + ex.getMessage());
+		}
+		Files.copy(stored, link, StandardCopyOption.COPY_ATTRIBUTES);
+	}
+
+	static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	static String digest(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			while (channel.read(buffer) > 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			in.close();
+		}
+
+		byte[] bytes = digest.digest();
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+}
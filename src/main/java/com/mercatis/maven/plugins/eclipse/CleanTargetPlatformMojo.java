@@ -17,10 +17,12 @@ package com.mercatis.maven.plugins.eclipse;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
 
 /**
@@ -36,22 +38,148 @@ import org.codehaus.plexus.util.FileUtils;
  */
 public class CleanTargetPlatformMojo extends AbstractMojo {
 
+	private static final String MODE_FULL = "full";
+	
+	private static final String MODE_INSTANT = "instant";
+	
+	private static final String MODE_SELECTIVE = "selective";
+	
+	/**
+	 * @parameter expression="${project}"
+	 * @readonly
+	 * @required
+	 */
+	private MavenProject project;
+	
+	/**
+	 * @parameter expression="${reactorProjects}"
+	 * @readonly
+	 */
+	private List<MavenProject> reactorProjects;
+	
 	/**
 	 * @parameter
 	 * @required
 	 */
 	private File targetPlatformLocation;
 	
+	/**
+	 * How the target platform is cleaned: <code>full</code> deletes it before
+	 * the build continues, <code>instant</code> renames it aside and deletes
+	 * it in the background, <code>selective</code> only removes the bundles
+	 * installed or copied by the build and keeps the materialized platform.
+	 * <p>
+	 * The background delete of <code>instant</code> may not finish, Maven
+	 * exits once the build is done. The rest stays next to the target
+	 * platform as <code>.&lt;name&gt;.trash-*</code> and is deleted by the
+	 * next build that cleans, materializes or gathers dependencies.
+	 * 
+	 * @parameter default-value="full"
+	 */
+	private String cleanMode;
+	
+	/**
+	 * Number of threads deleting files in <code>instant</code> mode.
+	 * <code>0</code> uses one thread per available processor.
+	 * 
+	 * @parameter default-value="0"
+	 */
+	private int cleanThreads;
+	
+	private BuildMetrics metrics;
+	
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		metrics = new BuildMetrics("cleanTargetPlatform");
+		try {
+			metrics.phase(cleanMode);
+			clean();
+		} finally {
+			MetricsReport.record(project, reactorProjects, metrics, getLog());
+		}
+	}
+	
+	private void clean() throws MojoExecutionException {
+		try {
+			if (MODE_FULL.equals(cleanMode)) {
+				cleanFull();
+			} else if (MODE_INSTANT.equals(cleanMode)) {
+				cleanInstant();
+			} else if (MODE_SELECTIVE.equals(cleanMode)) {
+				cleanSelective();
+			} else {
+				throw new MojoExecutionException("Unknown cleanMode '" + cleanMode + "', expected one of "
+						+ MODE_FULL + ", " + MODE_INSTANT + " or " + MODE_SELECTIVE + ".");
+			}
+		} catch (IOException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+		TargetPlatformCache.invalidate(targetPlatformLocation);
+	}
+	
+	private void cleanFull() throws IOException {
 		if (!targetPlatformLocation.exists())
 			return;
 		
 		getLog().info("Deleting directory " + targetPlatformLocation.getAbsolutePath());
+		FileUtils.deleteDirectory(targetPlatformLocation.getAbsolutePath());
+	}
+	
+	private void cleanInstant() throws IOException {
+		DirectoryRemover remover = new DirectoryRemover(cleanThreads > 0 ? cleanThreads : Runtime.getRuntime().availableProcessors(), getLog());
+		List<File> trash = remover.getLeftovers(targetPlatformLocation);
+		if (!trash.isEmpty())
+			getLog().info("Deleting " + trash.size() + " leftovers of earlier cleans.");
+		
+		if (targetPlatformLocation.exists()) {
+			File aside = remover.moveAside(targetPlatformLocation);
+			if (aside != null) {
+				getLog().info("Deleting directory " + targetPlatformLocation.getAbsolutePath() + " in the background.");
+				trash.add(aside);
+			} else {
+				getLog().warn("Unable to move " + targetPlatformLocation.getAbsolutePath() + " aside, deleting it in place.");
+				cleanFull();
+			}
+		}
+		remover.remove(trash);
+	}
+	
+	private void cleanSelective() throws IOException {
+		File pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		int removed = 0;
+		int kept = 0;
+		// entries recorded by a concurrent build meanwhile would be forgotten otherwise
+		FileLocks.Lock ledgerLock = BundleLedger.lock(targetPlatformLocation);
 		try {
-			FileUtils.deleteDirectory(targetPlatformLocation.getAbsolutePath());
-		} catch (IOException ex) {
-			throw new MojoExecutionException(ex.getMessage(), ex);
+			for (BundleLedger.Entry entry : BundleLedger.read(targetPlatformLocation).values()) {
+				File file = new File(pluginFolder, entry.getName());
+				FileLocks.Lock lock = FileLocks.lockBundle(targetPlatformLocation, entry.getName());
+				try {
+					if (!entry.matches(pluginFolder)) {
+						// replaced since, e.g. by the bundle of a package
+						if (file.exists()) {
+							getLog().debug("Keeping " + entry.getName() + ", it has changed since the build wrote it.");
+							kept++;
+						}
+					} else if (file.isDirectory()) {
+						FileUtils.deleteDirectory(file);
+						removed++;
+					} else {
+						if (!file.delete())
+							throw new IOException("Unable to delete " + file.getAbsolutePath());
+						removed++;
+					}
+				} finally {
+					lock.close();
+				}
+			}
+			BundleLedger.clear(targetPlatformLocation);
+		} finally {
+			ledgerLock.close();
 		}
+		metrics.count("bundles.removed", removed);
+		metrics.count("bundles.kept", kept);
+		getLog().info("Removed " + removed + " bundles installed by the build from " + pluginFolder.getAbsolutePath()
+				+ (kept > 0 ? ", kept " + kept + " replaced since." : ""));
 	}
 
 }
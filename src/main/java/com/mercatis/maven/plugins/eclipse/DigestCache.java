@@ -0,0 +1,201 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Remembers the digests of the bundles placed into a target platform and of
+ * their sources, together with the size and modification time each file had
+ * when it was digested. A file that hasn't changed since is not read again,
+ * so a rebuilt but identical source is compared with its target without
+ * digesting either.
+ * <p>
+ * The records are kept in a text file in the target platform metadata, one
+ * line of path, size, modification time and digest per file. Builds sharing
+ * the target platform merge their new records into it under a lock.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public final class DigestCache {
+
+	private static final String CACHE_FILE = "digests";
+
+	private static final String ENCODING = "UTF-8";
+
+	private static final class Record {
+
+		private final long length;
+
+		private final long lastModified;
+
+		private final String digest;
+
+		Record(long length, long lastModified, String digest) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.digest = digest;
+		}
+	}
+
+	private final File targetPlatformLocation;
+
+	private final Log log;
+
+	private final Map<String,Record> records = new ConcurrentHashMap<String,Record>();
+
+	/** the records digested by this build, merged into the file by {@link #store()} */
+	private final Map<String,Record> added = new ConcurrentHashMap<String,Record>();
+
+	private final AtomicInteger digestCount = new AtomicInteger();
+
+	private DigestCache(File targetPlatformLocation, Log log) {
+		this.targetPlatformLocation = targetPlatformLocation;
+		this.log = log;
+	}
+
+	/**
+	 * Loads the records of a target platform. A missing or unreadable file
+	 * results in an empty cache.
+	 */
+	public static DigestCache load(File targetPlatformLocation, Log log) {
+		DigestCache cache = new DigestCache(targetPlatformLocation, log);
+		try {
+			cache.records.putAll(read(getCacheFile(targetPlatformLocation)));
+		} catch (IOException ex) {
+			log.debug("Ignoring digest cache: " + ex.getMessage());
+		}
+		return cache;
+	}
+
+	/**
+	 * @return the SHA-1 digest of a file, read from the file only if it has
+	 *         changed since it was last digested
+	 */
+	public String digest(File file) throws IOException {
+		String key = file.getAbsolutePath();
+		long length = file.length();
+		long lastModified = file.lastModified();
+		Record record = records.get(key);
+		if (record != null && record.length == length && record.lastModified == lastModified)
+			return record.digest;
+
+		String digest = BundleStore.digest(file);
+		digestCount.incrementAndGet();
+		// a file changed while it was read is digested again next time
+		if (file.length() == length && file.lastModified() == lastModified) {
+			record = new Record(length, lastModified, digest);
+			records.put(key, record);
+			added.put(key, record);
+		}
+		return digest;
+	}
+
+	/**
+	 * @return the number of files read by {@link #digest(File)} so far
+	 */
+	public int getDigestCount() {
+		return digestCount.get();
+	}
+
+	/**
+	 * Merges the records added by this build into the cache file, dropping
+	 * those of files that are gone.
+	 */
+	public void store() throws IOException {
+		if (added.isEmpty())
+			return;
+
+		File file = getCacheFile(targetPlatformLocation);
+		FileLocks.Lock lock = FileLocks.lock(TargetPlatformLayout.getLockFile(targetPlatformLocation, CACHE_FILE));
+		try {
+			Map<String,Record> merged;
+			try {
+				merged = read(file);
+			} catch (IOException ex) {
+				log.debug("Replacing digest cache: " + ex.getMessage());
+				merged = new TreeMap<String,Record>();
+			}
+			merged.putAll(added);
+			for (Iterator<String> i = merged.keySet().iterator(); i.hasNext();) {
+				if (!new File(i.next()).exists())
+					i.remove();
+			}
+
+			File tmp = BundleStore.createTempFile(file);
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), ENCODING));
+			try {
+				for (Map.Entry<String,Record> entry : merged.entrySet()) {
+					Record record = entry.getValue();
+					writer.write(entry.getKey() + '\t' + record.length + '\t' + record.lastModified + '\t' + record.digest + '\n');
+				}
+			} finally {
+				writer.close();
+			}
+			BundleStore.move(tmp.toPath(), file.toPath());
+			added.clear();
+		} finally {
+			lock.close();
+		}
+	}
+
+	private static Map<String,Record> read(File file) throws IOException {
+		Map<String,Record> records = new TreeMap<String,Record>();
+		if (!file.isFile())
+			return records;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// the path may contain tabs, the other fields don't
+				int digest = line.lastIndexOf('\t');
+				int lastModified = line.lastIndexOf('\t', digest - 1);
+				int length = line.lastIndexOf('\t', lastModified - 1);
+				if (length < 0)
+					continue;
+				try {
+					records.put(line.substring(0, length), new Record(Long.parseLong(line.substring(length + 1, lastModified)),
+							Long.parseLong(line.substring(lastModified + 1, digest)), line.substring(digest + 1)));
+				} catch (NumberFormatException ex) {
+					// written by an interrupted build, digested again
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return records;
+	}
+
+	private static File getCacheFile(File targetPlatformLocation) {
+		return TargetPlatformLayout.getMetadataFile(targetPlatformLocation, CACHE_FILE);
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Removes directory trees without making the build wait for it. A directory
+ * is first renamed aside, which is a single operation on the same file
+ * system, and then deleted by a parallel walker in the background.
+ * <p>
+ * The walker threads aren't daemons, so the JVM waits for them unless the
+ * build exits it explicitly, which the Maven launcher does. Trees left over
+ * by an interrupted removal keep their aside name. The next build picks them
+ * up through {@link #removeLeftovers(File)}, while it keeps running. A tree
+ * already being deleted isn't submitted a second time by another module of
+ * the same build.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class DirectoryRemover {
+
+	private static final String TRASH_INFIX = ".trash-";
+
+	/** the trees being deleted by the walkers of this JVM */
+	private static final Set<File> REMOVING = Collections.newSetFromMap(new ConcurrentHashMap<File,Boolean>());
+
+	private final int threads;
+
+	private final Log log;
+
+	/**
+	 * @param threads
+	 *            the number of threads deleting files
+	 */
+	public DirectoryRemover(int threads, Log log) {
+		this.threads = Math.max(1, threads);
+		this.log = log;
+	}
+
+	/**
+	 * Renames a directory to a sibling that isn't used by anyone else.
+	 *
+	 * @return the renamed directory or <code>null</code> if it couldn't be
+	 *         renamed, e.g. because a file in it is locked
+	 */
+	public File moveAside(File dir) {
+		File trash = new File(dir.getAbsoluteFile().getParentFile(), getTrashPrefix(dir) + System.currentTimeMillis());
+		return dir.renameTo(trash) ? trash : null;
+	}
+
+	/**
+	 * @return directories of earlier removals of the given directory that
+	 *         haven't been deleted completely
+	 */
+	public List<File> getLeftovers(File dir) {
+		List<File> leftovers = new ArrayList<File>();
+		final String prefix = getTrashPrefix(dir);
+		File[] siblings = dir.getAbsoluteFile().getParentFile().listFiles();
+		if (siblings == null)
+			return leftovers;
+		for (File sibling : siblings) {
+			if (sibling.isDirectory() && sibling.getName().startsWith(prefix))
+				leftovers.add(sibling);
+		}
+		return leftovers;
+	}
+
+	/**
+	 * Deletes the leftovers of earlier removals of the given directory in the
+	 * background.
+	 *
+	 * @return the number of leftovers found
+	 */
+	public int removeLeftovers(File dir) {
+		List<File> leftovers = getLeftovers(dir);
+		remove(leftovers);
+		return leftovers.size();
+	}
+
+	/**
+	 * Deletes the given directories in the background.
+	 */
+	public void remove(List<File> dirs) {
+		List<File> submitted = new ArrayList<File>(dirs.size());
+		for (File dir : dirs) {
+			if (REMOVING.add(dir.getAbsoluteFile()))
+				submitted.add(dir.getAbsoluteFile());
+		}
+		if (submitted.isEmpty())
+			return;
+
+		ForkJoinPool pool = new ForkJoinPool(threads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+				};
+				thread.setDaemon(false);
+				return thread;
+			}
+		}, null, false);
+		for (final File dir : submitted) {
+			log.debug("Deleting " + dir.getAbsolutePath() + " in the background.");
+			pool.execute(new DeleteTask(dir) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					try {
+						super.compute();
+					} finally {
+						REMOVING.remove(dir);
+					}
+				}
+			});
+		}
+		// the workers finish the submitted walks and terminate
+		pool.shutdown();
+	}
+
+	private static String getTrashPrefix(File dir) {
+		return "." + dir.getName() + TRASH_INFIX;
+	}
+
+	private class DeleteTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final File dir;
+
+		DeleteTask(File dir) {
+			this.dir = dir;
+		}
+
+		@Override
+		protected void compute() {
+			File[] children = dir.listFiles();
+			if (children != null) {
+				List<DeleteTask> subdirs = new ArrayList<DeleteTask>();
+				for (File child : children) {
+					// never descend into linked directories, their content isn't ours
+					if (child.isDirectory() && !Files.isSymbolicLink(child.toPath()))
+						subdirs.add(new DeleteTask(child));
+					else
+						delete(child);
+				}
+				invokeAll(subdirs);
+			}
+			delete(dir);
+		}
+
+		private void delete(File file) {
+			if (!file.delete() && file.exists())
+				log.warn("Unable to delete " + file.getAbsolutePath());
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Mirrors a directory into another one, copying only files that are new or
+ * differ in size or modification time and removing files that no longer
+ * exist in the source. Copies keep the modification time of their source, so
+ * an unchanged file is recognized again on the next run.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class DirectorySync {
+
+	private final Log log;
+
+	private final Map<String,Path> includes = new HashMap<String,Path>();
+
+	private int filesCopied;
+
+	private long bytesCopied;
+
+	private int filesRemoved;
+
+	public DirectorySync(Log log) {
+		this.log = log;
+	}
+
+	/**
+	 * Adds a file from outside the source directory, replacing the source
+	 * file of the same path if there is one.
+	 *
+	 * @param path
+	 *            the path relative to the target, separated by
+	 *            <code>/</code>
+	 */
+	public void include(File file, String path) {
+		includes.put(path, file.toPath());
+	}
+
+	/**
+	 * Brings the target directory in line with the source directory and the
+	 * included files. A missing source directory counts as empty.
+	 *
+	 * @return <code>true</code> if anything in the target has been changed
+	 */
+	public boolean sync(File source, File target) throws IOException {
+		final Map<String,Path> files = new HashMap<String,Path>();
+		final Path sourceRoot = source.toPath();
+		if (source.isDirectory()) {
+			Files.walkFileTree(sourceRoot, new SimpleFileVisitor<Path>() {
+
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+					if (attributes.isRegularFile())
+						files.put(getRelativePath(sourceRoot, file), file);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		files.putAll(includes);
+
+		int copied = filesCopied;
+		int removed = filesRemoved;
+		final Path targetRoot = target.toPath();
+		for (Map.Entry<String,Path> file : files.entrySet()) {
+			copy(file.getValue(), targetRoot.resolve(file.getKey()));
+		}
+		if (Files.isDirectory(targetRoot)) {
+			Files.walkFileTree(targetRoot, new SimpleFileVisitor<Path>() {
+
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+					if (!files.containsKey(getRelativePath(targetRoot, file))) {
+						Files.delete(file);
+						filesRemoved++;
+						log.debug("Removed " + file);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				public FileVisitResult postVisitDirectory(Path dir, IOException ex) throws IOException {
+					if (ex != null)
+						throw ex;
+					if (!dir.equals(targetRoot) && isEmpty(dir))
+						Files.delete(dir);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		return filesCopied > copied || filesRemoved > removed;
+	}
+
+	/**
+	 * @return the number of files copied by all syncs so far
+	 */
+	public int getFilesCopied() {
+		return filesCopied;
+	}
+
+	/**
+	 * @return the number of bytes copied by all syncs so far
+	 */
+	public long getBytesCopied() {
+		return bytesCopied;
+	}
+
+	/**
+	 * @return the number of files removed from targets by all syncs so far
+	 */
+	public int getFilesRemoved() {
+		return filesRemoved;
+	}
+
+	private void copy(Path src, Path dst) throws IOException {
+		BasicFileAttributes source = Files.readAttributes(src, BasicFileAttributes.class);
+		if (Files.isRegularFile(dst)) {
+			BasicFileAttributes existing = Files.readAttributes(dst, BasicFileAttributes.class);
+			if (existing.size() == source.size() && existing.lastModifiedTime().toMillis() == source.lastModifiedTime().toMillis())
+				return;
+		}
+		Path tmp = BundleStore.createTempFile(dst.toFile()).toPath();
+		try {
+			Files.copy(src, tmp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+			BundleStore.move(tmp, dst);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		filesCopied++;
+		bytesCopied += source.size();
+		log.debug("Copied " + src + " to " + dst);
+	}
+
+	private static boolean isEmpty(Path dir) {
+		String[] children = dir.toFile().list();
+		return children != null && children.length == 0;
+	}
+
+	private static String getRelativePath(Path root, Path file) {
+		return root.relativize(file).toString().replace(File.separatorChar, '/');
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.util.Arrays;
+
+import org.eclipse.osgi.service.resolver.VersionRange;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+
+/**
+ * Maps exported packages to the bundles exporting them. Packages and bundles
+ * are kept as ids of a {@link SymbolTable}, the exporters of a package are
+ * stored in arrays indexed by package id and sorted by export version, so an
+ * import version range is resolved by a binary search for its maximum.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class ExportPackageIndex {
+
+	/**
+	 * The exporters of a single package in ascending version order.
+	 */
+	private static class Exporters {
+
+		private Version[] versions = new Version[1];
+
+		private int[] bundles = new int[1];
+
+		private int size;
+
+		void add(Version version, int bundle) {
+			int position = Arrays.binarySearch(versions, 0, size, version);
+			if (position >= 0) {
+				bundles[position] = bundle;
+				return;
+			}
+			position = -position - 1;
+			if (size == versions.length) {
+				versions = Arrays.copyOf(versions, size * 2);
+				bundles = Arrays.copyOf(bundles, size * 2);
+			}
+			System.arraycopy(versions, position, versions, position + 1, size - position);
+			System.arraycopy(bundles, position, bundles, position + 1, size - position);
+			versions[position] = version;
+			bundles[position] = bundle;
+			size++;
+		}
+
+		int lookup(VersionRange range) {
+			if (range == null)
+				return bundles[size - 1];
+
+			// the highest version not above the maximum is the only candidate
+			int highest = size - 1;
+			Version maximum = range.getMaximum();
+			if (maximum != null) {
+				int position = Arrays.binarySearch(versions, 0, size, maximum);
+				if (position >= 0)
+					highest = range.getIncludeMaximum() ? position : position - 1;
+				else
+					highest = -position - 2;
+			}
+			if (highest < 0)
+				return -1;
+			int comparison = versions[highest].compareTo(range.getMinimum());
+			return comparison > 0 || (comparison == 0 && range.getIncludeMinimum()) ? bundles[highest] : -1;
+		}
+	}
+
+	private final SymbolTable symbols;
+
+	private Exporters[] exporters = new Exporters[64];
+
+	public ExportPackageIndex(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+
+	/**
+	 * @return the table package and bundle names are interned in
+	 */
+	public SymbolTable getSymbols() {
+		return symbols;
+	}
+
+	/**
+	 * Registers a bundle exporting a package. If two bundles export the same
+	 * package in the same version, the one added last wins.
+	 */
+	public void add(String packageName, Version version, String symbolicName) {
+		add(symbols.intern(packageName), version, symbols.intern(symbolicName));
+	}
+
+	/**
+	 * Registers a bundle exporting a package, both given as symbol ids.
+	 */
+	public void add(int packageName, Version version, int symbolicName) {
+		if (packageName >= exporters.length)
+			exporters = Arrays.copyOf(exporters, Math.max(exporters.length * 2, packageName + 1));
+		Exporters versions = exporters[packageName];
+		if (versions == null) {
+			versions = new Exporters();
+			exporters[packageName] = versions;
+		}
+		versions.add(version, symbolicName);
+	}
+
+	public boolean contains(String packageName) {
+		return getExporters(symbols.lookup(packageName)) != null;
+	}
+
+	/**
+	 * Finds the bundle exporting the highest version of a package within the
+	 * given range.
+	 *
+	 * @param range
+	 *            the acceptable versions, <code>null</code> accepts any
+	 * @return the symbolic name of the exporting bundle or <code>null</code>
+	 *         if no bundle exports the package in a matching version
+	 */
+	public String lookup(String packageName, VersionRange range) {
+		int exporter = lookup(symbols.lookup(packageName), range);
+		return exporter < 0 ? null : symbols.getName(exporter);
+	}
+
+	/**
+	 * Finds the bundle exporting the highest version of a package within the
+	 * given range.
+	 *
+	 * @param packageName
+	 *            the symbol id of the package, <code>-1</code> for an unknown
+	 *            package
+	 * @return the symbol id of the exporting bundle or <code>-1</code>
+	 */
+	public int lookup(int packageName, VersionRange range) {
+		Exporters versions = getExporters(packageName);
+		return versions == null ? -1 : versions.lookup(range);
+	}
+
+	private Exporters getExporters(int packageName) {
+		return packageName >= 0 && packageName < exporters.length ? exporters[packageName] : null;
+	}
+
+	/**
+	 * @return the version of the current clause of an Export-Package header,
+	 *         <code>0.0.0</code> if it doesn't specify one
+	 * @throws IllegalArgumentException
+	 *             if the version is malformed
+	 */
+	public static Version getVersion(HeaderTokenizer clause) {
+		String version = getVersionAttribute(clause);
+		try {
+			return version == null ? Version.emptyVersion : Version.parseVersion(version);
+		} catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException("Invalid version '" + version + "'", ex);
+		}
+	}
+
+	/**
+	 * @return the range of the version attribute of the current clause of an
+	 *         Import-Package header or <code>null</code> if any version is
+	 *         acceptable
+	 * @throws IllegalArgumentException
+	 *             if the range is malformed
+	 */
+	public static VersionRange getVersionRange(HeaderTokenizer clause) {
+		String version = getVersionAttribute(clause);
+		try {
+			return version == null ? null : new VersionRange(version);
+		} catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException("Invalid version range '" + version + "'", ex);
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private static String getVersionAttribute(HeaderTokenizer clause) {
+		String version = clause.getAttribute(Constants.VERSION_ATTRIBUTE);
+		if (version == null)
+			version = clause.getAttribute(Constants.PACKAGE_SPECIFICATION_VERSION);
+		return version;
+	}
+}
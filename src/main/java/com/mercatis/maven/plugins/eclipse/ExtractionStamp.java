@@ -0,0 +1,163 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Records which package has been extracted into a target platform: the size
+ * and modification time of the package and the entries it contributed.
+ * <p>
+ * Stamps are kept in the <code>stamps</code> folder of the target platform
+ * metadata, one file per package. Packages may share entries, an entry is
+ * only stale once no stamp lists it anymore.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class ExtractionStamp {
+
+	private static final String STAMP_FOLDER = "stamps";
+
+	private static final String STAMP_SUFFIX = ".stamp";
+
+	private static final String ENCODING = "UTF-8";
+
+	private final long length;
+
+	private final long lastModified;
+
+	private final List<String> entries;
+
+	public ExtractionStamp(long length, long lastModified, List<String> entries) {
+		this.length = length;
+		this.lastModified = lastModified;
+		this.entries = entries;
+	}
+
+	/**
+	 * @return the stamp of the given package or <code>null</code> if it
+	 *         hasn't been extracted into the target platform yet
+	 */
+	public static ExtractionStamp read(File targetPlatformLocation, String packageName) throws IOException {
+		File file = getStampFile(targetPlatformLocation, packageName);
+		if (!file.isFile())
+			return null;
+		return read(file);
+	}
+
+	private static ExtractionStamp read(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+		try {
+			String length = reader.readLine();
+			String lastModified = reader.readLine();
+			if (length == null || lastModified == null)
+				return null;
+			List<String> entries = new ArrayList<String>();
+			String entry;
+			while ((entry = reader.readLine()) != null) {
+				entries.add(entry);
+			}
+			return new ExtractionStamp(Long.parseLong(length), Long.parseLong(lastModified), entries);
+		} catch (NumberFormatException ex) {
+			return null;
+		} finally {
+			reader.close();
+		}
+	}
+
+	public void write(File targetPlatformLocation, String packageName) throws IOException {
+		File file = getStampFile(targetPlatformLocation, packageName);
+		File tmp = BundleStore.createTempFile(file);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), ENCODING));
+		try {
+			writer.write(Long.toString(length));
+			writer.write('\n');
+			writer.write(Long.toString(lastModified));
+			writer.write('\n');
+			for (String entry : entries) {
+				writer.write(entry);
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+		BundleStore.move(tmp.toPath(), file.toPath());
+	}
+
+	/**
+	 * @return <code>true</code> if the package still has the size and
+	 *         modification time it had when it was extracted
+	 */
+	public boolean matches(File pkg) {
+		return pkg.length() == length && pkg.lastModified() == lastModified;
+	}
+
+	/**
+	 * Determines the entries of this stamp that a new extraction of its
+	 * package didn't write again and that no other package's stamp lists.
+	 *
+	 * @param extracted
+	 *            the entries of the new extraction
+	 * @return the entries to delete, in the order of this stamp
+	 */
+	public List<String> getStaleEntries(File targetPlatformLocation, String packageName, Collection<String> extracted)
+			throws IOException {
+		Set<String> stale = new LinkedHashSet<String>(entries);
+		stale.removeAll(new HashSet<String>(extracted));
+		File[] stamps = TargetPlatformLayout.getMetadataFile(targetPlatformLocation, STAMP_FOLDER).listFiles();
+		for (int i = 0; stamps != null && i < stamps.length && !stale.isEmpty(); i++) {
+			String name = stamps[i].getName();
+			if (!name.endsWith(STAMP_SUFFIX) || name.equals(packageName + STAMP_SUFFIX))
+				continue;
+			ExtractionStamp other = read(stamps[i]);
+			if (other != null)
+				stale.removeAll(new HashSet<String>(other.entries));
+		}
+		return new ArrayList<String>(stale);
+	}
+
+	/**
+	 * @return the modification time of the package when it was extracted
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return the names of the file entries extracted from the package
+	 */
+	public List<String> getEntries() {
+		return entries;
+	}
+
+	private static File getStampFile(File targetPlatformLocation, String packageName) {
+		return new File(TargetPlatformLayout.getMetadataFile(targetPlatformLocation, STAMP_FOLDER), packageName + STAMP_SUFFIX);
+	}
+}
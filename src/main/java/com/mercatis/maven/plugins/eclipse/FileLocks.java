@@ -0,0 +1,192 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes builds writing the same package or bundle, the threads of a
+ * parallel reactor build as well as separate builds sharing a package
+ * repository or target platform.
+ * <p>
+ * A lock is identified by its canonical lock file. Within this JVM every lock
+ * file has a lock of its own, so unrelated packages and bundles never wait for
+ * each other, across processes its holder additionally takes a
+ * {@link java.nio.channels.FileLock} on the lock file. Lock files are never
+ * deleted, deleting them would let two processes lock different files of the
+ * same name.
+ * <p>
+ * Only writers lock. Every file is written to a temporary file and renamed
+ * into place, so readers neither block nor see half written files.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public final class FileLocks {
+
+	private static final String LOCK_SUFFIX = ".lock";
+
+	/** the lock files held or waited for by threads of this JVM */
+	private static final Map<String,Holder> HELD = new HashMap<String,Holder>();
+
+	private static final class Holder {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/** threads holding or waiting for the lock, guarded by HELD */
+		private int users;
+
+		/** open while the lock is held, guarded by the lock */
+		private FileChannel channel;
+
+		/** locks held by the owner, guarded by the lock */
+		private int count;
+	}
+
+	/**
+	 * A lock held by the current thread.
+	 */
+	public static final class Lock implements Closeable {
+
+		private final String key;
+
+		private final Holder holder;
+
+		private boolean released;
+
+		Lock(String key, Holder holder) {
+			this.key = key;
+			this.holder = holder;
+		}
+
+		/**
+		 * Releases the lock, releasing it again has no effect.
+		 */
+		public void close() throws IOException {
+			if (released)
+				return;
+			released = true;
+			try {
+				if (--holder.count == 0) {
+					FileChannel channel = holder.channel;
+					holder.channel = null;
+					// closing the channel releases the file lock
+					channel.close();
+				}
+			} finally {
+				holder.lock.unlock();
+				release(key, holder);
+			}
+		}
+	}
+
+	private FileLocks() {
+	}
+
+	/**
+	 * @return the file locking the given name in the <code>locks</code>
+	 *         folder of the given folder
+	 */
+	public static File getLockFile(File folder, String name) {
+		return new File(new File(folder, "locks"), name + LOCK_SUFFIX);
+	}
+
+	/**
+	 * Locks a package against being extracted into a target platform by
+	 * another build at the same time, which finds it extracted once the lock
+	 * is released.
+	 */
+	public static Lock lockPackage(File targetPlatformLocation, String packageName) throws IOException {
+		return lock(TargetPlatformLayout.getLockFile(targetPlatformLocation, "package-" + packageName));
+	}
+
+	/**
+	 * Locks a plugin folder entry of a target platform against being written
+	 * by another build at the same time.
+	 */
+	public static Lock lockBundle(File targetPlatformLocation, String name) throws IOException {
+		return lock(TargetPlatformLayout.getLockFile(targetPlatformLocation, "bundle-" + name));
+	}
+
+	/**
+	 * Waits for the given lock file to be free and locks it. The same thread
+	 * may lock it again, it is freed once every lock has been closed.
+	 */
+	public static Lock lock(File lockFile) throws IOException {
+		String key = getKey(lockFile);
+		Holder holder;
+		synchronized (HELD) {
+			holder = HELD.get(key);
+			if (holder == null) {
+				holder = new Holder();
+				HELD.put(key, holder);
+			}
+			holder.users++;
+		}
+
+		boolean locked = false;
+		try {
+			holder.lock.lockInterruptibly();
+			try {
+				if (holder.count == 0) {
+					lockFile.getParentFile().mkdirs();
+					FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					try {
+						channel.lock();
+					} catch (IOException ex) {
+						channel.close();
+						throw ex;
+					}
+					holder.channel = channel;
+				}
+				holder.count++;
+				locked = true;
+				return new Lock(key, holder);
+			} finally {
+				if (!locked)
+					holder.lock.unlock();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + key);
+		} finally {
+			if (!locked)
+				release(key, holder);
+		}
+	}
+
+	private static void release(String key, Holder holder) {
+		synchronized (HELD) {
+			if (--holder.users == 0)
+				HELD.remove(key);
+		}
+	}
+
+	private static String getKey(File lockFile) {
+		try {
+			return lockFile.getCanonicalPath();
+		} catch (IOException ex) {
+			return lockFile.getAbsolutePath();
+		}
+	}
+}
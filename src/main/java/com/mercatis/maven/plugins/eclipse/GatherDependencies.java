@@ -15,33 +15,37 @@
  */
 package com.mercatis.maven.plugins.eclipse;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.util.Dictionary;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Hashtable;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.Attributes;
-import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.versioning.VersionRange;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
-import org.codehaus.plexus.util.FileUtils;
-import org.eclipse.osgi.framework.internal.core.FilterImpl;
-import org.eclipse.osgi.util.ManifestElement;
-import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
-import org.osgi.framework.Filter;
 
 /**
  * Analysis the dependencies and populates the target accordingly. Also, adjusts
@@ -58,6 +62,10 @@ import org.osgi.framework.Filter;
  */
 public class GatherDependencies extends AbstractMojo {
 	
+	private static final String MODE_FULL = "full";
+	
+	private static final String MODE_MINIMAL = "minimal";
+	
 	/**
 	 * @parameter expression="${project}"
 	 */
@@ -79,126 +87,264 @@ public class GatherDependencies extends AbstractMojo {
 	 */
 	private File targetPlatformLocation;
 	
-	private Map<String,File> symbolicNameLookup;
+	/**
+	 * The environments platform specific fragments are resolved for. The
+	 * classpath is built for the first one, the others are resolved in the
+	 * same scan of the target platform. Defaults to win32/win32/x86/en.
+	 * 
+	 * @parameter
+	 */
+	private List<TargetEnvironment> targetEnvironments;
+	
+	/**
+	 * Folder the classpath of every target environment is written to, one
+	 * file per environment named like <code>linux.gtk.x86_64.en.txt</code>
+	 * with one bundle per line.
+	 * 
+	 * @parameter default-value="${project.build.directory}/eclipse-classpath"
+	 */
+	private File classpathDirectory;
+	
+	/**
+	 * Number of threads reading bundle manifests while scanning the target
+	 * platform. <code>0</code> uses one thread per available processor.
+	 * 
+	 * @parameter default-value="0"
+	 */
+	private int scanThreads;
+	
+	/**
+	 * Place dependencies into the target platform by linking them from the
+	 * bundle store instead of copying them.
+	 * 
+	 * @parameter default-value="true"
+	 */
+	private boolean useBundleStore;
+	
+	/**
+	 * Location of the content addressed bundle store. Defaults to
+	 * <code>eclipse-bundle-store</code> next to the local repository.
+	 * 
+	 * @parameter
+	 */
+	private File bundleStore;
+	
+	/**
+	 * Number of threads copying dependencies into the plugin folder.
+	 * <code>0</code> uses one thread per available processor.
+	 * 
+	 * @parameter default-value="0"
+	 */
+	private int copyThreads;
+	
+	/**
+	 * Compare a dependency already in the plugin folder by digest when its
+	 * size matches but its modification time doesn't, e.g. for rebuilt
+	 * snapshots. Digests are remembered in the target platform, an unchanged
+	 * file isn't digested again.
+	 * 
+	 * @parameter default-value="false"
+	 */
+	private boolean compareDigest;
 
-	private Map<String,String> exportPackageLookup;
+	/**
+	 * Maximum number of packages kept open while lazily materialized bundles
+	 * are extracted from them. Shared by all modules of a build, the value of
+	 * the module running last applies.
+	 * 
+	 * @parameter default-value="16"
+	 */
+	private int maxOpenArchives;
+	
+	/**
+	 * Which bundles are put on the classpath: <code>full</code> adds every
+	 * bundle reachable through Require-Bundle and Import-Package,
+	 * <code>minimal</code> only the bundles visible to the project under OSGi
+	 * rules, i.e. its required bundles with their re-exported bundles and the
+	 * exporters of its imported packages, in the order they are declared.
+	 * 
+	 * @parameter default-value="full"
+	 */
+	private String resolutionMode;
+	
+	/**
+	 * Reuse the bundles resolved by the last build as long as neither the
+	 * bundle manifest, the target environments nor the bundles providing what
+	 * it was resolved from changed. Installing unrelated bundles keeps it. The
+	 * result is kept in the build directory.
+	 * 
+	 * @parameter default-value="true"
+	 */
+	private boolean useResolutionCache;
 	
-	private Map<String,String> fragmentHostLookup;
+	/**
+	 * @parameter expression="${localRepository}"
+	 * @readonly
+	 * @required
+	 */
+	private ArtifactRepository repository;
+	
+	/**
+	 * @parameter expression="${reactorProjects}"
+	 * @readonly
+	 */
+	private List<MavenProject> reactorProjects;
 	
 	private File pluginFolder;
 	
-	private Set<String> bundlesAlreadyAnalysed = new HashSet<String>();
+	private TargetPlatformModel model;
+	
+	private BuildMetrics metrics;
 	
-	private Dictionary<String,String> platformFilterDictionary;
 
 	public void execute() throws MojoExecutionException, MojoFailureException {
-		initializePlatformFilterDictionary();
-		pluginFolder = new File(new File(targetPlatformLocation, "eclipse"), "plugins");
-		
-		copyDeclaredMavenDependencies();
-		
-		scanTarget();
-		
+		if (targetEnvironments == null || targetEnvironments.isEmpty())
+			targetEnvironments = Collections.singletonList(TargetEnvironment.DEFAULT);
+		if (!MODE_FULL.equals(resolutionMode) && !MODE_MINIMAL.equals(resolutionMode))
+			throw new MojoExecutionException("Unknown resolutionMode '" + resolutionMode + "', expected " + MODE_FULL
+					+ " or " + MODE_MINIMAL + ".");
+		pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		if (maxOpenArchives < 1)
+			throw new MojoExecutionException("maxOpenArchives must be at least 1, not " + maxOpenArchives + ".");
+		metrics = new BuildMetrics("gatherDependencies");
+		// trees an instant clean couldn't delete before Maven exited
+		int leftovers = new DirectoryRemover(1, getLog()).removeLeftovers(targetPlatformLocation);
+		if (leftovers > 0)
+			getLog().info("Deleting " + leftovers + " leftovers of earlier instant cleans in the background.");
+		ArchivePool.getShared().setMaximumOpen(maxOpenArchives);
 		try {
-			FileInputStream fis = null;
+			metrics.phase("copy");
+			copyDeclaredMavenDependencies();
+			
+			metrics.phase("cache");
+			Attributes attributes;
+			ResolutionCache cache = useResolutionCache ? new ResolutionCache(new File(project.getBuild().getDirectory()), getLog()) : null;
+			String key = null;
 			try {
-				fis = new FileInputStream(bundleManifest);
-				Manifest mf = new Manifest(fis);
-
-				addDependencies(mf);
-//				analyseRequireBundleDirectives(header);
-//				analyseImportPackageDirectives(attributes);
-			} finally {
-				fis.close();
+				byte[] manifest = Files.readAllBytes(bundleManifest.toPath());
+				attributes = new Manifest(new ByteArrayInputStream(manifest)).getMainAttributes();
+				if (cache != null)
+					key = ResolutionCache.getKey(manifest, targetEnvironments, resolutionMode);
+			} catch (IOException ex) {
+				throw new MojoExecutionException(ex.getMessage(), ex);
 			}
-		} catch (Exception ex) {
-			throw new MojoExecutionException(ex.getMessage(), ex);
-		}
-	}
-	
-	private void initializePlatformFilterDictionary() {
-		platformFilterDictionary = new Hashtable<String,String>();
-		platformFilterDictionary.put("osgi.ws", "win32");
-		platformFilterDictionary.put("osgi.os", "win32");
-		platformFilterDictionary.put("osgi.arch", "x86");
-		platformFilterDictionary.put("osgi.nl", "en");
-	}
-	
-	private void addDependencies(Manifest mf) throws MojoExecutionException {
-		if (bundlesAlreadyAnalysed.contains(mf.getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME)))
-			return;
-		analyseRequireBundleDirectives(mf);
-		analyseImportPackageDirectives(mf);
-		bundlesAlreadyAnalysed.add(mf.getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME));
-	}
+			ResolutionCache.Resolution resolution = cache != null ? cache.read(key, targetPlatformLocation) : null;
+			if (resolution != null) {
+				metrics.phase("resolve");
+				metrics.count("resolution.cached", 1);
+				getLog().info("Reusing the resolution of " + bundleManifest.getName() + ", neither it nor the bundles it depends on changed.");
+			} else {
+				// switched to the scan phase only if this module scans itself
+				metrics.phase("resolve");
+				scanTarget();
+				
+				metrics.phase("resolve");
+				resolution = resolve(model, targetEnvironments, resolutionMode, attributes, metrics, getLog());
 
-	private void analyseRequireBundleDirectives(Manifest manifest) throws MojoExecutionException {
-		ManifestElement[] elements = null;
-		try {
-			elements = ManifestElement.parseHeader(Constants.REQUIRE_BUNDLE, (String) manifest.getMainAttributes().getValue(Constants.REQUIRE_BUNDLE));
-		} catch (BundleException ex) {
-			throw new MojoExecutionException(ex.getMessage(), ex);
-		}
-		
-		if (elements == null)
-			return;
-		
-		for (ManifestElement element : elements) {
-			if (symbolicNameLookup.containsKey(element.getValue())) {
-				String bundleName = element.getValue();
-				File bundle = symbolicNameLookup.get(bundleName);
+				metrics.phase("extract");
 				try {
-					Manifest requireBundleManifest = (new JarFile(bundle)).getManifest();
-					addDependencies(requireBundleManifest);
+					Set<File> files = new LinkedHashSet<File>();
+					for (List<File> classpath : resolution.getClasspaths().values()) {
+						files.addAll(classpath);
+					}
+					int extracted = PackageCatalog.extractMissingBundles(targetPlatformLocation, files, getLog());
+					metrics.count("bundles.extracted", extracted);
+					if (extracted > 0)
+						getLog().info("Extracted " + extracted + " bundles of lazily materialized packages.");
 				} catch (IOException ex) {
 					throw new MojoExecutionException(ex.getMessage(), ex);
 				}
-
-				addDependencyToMavenProject(bundleName, bundle);
-				
-				getLog().debug("RequireBundle directive for " + element.getValue() + " is satisfied.");
+				if (cache != null) {
+					try {
+						cache.write(key, resolution, attributes, targetPlatformLocation);
+					} catch (IOException ex) {
+						getLog().warn("Unable to cache the resolution: " + ex.getMessage());
+					}
+				}
+			}
+			addDependencies(resolution);
+			writeClasspaths(resolution);
+		} finally {
+			ArchivePool.getShared().closeIdle(getLog());
+			MetricsReport.record(project, reactorProjects, metrics, getLog());
+		}
+	}
+	
+	/**
+	 * Resolves a bundle manifest against every target environment. The
+	 * bundles and problems are those of the first environment, the project is
+	 * compiled against it.
+	 */
+	static ResolutionCache.Resolution resolve(TargetPlatformModel model, List<TargetEnvironment> environments,
+			String resolutionMode, Attributes attributes, BuildMetrics metrics, Log log) {
+		String symbolicName = BundleDescriptor.parseSymbolicName(attributes.getValue(Constants.BUNDLE_SYMBOLICNAME));
+		ResolutionCache.Resolution resolution = new ResolutionCache.Resolution();
+		for (TargetEnvironment environment : environments) {
+			BundleGraph bundleGraph = model.getBundleGraph(environment);
+			BundleGraph.Requirements requirements = bundleGraph.resolve(symbolicName,
+					attributes.getValue(Constants.REQUIRE_BUNDLE), attributes.getValue(Constants.IMPORT_PACKAGE));
+			List<String> closure = getClasspath(bundleGraph, requirements, resolutionMode);
+			List<File> classpath = new ArrayList<File>(closure.size());
+			for (String bundleName : closure) {
+				classpath.add(bundleGraph.getFile(bundleName));
+			}
+			boolean first = resolution.getClasspaths().isEmpty();
+			resolution.addClasspath(environment.getId(), classpath);
+			// the other environments only differ in their fragments
+			if (!first)
+				continue;
+			
+			for (String problem : requirements.getProblems()) {
+				resolution.addProblem(problem);
 			}
-			else {
-				getLog().warn("RequireBundle directive for " + element.getValue() + " is not satisfied.");
+			metrics.count(BuildMetrics.RESOLUTION_EDGES, bundleGraph.getEdgeCount(closure));
+			for (String bundleName : closure) {
+				for (String problem : bundleGraph.getProblems(bundleName)) {
+					log.debug(bundleName + ": " + problem);
+				}
+				resolution.addBundle(bundleName, bundleGraph.getFile(bundleName));
 			}
 		}
+		return resolution;
 	}
 	
-	private void analyseImportPackageDirectives(Manifest mf) throws MojoExecutionException {
-		ManifestElement[] elements = null;
-		try {
-			elements = ManifestElement.parseHeader(Constants.REQUIRE_BUNDLE, (String) mf.getMainAttributes().getValue(Constants.REQUIRE_BUNDLE));
-		} catch (BundleException ex) {
-			throw new MojoExecutionException(ex.getMessage(), ex);
+	private static List<String> getClasspath(BundleGraph bundleGraph, BundleGraph.Requirements requirements,
+			String resolutionMode) {
+		if (MODE_MINIMAL.equals(resolutionMode))
+			return bundleGraph.getVisibleBundles(requirements);
+		return bundleGraph.getClosure(requirements);
+	}
+	
+	private void addDependencies(ResolutionCache.Resolution resolution) {
+		for (String problem : resolution.getProblems()) {
+			getLog().warn(problem);
 		}
-		
-		if (elements == null)
-			return;
-		
-		for (ManifestElement element : elements) {
-			if (exportPackageLookup.containsKey(element.getValue())) {
-				String bundleName = exportPackageLookup.get(element.getValue());
-				File bundle = symbolicNameLookup.get(bundleName);
-				try {
-					Manifest requireBundleManifest = (new JarFile(bundle)).getManifest();
-					addDependencies(requireBundleManifest);
-				} catch (IOException ex) {
-					throw new MojoExecutionException(ex.getMessage(), ex);
-				}
-				
-				addDependencyToMavenProject(bundleName, bundle);
-				
-				// if we've got a fragment for this bundle, attach it as well
-				if (fragmentHostLookup.containsKey(bundleName)) {
-					String fragment = fragmentHostLookup.get(bundleName);
-					File fragmentFile = symbolicNameLookup.get(fragment);
-					addDependencyToMavenProject(fragment, fragmentFile);
+		metrics.count("bundles.resolved", resolution.getBundles().size());
+		for (Map.Entry<String,File> bundle : resolution.getBundles().entrySet()) {
+			addDependencyToMavenProject(bundle.getKey(), bundle.getValue());
+			getLog().debug("Added bundle " + bundle.getKey() + " to the classpath.");
+		}
+	}
+
+	private void writeClasspaths(ResolutionCache.Resolution resolution) throws MojoExecutionException {
+		classpathDirectory.mkdirs();
+		try {
+			for (Map.Entry<String,List<File>> classpath : resolution.getClasspaths().entrySet()) {
+				List<String> lines = new ArrayList<String>(classpath.getValue().size());
+				for (File file : classpath.getValue()) {
+					lines.add(file.getAbsolutePath());
 				}
-				
-				getLog().debug("ImportPackage directive for " + element.getValue() + " is satisfied.");
-			} else {
-				getLog().warn("ImportPackage directive for " + element.getValue() + " is not satisfied.");
+				Files.write(new File(classpathDirectory, classpath.getKey() + ".txt").toPath(), lines, Charset.forName("UTF-8"));
 			}
+		} catch (IOException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+		// environments no longer configured
+		File[] files = classpathDirectory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			String name = files[i].getName();
+			if (name.endsWith(".txt") && !resolution.getClasspaths().containsKey(name.substring(0, name.length() - 4)))
+				files[i].delete();
 		}
 	}
 
@@ -212,91 +358,77 @@ public class GatherDependencies extends AbstractMojo {
 
 	@SuppressWarnings("unchecked")
 	private void copyDeclaredMavenDependencies() throws MojoExecutionException {
+		final DigestCache digests = DigestCache.load(targetPlatformLocation, getLog());
+		final BundleStore store = useBundleStore
+				? new BundleStore(bundleStore != null ? bundleStore : BundleStore.getDefaultLocation(repository), digests, getLog())
+				: null;
+		
+		Set<Artifact> artifacts = project.getArtifacts();
+		final AtomicInteger copied = new AtomicInteger();
+		// only bundles written by the build, a dependency may be named like a bundle of the platform
+		final List<File> written = Collections.synchronizedList(new ArrayList<File>());
+		final AtomicLong bytes = new AtomicLong();
+		long start = System.currentTimeMillis();
+		int threads = copyThreads > 0 ? copyThreads : Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, artifacts.size())));
 		try {
-			Set<Artifact> artifacts = project.getArtifacts();
-			for (Artifact artifact : artifacts) {
-				getLog().info("Copying dependency " + artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion() + " to plugin folder.");
-				FileUtils.copyFileToDirectory(artifact.getFile(), pluginFolder);
+			List<Future<Object>> futures = new ArrayList<Future<Object>>(artifacts.size());
+			for (final Artifact artifact : artifacts) {
+				futures.add(executor.submit(new Callable<Object>() {
+					
+					public Object call() throws IOException {
+						File file = artifact.getFile();
+						boolean changed;
+						FileLocks.Lock lock = FileLocks.lockBundle(targetPlatformLocation, file.getName());
+						try {
+							changed = store != null ? store.place(file, pluginFolder, compareDigest) : BundleStore.copy(file, pluginFolder, compareDigest, digests);
+						} finally {
+							lock.close();
+						}
+						if (changed) {
+							getLog().debug("Copied dependency " + artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion() + " to plugin folder.");
+							copied.incrementAndGet();
+							bytes.addAndGet(file.length());
+							written.add(new File(pluginFolder, file.getName()));
+						}
+						return null;
+					}
+				}));
 			}
-
-			// remove repository based dependencies
-			project.getDependencyArtifacts().clear();
+			for (Future<Object> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while copying dependencies", ex);
+		} catch (ExecutionException ex) {
+			throw new MojoExecutionException(ex.getCause().getMessage(), ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		metrics.count(BuildMetrics.FILES_COPIED, copied.get());
+		metrics.count(BuildMetrics.BYTES_COPIED, bytes.get());
+		metrics.count("files.digested", digests.getDigestCount());
+		if (copied.get() > 0)
+			TargetPlatformCache.invalidate(targetPlatformLocation);
+		
+		try {
+			digests.store();
+			BundleLedger.record(targetPlatformLocation, written);
 		} catch (IOException ex) {
 			throw new MojoExecutionException(ex.getMessage(), ex);
 		}
+		getLog().info("Dependencies: " + copied.get() + " copied, " + (artifacts.size() - copied.get()) + " unchanged, "
+				+ bytes.get() + " bytes in " + (System.currentTimeMillis() - start) + " ms.");
+		
+		// remove repository based dependencies
+		project.getDependencyArtifacts().clear();
 	}
 	
 	private void scanTarget() throws MojoExecutionException {
-		File target = new File(this.targetPlatformLocation, "eclipse/plugins");
-		File[] bundles = target.listFiles(new FilenameFilter() {
-
-			public boolean accept(File dir, String name) {
-				return name.endsWith("jar");
-			}
-		});
-
-		try {
-			symbolicNameLookup = new HashMap<String,File>();
-			exportPackageLookup = new HashMap<String,String>();
-			fragmentHostLookup = new HashMap<String,String>();
-			
-			for (File bundle : bundles) {
-				JarFile jar = new JarFile(bundle);
-				Manifest manifest = jar.getManifest();
-				Attributes attributes = manifest.getMainAttributes();
-
-				String symbolicName = null;
-				String version = null;
-				String[] exportedPkgs = new String[0];
-
-				symbolicName = attributes.getValue(Constants.BUNDLE_SYMBOLICNAME);
-				if (symbolicName == null)
-					continue; // no osgi bundle
-				
-				if (symbolicName.contains(";"))
-					symbolicName = symbolicName.substring(0, symbolicName
-							.indexOf(";"));
-
-				ManifestElement[] elements = ManifestElement.parseHeader(Constants.FRAGMENT_HOST, attributes.getValue(Constants.FRAGMENT_HOST));
-				if (elements != null && elements.length > 0) {
-					//this bundle is actually a fragment
-					//now lets look if it fits our platform
-					
-					ManifestElement[] filter = ManifestElement.parseHeader("Eclipse-PlatformFilter", attributes.getValue("Eclipse-PlatformFilter"));
-					if (filter != null && filter.length > 0) {
-						Filter f = new FilterImpl(filter[0].getValue());
-						if (f.match(platformFilterDictionary)) {
-							fragmentHostLookup.put(elements[0].getValue(), symbolicName);
-							symbolicNameLookup.put(symbolicName.trim(), bundle);
-						}
-					}
-					continue;
-				}
-				
-				version = attributes.getValue(Constants.BUNDLE_VERSION);
-				org.eclipse.osgi.service.resolver.VersionRange vr = new org.eclipse.osgi.service.resolver.VersionRange(version);
-
-				if (attributes.getValue(Constants.EXPORT_PACKAGE) != null) {
-					exportedPkgs = attributes
-							.getValue(Constants.EXPORT_PACKAGE).split(",");
-					for (int i = 0; i < exportedPkgs.length; i++) {
-						if (exportedPkgs[i].contains(";"))
-							exportedPkgs[i] = exportedPkgs[i].substring(0,
-									exportedPkgs[i].indexOf(";"));
-					}
-				}
-
-				getLog().debug("Identified bundle " + symbolicName + " / " + version);
-				symbolicNameLookup.put(symbolicName.trim(), bundle);
-				for (String pkg : exportedPkgs) {
-					getLog().debug(" Exports: " + pkg);
-					exportPackageLookup.put(pkg.trim(), symbolicName.trim());
-				}
-			}
-			
-		} catch (Exception ex) {
-			throw new MojoExecutionException(ex.getMessage(), ex);
-		}
+		int threads = scanThreads > 0 ? scanThreads : Runtime.getRuntime().availableProcessors();
+		model = TargetPlatformCache.get(targetPlatformLocation, targetEnvironments, threads, metrics, getLog());
 	}
 
 }
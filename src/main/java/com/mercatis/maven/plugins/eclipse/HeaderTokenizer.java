@@ -0,0 +1,310 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.util.Arrays;
+
+import org.osgi.framework.BundleException;
+
+/**
+ * Walks the clauses of an OSGi manifest header like Export-Package or
+ * Require-Bundle one at a time:
+ *
+ * <pre>
+ * header    ::= clause ( ',' clause ) *
+ * clause    ::= value ( ';' value ) * ( ';' parameter ) *
+ * parameter ::= name ( ':=' | '=' ) ( token | quoted-string )
+ * </pre>
+ *
+ * Commas and semicolons inside quoted strings, e.g. in <code>uses:=</code>
+ * lists, don't separate anything. A clause is only recorded as offsets into
+ * the header, its values are handed out as views of the header, so nothing
+ * is allocated for the parts of a header nobody asks for. Only attributes and
+ * directives that are asked for are turned into strings.
+ * <p>
+ * A tokenizer can be {@link #reset(CharSequence) reset} to another header and
+ * is meant to be reused for every header of a scan. It isn't thread safe.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class HeaderTokenizer {
+
+	/**
+	 * A view of a part of the header, changed by every call returning it.
+	 */
+	private static final class Token implements CharSequence {
+
+		private CharSequence header;
+
+		private int start;
+
+		private int end;
+
+		public int length() {
+			return end - start;
+		}
+
+		public char charAt(int index) {
+			return header.charAt(start + index);
+		}
+
+		public CharSequence subSequence(int from, int to) {
+			return header.subSequence(start + from, start + to);
+		}
+
+		public String toString() {
+			return header.subSequence(start, end).toString();
+		}
+	}
+
+	private static final int DIRECTIVE = 1;
+
+	private static final int ATTRIBUTE = 0;
+
+	private CharSequence header;
+
+	private int position;
+
+	/** start and end of every value of the current clause */
+	private int[] values = new int[8];
+
+	private int valueCount;
+
+	/** start and end of name and value and the kind of every parameter */
+	private int[] parameters = new int[20];
+
+	private int parameterCount;
+
+	private final Token token = new Token();
+
+	public HeaderTokenizer() {
+		reset(null);
+	}
+
+	public HeaderTokenizer(CharSequence header) {
+		reset(header);
+	}
+
+	/**
+	 * Starts over with another header, <code>null</code> has no clauses.
+	 */
+	public HeaderTokenizer reset(CharSequence header) {
+		this.header = header == null ? "" : header;
+		this.position = 0;
+		this.valueCount = 0;
+		this.parameterCount = 0;
+		token.header = this.header;
+		return this;
+	}
+
+	/**
+	 * Moves on to the next clause. Empty clauses are skipped.
+	 *
+	 * @return <code>false</code> if there are no more clauses
+	 * @throws BundleException
+	 *             if a parameter has no name
+	 */
+	public boolean nextClause() throws BundleException {
+		int length = header.length();
+		while (true) {
+			valueCount = 0;
+			parameterCount = 0;
+			if (position >= length)
+				return false;
+			while (position < length) {
+				parsePart();
+				char separator = position < length ? header.charAt(position) : ',';
+				position++;
+				if (separator == ',')
+					break;
+			}
+			if (valueCount > 0 || parameterCount > 0)
+				return true;
+		}
+	}
+
+	/**
+	 * @return the number of values, i.e. package or bundle names, of the
+	 *         current clause
+	 */
+	public int getValueCount() {
+		return valueCount;
+	}
+
+	/**
+	 * @return a view of a value of the current clause, only valid until this
+	 *         tokenizer is called again
+	 */
+	public CharSequence getValue(int index) {
+		if (index < 0 || index >= valueCount)
+			throw new IndexOutOfBoundsException("Value " + index + " of " + valueCount);
+		token.start = values[index * 2];
+		token.end = values[index * 2 + 1];
+		return token;
+	}
+
+	/**
+	 * @return the value of an attribute of the current clause or
+	 *         <code>null</code> if it isn't specified
+	 */
+	public String getAttribute(String name) {
+		int parameter = findParameter(name, ATTRIBUTE);
+		return parameter < 0 ? null : getParameterValue(parameter);
+	}
+
+	/**
+	 * @return the value of a directive of the current clause or
+	 *         <code>null</code> if it isn't specified
+	 */
+	public String getDirective(String name) {
+		int parameter = findParameter(name, DIRECTIVE);
+		return parameter < 0 ? null : getParameterValue(parameter);
+	}
+
+	/**
+	 * @return <code>true</code> if the current clause specifies the given
+	 *         directive with the given value, compared without creating a
+	 *         string
+	 */
+	public boolean hasDirective(String name, String value) {
+		int parameter = findParameter(name, DIRECTIVE);
+		if (parameter < 0)
+			return false;
+		int offset = parameter * 5;
+		return matches(parameters[offset + 2], parameters[offset + 3], value);
+	}
+
+	/**
+	 * Records the value or parameter starting at the current position and
+	 * stops at the following separator.
+	 */
+	private void parsePart() throws BundleException {
+		int length = header.length();
+		int start = skipWhitespace(position);
+		int i = start;
+		while (i < length) {
+			char c = header.charAt(i);
+			if (c == ';' || c == ',' || c == '=' || c == '"' || (c == ':' && i + 1 < length && header.charAt(i + 1) == '='))
+				break;
+			i++;
+		}
+		int nameEnd = trimEnd(start, i);
+		if (i >= length || header.charAt(i) == ';' || header.charAt(i) == ',') {
+			if (nameEnd > start)
+				addValue(start, nameEnd);
+			position = i;
+			return;
+		}
+		if (header.charAt(i) == '"' || nameEnd == start)
+			throw new BundleException("Invalid manifest header, expected a name at " + start + ": " + header);
+
+		int kind = header.charAt(i) == ':' ? DIRECTIVE : ATTRIBUTE;
+		i = skipWhitespace(i + (kind == DIRECTIVE ? 2 : 1));
+		int valueStart;
+		int valueEnd;
+		if (i < length && header.charAt(i) == '"') {
+			valueStart = i + 1;
+			i = valueStart;
+			while (i < length && header.charAt(i) != '"') {
+				i += header.charAt(i) == '\\' ? 2 : 1;
+			}
+			// an unterminated quoted string runs to the end of the header
+			i = Math.min(i, length);
+			valueEnd = i;
+			i++;
+			while (i < length && header.charAt(i) != ';' && header.charAt(i) != ',') {
+				i++;
+			}
+		} else {
+			valueStart = i;
+			while (i < length && header.charAt(i) != ';' && header.charAt(i) != ',') {
+				i++;
+			}
+			valueEnd = trimEnd(valueStart, i);
+		}
+		addParameter(start, nameEnd, valueStart, valueEnd, kind);
+		position = i;
+	}
+
+	private void addValue(int start, int end) {
+		if (valueCount * 2 == values.length)
+			values = Arrays.copyOf(values, values.length * 2);
+		values[valueCount * 2] = start;
+		values[valueCount * 2 + 1] = end;
+		valueCount++;
+	}
+
+	private void addParameter(int nameStart, int nameEnd, int valueStart, int valueEnd, int kind) {
+		if (parameterCount * 5 == parameters.length)
+			parameters = Arrays.copyOf(parameters, parameters.length * 2);
+		int offset = parameterCount * 5;
+		parameters[offset] = nameStart;
+		parameters[offset + 1] = nameEnd;
+		parameters[offset + 2] = valueStart;
+		parameters[offset + 3] = valueEnd;
+		parameters[offset + 4] = kind;
+		parameterCount++;
+	}
+
+	private int findParameter(String name, int kind) {
+		// like ManifestElement, the last of several equally named parameters wins
+		for (int parameter = parameterCount - 1; parameter >= 0; parameter--) {
+			int offset = parameter * 5;
+			if (parameters[offset + 4] == kind && matches(parameters[offset], parameters[offset + 1], name))
+				return parameter;
+		}
+		return -1;
+	}
+
+	private String getParameterValue(int parameter) {
+		int offset = parameter * 5;
+		String value = header.subSequence(parameters[offset + 2], parameters[offset + 3]).toString();
+		if (value.indexOf('\\') < 0)
+			return value;
+		StringBuilder unescaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length())
+				c = value.charAt(++i);
+			unescaped.append(c);
+		}
+		return unescaped.toString();
+	}
+
+	private boolean matches(int start, int end, String expected) {
+		if (end - start != expected.length())
+			return false;
+		for (int i = start; i < end; i++) {
+			if (header.charAt(i) != expected.charAt(i - start))
+				return false;
+		}
+		return true;
+	}
+
+	private int skipWhitespace(int i) {
+		while (i < header.length() && Character.isWhitespace(header.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private int trimEnd(int start, int end) {
+		while (end > start && Character.isWhitespace(header.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+}
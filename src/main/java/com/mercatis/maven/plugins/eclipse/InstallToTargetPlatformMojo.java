@@ -15,14 +15,22 @@
  */
 package com.mercatis.maven.plugins.eclipse;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
+import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.MavenProject;
-import org.codehaus.plexus.util.FileUtils;
+import org.osgi.framework.Constants;
 
 /**
  * Install jar to target platform location
@@ -50,15 +58,147 @@ public class InstallToTargetPlatformMojo extends AbstractMojo {
 	 */
 	private File targetPlatformLocation;
 	
+	/**
+	 * Place the jar into the target platform by linking it from the bundle
+	 * store instead of copying it.
+	 * 
+	 * @parameter default-value="true"
+	 */
+	private boolean useBundleStore;
+	
+	/**
+	 * Location of the content addressed bundle store. Defaults to
+	 * <code>eclipse-bundle-store</code> next to the local repository.
+	 * 
+	 * @parameter
+	 */
+	private File bundleStore;
+	
+	/**
+	 * Install the bundle as a directory instead of a jar: the output
+	 * directory is synchronized into <code>&lt;symbolic name&gt;_&lt;version&gt;</code>
+	 * in the plugin folder, copying only changed files, so the jar doesn't
+	 * need to be packaged for the target platform.
+	 * 
+	 * @parameter default-value="false"
+	 */
+	private boolean explodedInstall;
+	
+	/**
+	 * The manifest of an exploded install.
+	 * 
+	 * @parameter default-value="${basedir}/META-INF/MANIFEST.MF"
+	 */
+	private File bundleManifest;
+	
+	/**
+	 * @parameter expression="${project.build.outputDirectory}"
+	 * @readonly
+	 */
+	private File outputDirectory;
+	
+	/**
+	 * @parameter expression="${localRepository}"
+	 * @readonly
+	 * @required
+	 */
+	private ArtifactRepository repository;
+	
+	/**
+	 * @parameter expression="${reactorProjects}"
+	 * @readonly
+	 */
+	private List<MavenProject> reactorProjects;
+	
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		BuildMetrics metrics = new BuildMetrics("installToTargetPlatform");
+		try {
+			metrics.phase("install");
+			if (explodedInstall)
+				installExploded(metrics);
+			else
+				install(metrics);
+		} finally {
+			MetricsReport.record(project, reactorProjects, metrics, getLog());
+		}
+	}
+	
+	private void install(BuildMetrics metrics) throws MojoExecutionException {
 		File src = project.getArtifact().getFile();
-		File pluginFolder = new File(new File(targetPlatformLocation, "eclipse"), "plugins");
+		File pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		boolean changed;
 		try {
-			FileUtils.copyFileToDirectory(src, pluginFolder);
+			DigestCache digests = DigestCache.load(targetPlatformLocation, getLog());
+			FileLocks.Lock lock = FileLocks.lockBundle(targetPlatformLocation, src.getName());
+			try {
+				if (useBundleStore) {
+					BundleStore store = new BundleStore(bundleStore != null ? bundleStore : BundleStore.getDefaultLocation(repository), digests, getLog());
+					changed = store.place(src, pluginFolder);
+				} else {
+					changed = BundleStore.copy(src, pluginFolder, false, digests);
+				}
+			} finally {
+				lock.close();
+			}
+			digests.store();
+			BundleLedger.record(targetPlatformLocation, Collections.singleton(new File(pluginFolder, src.getName())));
 		} catch (IOException ex) {
 			throw new MojoExecutionException(ex.getMessage(), ex);
 		}
-		getLog().info("Copied " + src.getAbsolutePath() + " to plugin folder " + pluginFolder.getAbsolutePath());
+		if (!changed) {
+			getLog().info(src.getName() + " is already installed in plugin folder " + pluginFolder.getAbsolutePath());
+			return;
+		}
+		metrics.count(BuildMetrics.FILES_COPIED, 1);
+		metrics.count(BuildMetrics.BYTES_COPIED, src.length());
+		TargetPlatformCache.invalidate(targetPlatformLocation);
+		getLog().info("Installed " + src.getAbsolutePath() + " to plugin folder " + pluginFolder.getAbsolutePath());
+	}
+	
+	private void installExploded(BuildMetrics metrics) throws MojoExecutionException {
+		File pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		DirectorySync sync = new DirectorySync(getLog());
+		File target;
+		boolean changed;
+		try {
+			Attributes attributes = new Manifest(new ByteArrayInputStream(Files.readAllBytes(bundleManifest.toPath()))).getMainAttributes();
+			String symbolicName = BundleDescriptor.parseSymbolicName(attributes.getValue(Constants.BUNDLE_SYMBOLICNAME));
+			if (symbolicName == null)
+				throw new MojoExecutionException(bundleManifest.getAbsolutePath() + " doesn't declare a " + Constants.BUNDLE_SYMBOLICNAME);
+			String version = attributes.getValue(Constants.BUNDLE_VERSION);
+			target = new File(pluginFolder, symbolicName + "_" + (version != null ? version.trim() : "0.0.0"));
+			
+			sync.include(bundleManifest, JarFile.MANIFEST_NAME);
+			FileLocks.Lock lock = FileLocks.lockBundle(targetPlatformLocation, target.getName());
+			try {
+				changed = sync.sync(outputDirectory, target);
+			} finally {
+				lock.close();
+			}
+			
+			// a jar installed by an earlier build would be a second copy of the bundle
+			File src = project.getArtifact().getFile();
+			File jar = src != null ? new File(pluginFolder, src.getName()) : null;
+			if (jar != null && jar.isFile()) {
+				if (!jar.delete())
+					throw new IOException("Unable to delete " + jar.getAbsolutePath());
+				getLog().info("Removed " + jar.getName() + " from plugin folder " + pluginFolder.getAbsolutePath());
+				changed = true;
+			}
+			BundleLedger.record(targetPlatformLocation, Collections.singleton(target));
+		} catch (IOException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+		metrics.count(BuildMetrics.FILES_COPIED, sync.getFilesCopied());
+		metrics.count(BuildMetrics.BYTES_COPIED, sync.getBytesCopied());
+		metrics.count("files.removed", sync.getFilesRemoved());
+		if (!changed) {
+			getLog().info(target.getName() + " is already installed in plugin folder " + pluginFolder.getAbsolutePath());
+			return;
+		}
+		TargetPlatformCache.invalidate(targetPlatformLocation);
+		getLog().info("Installed " + outputDirectory.getAbsolutePath() + " to " + target.getAbsolutePath() + ": "
+				+ sync.getFilesCopied() + " files copied, " + sync.getFilesRemoved() + " removed, " + sync.getBytesCopied() + " bytes.");
 	}
 
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads <code>META-INF/MANIFEST.MF</code> from a jar without opening the whole
+ * archive. The zip central directory is located through the end of central
+ * directory record and only the manifest entry itself is read and inflated.
+ * <p>
+ * Archives this reader doesn't understand (zip64, encrypted or damaged ones)
+ * are handed to {@link JarFile}. Either is leased from the shared
+ * {@link ArchivePool}, so reading the bundles of a target platform with many
+ * threads stays within its bound of open files.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public final class ManifestReader {
+
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+	private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+
+	private static final int LOCAL_FILE_HEADER = 0x04034b50;
+
+	private static final int END_RECORD_LENGTH = 22;
+
+	private static final int CENTRAL_ENTRY_LENGTH = 46;
+
+	private static final int LOCAL_HEADER_LENGTH = 30;
+
+	private static final int MAX_COMMENT_LENGTH = 0xffff;
+
+	private static final int STORED = 0;
+
+	private static final int DEFLATED = 8;
+
+	private static final byte[] MANIFEST_NAME = JarFile.MANIFEST_NAME.getBytes();
+
+	private ManifestReader() {
+	}
+
+	/**
+	 * @return the manifest of the given jar or <code>null</code> if it
+	 *         doesn't contain one
+	 */
+	public static Manifest read(File jar) throws IOException {
+		byte[] bytes;
+		ArchivePool.Lease lease = ArchivePool.getShared().leaseChannel(jar);
+		try {
+			bytes = readManifestBytes(new ChannelSource(lease.getChannel()));
+		} catch (ZipException ex) {
+			return readWithJarFile(jar);
+		} finally {
+			lease.close();
+		}
+		return bytes == null ? null : new Manifest(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Reads the manifest of a jar held completely in memory.
+	 *
+	 * @return the manifest or <code>null</code> if the jar doesn't contain one
+	 */
+	public static Manifest read(ByteBuffer jar) throws IOException {
+		byte[] bytes = readManifestBytes(new BufferSource(jar.duplicate()));
+		return bytes == null ? null : new Manifest(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Reads the manifest of a bundle extracted into a directory.
+	 *
+	 * @return the manifest or <code>null</code> if the directory doesn't
+	 *         contain one
+	 */
+	public static Manifest readExploded(File directory) throws IOException {
+		File file = new File(directory, JarFile.MANIFEST_NAME);
+		if (!file.isFile())
+			return null;
+		return new Manifest(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+	}
+
+	private static Manifest readWithJarFile(File jar) throws IOException {
+		ArchivePool.Lease lease = ArchivePool.getShared().lease(jar);
+		try {
+			return lease.getJarFile().getManifest();
+		} finally {
+			lease.close();
+		}
+	}
+
+	private static byte[] readManifestBytes(Source source) throws IOException {
+		long size = source.size();
+		if (size < END_RECORD_LENGTH)
+			throw new ZipException("Not a zip archive");
+
+		// the end of central directory record is followed by a comment of at most 64k
+		int tailLength = (int) Math.min(size, END_RECORD_LENGTH + MAX_COMMENT_LENGTH);
+		ByteBuffer tail = source.read(size - tailLength, tailLength);
+		int end = -1;
+		for (int i = tailLength - END_RECORD_LENGTH; i >= 0; i--) {
+			if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0)
+			throw new ZipException("No end of central directory record");
+
+		int entries = tail.getShort(end + 10) & 0xffff;
+		long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+		long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+		if (entries == 0xffff || directorySize == 0xffffffffL || directoryOffset == 0xffffffffL)
+			throw new ZipException("Zip64 archives are not supported");
+		if (directoryOffset + directorySize > size)
+			throw new ZipException("Invalid central directory");
+
+		ByteBuffer directory = source.read(directoryOffset, (int) directorySize);
+		int pos = 0;
+		for (int i = 0; i < entries; i++) {
+			if (pos + CENTRAL_ENTRY_LENGTH > directorySize || directory.getInt(pos) != CENTRAL_DIRECTORY_ENTRY)
+				throw new ZipException("Invalid central directory entry");
+			int flags = directory.getShort(pos + 8) & 0xffff;
+			int method = directory.getShort(pos + 10) & 0xffff;
+			long compressedSize = directory.getInt(pos + 20) & 0xffffffffL;
+			long uncompressedSize = directory.getInt(pos + 24) & 0xffffffffL;
+			int nameLength = directory.getShort(pos + 28) & 0xffff;
+			int extraLength = directory.getShort(pos + 30) & 0xffff;
+			int commentLength = directory.getShort(pos + 32) & 0xffff;
+			long localHeaderOffset = directory.getInt(pos + 42) & 0xffffffffL;
+
+			if (isManifestName(directory, pos + CENTRAL_ENTRY_LENGTH, nameLength)) {
+				if ((flags & 1) != 0)
+					throw new ZipException("Encrypted manifest");
+				return readEntry(source, localHeaderOffset, method, compressedSize, uncompressedSize);
+			}
+			pos += CENTRAL_ENTRY_LENGTH + nameLength + extraLength + commentLength;
+		}
+		return null;
+	}
+
+	private static byte[] readEntry(Source source, long localHeaderOffset, int method, long compressedSize,
+			long uncompressedSize) throws IOException {
+		if (compressedSize > Integer.MAX_VALUE || uncompressedSize > Integer.MAX_VALUE)
+			throw new ZipException("Manifest too large");
+
+		ByteBuffer header = source.read(localHeaderOffset, LOCAL_HEADER_LENGTH);
+		if (header.getInt(0) != LOCAL_FILE_HEADER)
+			throw new ZipException("Invalid local file header");
+		long dataOffset = localHeaderOffset + LOCAL_HEADER_LENGTH + (header.getShort(26) & 0xffff)
+				+ (header.getShort(28) & 0xffff);
+
+		ByteBuffer data = source.read(dataOffset, (int) compressedSize);
+		byte[] compressed = new byte[(int) compressedSize];
+		data.get(compressed);
+
+		if (method == STORED)
+			return compressed;
+		if (method != DEFLATED)
+			throw new ZipException("Unsupported compression method " + method);
+
+		byte[] result = new byte[(int) uncompressedSize];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(compressed);
+			int count = 0;
+			while (count < result.length) {
+				int inflated = inflater.inflate(result, count, result.length - count);
+				if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				count += inflated;
+			}
+			if (count != result.length)
+				throw new ZipException("Truncated manifest entry");
+		} catch (DataFormatException ex) {
+			throw new ZipException(ex.getMessage());
+		} finally {
+			inflater.end();
+		}
+		return result;
+	}
+
+	private static boolean isManifestName(ByteBuffer directory, int offset, int length) {
+		if (length != MANIFEST_NAME.length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			byte b = directory.get(offset + i);
+			if (b >= 'a' && b <= 'z')
+				b -= 'a' - 'A';
+			if (b != MANIFEST_NAME[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Random access to the bytes of an archive, little endian as all zip
+	 * structures are.
+	 */
+	private static abstract class Source {
+
+		abstract long size() throws IOException;
+
+		abstract ByteBuffer read(long position, int length) throws IOException;
+	}
+
+	private static class ChannelSource extends Source {
+
+		private final FileChannel channel;
+
+		ChannelSource(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		long size() throws IOException {
+			return channel.size();
+		}
+
+		ByteBuffer read(long position, int length) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0)
+					throw new ZipException("Unexpected end of archive");
+			}
+			buffer.flip();
+			return buffer.order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	private static class BufferSource extends Source {
+
+		private final ByteBuffer buffer;
+
+		BufferSource(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		long size() {
+			return buffer.remaining();
+		}
+
+		ByteBuffer read(long position, int length) throws IOException {
+			if (position < 0 || position + length > buffer.remaining())
+				throw new ZipException("Unexpected end of archive");
+			ByteBuffer slice = buffer.duplicate();
+			slice.position(buffer.position() + (int) position);
+			slice.limit(slice.position() + length);
+			return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+}
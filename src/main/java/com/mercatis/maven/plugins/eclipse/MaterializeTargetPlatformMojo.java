@@ -16,15 +16,18 @@
 package com.mercatis.maven.plugins.eclipse;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.apache.tools.ant.Project;
-import org.apache.tools.ant.taskdefs.Expand;
-import org.apache.tools.ant.taskdefs.Get;
+import org.apache.maven.project.MavenProject;
 
 /**
  * Materializes an eclipse target platform
@@ -39,6 +42,19 @@ import org.apache.tools.ant.taskdefs.Get;
  */
 public class MaterializeTargetPlatformMojo extends AbstractMojo {
 
+	/**
+	 * @parameter expression="${project}"
+	 * @readonly
+	 * @required
+	 */
+	private MavenProject project;
+	
+	/**
+	 * @parameter expression="${reactorProjects}"
+	 * @readonly
+	 */
+	private List<MavenProject> reactorProjects;
+	
 	/**
 	 * @parameter alias="eclipsePackages"
 	 */
@@ -62,7 +78,85 @@ public class MaterializeTargetPlatformMojo extends AbstractMojo {
 	 */
 	private File targetPlatformLocation;
 
+	/**
+	 * Maximum number of packages downloaded at the same time.
+	 * 
+	 * @parameter default-value="4"
+	 */
+	private int downloadConnections;
+
+	/**
+	 * Number of threads extracting the entries of a package. <code>0</code>
+	 * uses one thread per available processor.
+	 * 
+	 * @parameter default-value="0"
+	 */
+	private int extractionThreads;
+
+	/**
+	 * Whether bundles are added to the bundle index while they are extracted,
+	 * so the next scan of the target platform doesn't have to read them.
+	 * 
+	 * @parameter default-value="true"
+	 */
+	private boolean indexDuringExtraction;
+
+	/**
+	 * Whether packages are extracted while they are downloaded instead of
+	 * being downloaded into the package repository first. Packages already in
+	 * the repository are still extracted from there.
+	 * 
+	 * @parameter default-value="false"
+	 */
+	private boolean streamExtraction;
+
+	/**
+	 * Whether streamed packages are kept in the package repository as well.
+	 * Packages that aren't streamed are always kept.
+	 * 
+	 * @parameter default-value="true"
+	 */
+	private boolean cachePackages;
+
+	/**
+	 * Whether zip packages are only catalogued instead of extracted. The
+	 * manifests of their bundles are read from the packages in the package
+	 * repository, gatherDependencies extracts the bundles a build needs. Takes
+	 * precedence over streamExtraction, which doesn't keep packages around.
+	 * 
+	 * @parameter default-value="false"
+	 */
+	private boolean lazyMaterialization;
+
+	/**
+	 * Maximum number of packages kept open while bundles are read from them.
+	 * Shared by all modules of a build, the value of the module running last
+	 * applies.
+	 * 
+	 * @parameter default-value="16"
+	 */
+	private int maxOpenArchives;
+
+	private BuildMetrics metrics;
+
+	private PackageExtractor extractor;
+
+	private StreamingExtractor streamingExtractor;
+
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (maxOpenArchives < 1)
+			throw new MojoExecutionException("maxOpenArchives must be at least 1, not " + maxOpenArchives + ".");
+		metrics = new BuildMetrics("materializeTargetPlatform");
+		ArchivePool.getShared().setMaximumOpen(maxOpenArchives);
+		try {
+			materialize();
+		} finally {
+			ArchivePool.getShared().closeIdle(getLog());
+			MetricsReport.record(project, reactorProjects, metrics, getLog());
+		}
+	}
+
+	private void materialize() throws MojoExecutionException, MojoFailureException {
 		if (packageRepository == null) {
 			packageRepository = new File(repository.getBasedir());
 			packageRepository = new File(packageRepository.getParentFile(), "eclipse-target-repository");
@@ -84,52 +178,231 @@ public class MaterializeTargetPlatformMojo extends AbstractMojo {
 							+ "' is a file, not a folder.");
 			throw new MojoFailureException("Target Platform Location must be a folder.");
 		}
+		// trees an instant clean couldn't delete before Maven exited
+		int leftovers = new DirectoryRemover(1, getLog()).removeLeftovers(targetPlatformLocation);
+		if (leftovers > 0)
+			getLog().info("Deleting " + leftovers + " leftovers of earlier instant cleans in the background.");
 
-		for (URL eclipsePackage : eclipsePackages) {
-			fetchPackage(eclipsePackage);
+		int threads = extractionThreads > 0 ? extractionThreads : Runtime.getRuntime().availableProcessors();
+		extractor = new PackageExtractor(targetPlatformLocation, threads, getLog());
+		streamingExtractor = new StreamingExtractor(targetPlatformLocation, getLog());
+		BundleIndexer indexer = null;
+		if (indexDuringExtraction && eclipsePackages != null && eclipsePackages.length > 0) {
+			indexer = new BundleIndexer(targetPlatformLocation, threads * 2, getLog());
+			extractor.setIndexer(indexer);
+			streamingExtractor.setIndexer(indexer);
+		}
+		try {
+			if (lazyMaterialization) {
+				metrics.phase("download");
+				List<File> packages = fetchPackages();
+				metrics.phase("catalog");
+				for (File pkg : packages) {
+					if (StreamingExtractor.isTar(pkg.getName()))
+						extractPackage(pkg);
+					else
+						catalogPackage(pkg);
+				}
+			} else if (streamExtraction) {
+				metrics.phase("stream");
+				streamPackages();
+			} else {
+				metrics.phase("download");
+				List<File> packages = fetchPackages();
+				metrics.phase("extract");
+				for (File pkg : packages) {
+					extractPackage(pkg);
+				}
+			}
+		} finally {
+			if (indexer != null)
+				finishIndexing(indexer);
 		}
 	}
 
-	private void fetchPackage(URL pkg) throws MojoExecutionException {
-		Get antTask = new Get();
-		antTask.setProject(new Project());
-
+	private void finishIndexing(BundleIndexer indexer) {
 		try {
-			final String filename = pkg.getPath().substring(pkg.getPath().lastIndexOf("/") + 1);
-			antTask.setDest(new File(packageRepository, filename));
-			antTask.setSrc(pkg);
-			antTask.setUseTimestamp(true);
+			int indexed = indexer.finish();
+			metrics.count(BuildMetrics.MANIFESTS_PARSED, indexed);
+			getLog().debug("Indexed " + indexed + " bundles while extracting.");
+		} catch (IOException ex) {
+			// only an optimization, the next scan reads the bundles instead
+			getLog().warn("Unable to index the extracted bundles: " + ex.getMessage());
+		}
+	}
 
-			antTask.doGet(0, new Get.DownloadProgress() {
+	private List<File> fetchPackages() throws MojoExecutionException {
+		if (eclipsePackages == null)
+			return Collections.emptyList();
 
-				public void onTick() {
-					System.out.print(".");
+		PackageDownloader downloader = new PackageDownloader(packageRepository, downloadConnections, getLog());
+		try {
+			return downloader.download(eclipsePackages);
+		} catch (Exception ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		} finally {
+			metrics.count(BuildMetrics.BYTES_DOWNLOADED, downloader.getBytesTransferred());
+		}
+	}
+
+	private void catalogPackage(File pkg) throws MojoExecutionException {
+		try {
+			FileLocks.Lock lock = FileLocks.lockPackage(targetPlatformLocation, pkg.getName());
+			try {
+				PackageCatalog previous = PackageCatalog.read(targetPlatformLocation, pkg.getName());
+				if (previous != null && previous.matches(pkg)) {
+					getLog().info("'" + pkg.getName() + "' is already catalogued.");
+					metrics.count("packages.skipped", 1);
+					return;
 				}
 
-				public void endDownload() {
-					System.out.println(" succeeded.");
+				getLog().info("Cataloguing '" + pkg.getName() + "'.");
+				PackageCatalog catalog = PackageCatalog.create(pkg, targetPlatformLocation);
+				if (previous != null) {
+					int removed = previous.removeBundles(targetPlatformLocation, catalog);
+					if (removed > 0)
+						getLog().info("Removed " + removed + " bundles '" + pkg.getName() + "' doesn't contain anymore.");
 				}
+				catalog.write(targetPlatformLocation);
+				getLog().info("Catalogued " + catalog.getBundles().size() + " bundles, they are extracted once a build needs them.");
+				metrics.count(BuildMetrics.MANIFESTS_PARSED, catalog.getBundles().size());
+				TargetPlatformCache.invalidate(targetPlatformLocation);
+			} finally {
+				lock.close();
+			}
+		} catch (IOException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+	}
 
-				public void beginDownload() {
-					getLog().info("Downloading '" + filename + "'");
+	private void streamPackages() throws MojoExecutionException {
+		if (eclipsePackages == null)
+			return;
+
+		PackageDownloader downloader = new PackageDownloader(packageRepository, downloadConnections, getLog());
+		try {
+			for (URL pkg : eclipsePackages) {
+				File cached = new File(packageRepository, PackageDownloader.getFileName(pkg));
+				if (cachePackages && cached.isFile())
+					extractPackage(downloader.download(pkg));
+				else
+					streamPackage(downloader, pkg);
+			}
+		} catch (IOException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		} finally {
+			metrics.count(BuildMetrics.BYTES_DOWNLOADED, downloader.getBytesTransferred());
+		}
+	}
+
+	private void streamPackage(PackageDownloader downloader, URL url) throws IOException {
+		String name = PackageDownloader.getFileName(url);
+		FileLocks.Lock lock = FileLocks.lockPackage(targetPlatformLocation, name);
+		try {
+			ExtractionStamp stamp = ExtractionStamp.read(targetPlatformLocation, name);
+			for (int attempt = 1;; attempt++) {
+				PackageStream in = null;
+				try {
+					in = downloader.open(url, stamp != null ? stamp.getLastModified() : 0, cachePackages);
+					if (in == null) {
+						getLog().info("'" + name + "' is already extracted.");
+						metrics.count("packages.skipped", 1);
+						return;
+					}
+					if (stamp != null)
+						getLog().info("'" + name + "' has changed, updating its entries.");
+					PackageExtractor.Result result = streamingExtractor.extract(name, in);
+					in.complete();
+					if (stamp != null)
+						removeStaleEntries(name, stamp, result);
+					recordExtraction(name, result, in.getLength(), in.getLastModified());
+					return;
+				} catch (IOException ex) {
+					if (attempt >= PackageDownloader.ATTEMPTS)
+						throw ex;
+					getLog().warn("Streaming '" + name + "' failed (" + ex.getMessage() + "), retrying.");
+				} finally {
+					if (in != null)
+						in.close();
 				}
-			});
+			}
+		} finally {
+			lock.close();
+		}
+	}
 
-			extractPackage(new File(packageRepository, filename));
+	private void extractPackage(File pkg) throws MojoExecutionException {
+		try {
+			FileLocks.Lock lock = FileLocks.lockPackage(targetPlatformLocation, pkg.getName());
+			try {
+				ExtractionStamp stamp = ExtractionStamp.read(targetPlatformLocation, pkg.getName());
+				if (stamp != null && stamp.matches(pkg)) {
+					getLog().info("'" + pkg.getName() + "' is already extracted.");
+					metrics.count("packages.skipped", 1);
+					return;
+				}
+				if (stamp != null)
+					getLog().info("'" + pkg.getName() + "' has changed, updating its entries.");
 
-		} catch (Exception ex) {
+				getLog().info("Extracting '" + pkg.getName() + "' to target platform.");
+				PackageExtractor.Result result;
+				if (StreamingExtractor.isTar(pkg.getName())) {
+					InputStream in = new FileInputStream(pkg);
+					try {
+						result = streamingExtractor.extract(pkg.getName(), in);
+					} finally {
+						in.close();
+					}
+				} else {
+					result = extractor.extract(pkg);
+				}
+				if (stamp != null)
+					removeStaleEntries(pkg.getName(), stamp, result);
+				recordExtraction(pkg.getName(), result, pkg.length(), pkg.lastModified());
+			} finally {
+				lock.close();
+			}
+		} catch (IOException ex) {
 			throw new MojoExecutionException(ex.getMessage(), ex);
 		}
 	}
 
-	private void extractPackage(File pkg) {
-		getLog().info("Extracting '" + pkg.getName() + "' to target platform.");
-		Expand antTask = new Expand();
-		antTask.setProject(new Project());
-		antTask.setDest(targetPlatformLocation);
-		antTask.setSrc(pkg);
-		antTask.setOverwrite(false);
-		antTask.perform();
+	private void recordExtraction(String name, PackageExtractor.Result result, long length, long lastModified)
+			throws IOException {
+		getLog().info("Extracted " + result.getWritten() + " entries (" + result.getBytes() + " bytes), "
+				+ result.getSkipped() + " entries were up to date.");
+		metrics.count(BuildMetrics.ENTRIES_EXTRACTED, result.getWritten());
+		metrics.count(BuildMetrics.BYTES_EXTRACTED, result.getBytes());
+		if (result.getWritten() > 0)
+			TargetPlatformCache.invalidate(targetPlatformLocation);
+
+		new ExtractionStamp(length, lastModified, result.getEntries()).write(targetPlatformLocation, name);
+		// every bundle of the package is in the plugin folder now
+		PackageCatalog.delete(targetPlatformLocation, name);
+	}
+
+	/**
+	 * Deletes the entries of a package's previous extraction that the new one
+	 * didn't write again. Entries extracted by other packages as well stay.
+	 * Extracting over the previous entries instead of deleting them first
+	 * lets the extractors skip the unchanged ones.
+	 */
+	private void removeStaleEntries(String name, ExtractionStamp previous, PackageExtractor.Result result)
+			throws IOException {
+		int removed = 0;
+		for (String entry : previous.getStaleEntries(targetPlatformLocation, name, result.getEntries())) {
+			File file = new File(targetPlatformLocation, entry);
+			if (!file.isFile())
+				continue;
+			if (file.delete())
+				removed++;
+			else
+				getLog().warn("Unable to delete " + file.getAbsolutePath());
+		}
+		if (removed > 0) {
+			getLog().info("Removed " + removed + " entries '" + name + "' doesn't contain anymore.");
+			TargetPlatformCache.invalidate(targetPlatformLocation);
+		}
 	}
 
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Writes the {@link BuildMetrics} of all goal executions as JSON reports: one
+ * per project into its build directory and an aggregate of the whole reactor
+ * into the build directory of the execution root.
+ * <p>
+ * Executions are collected for the lifetime of the plugin's class loader,
+ * i.e. the build session, and both reports are rewritten after every
+ * execution, so they are complete whenever the build stops.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public final class MetricsReport {
+
+	public static final String PROJECT_REPORT = "build-eclipse-metrics.json";
+
+	public static final String REACTOR_REPORT = "build-eclipse-metrics-reactor.json";
+
+	private static final String ENCODING = "UTF-8";
+
+	private static final Map<String,List<BuildMetrics>> EXECUTIONS = new LinkedHashMap<String,List<BuildMetrics>>();
+
+	private MetricsReport() {
+	}
+
+	/**
+	 * Finishes the given execution and rewrites the reports. Failing to write
+	 * them is logged but doesn't fail the build.
+	 *
+	 * @param reactorProjects
+	 *            the projects of the reactor, may be <code>null</code>
+	 */
+	public static synchronized void record(MavenProject project, List<MavenProject> reactorProjects, BuildMetrics metrics, Log log) {
+		metrics.finish();
+		String id = project.getId();
+		List<BuildMetrics> executions = EXECUTIONS.get(id);
+		if (executions == null) {
+			executions = new ArrayList<BuildMetrics>();
+			EXECUTIONS.put(id, executions);
+		}
+		executions.add(metrics);
+
+		try {
+			File report = new File(project.getBuild().getDirectory(), PROJECT_REPORT);
+			StringBuilder json = new StringBuilder();
+			appendProject(json, id, executions, "");
+			json.append('\n');
+			write(report, json);
+			log.debug("Wrote build metrics to " + report.getAbsolutePath());
+
+			MavenProject root = getExecutionRoot(project, reactorProjects);
+			report = new File(root.getBuild().getDirectory(), REACTOR_REPORT);
+			write(report, getReactorReport());
+			log.debug("Wrote reactor build metrics to " + report.getAbsolutePath());
+		} catch (IOException ex) {
+			log.warn("Unable to write build metrics: " + ex.getMessage());
+		}
+	}
+
+	private static MavenProject getExecutionRoot(MavenProject project, List<MavenProject> reactorProjects) {
+		if (reactorProjects == null || reactorProjects.isEmpty())
+			return project;
+		for (MavenProject reactorProject : reactorProjects) {
+			if (reactorProject.isExecutionRoot())
+				return reactorProject;
+		}
+		return reactorProjects.get(0);
+	}
+
+	private static StringBuilder getReactorReport() {
+		long millis = 0;
+		Map<String,Long> goals = new TreeMap<String,Long>();
+		List<BuildMetrics> all = new ArrayList<BuildMetrics>();
+		for (List<BuildMetrics> executions : EXECUTIONS.values()) {
+			for (BuildMetrics metrics : executions) {
+				millis += metrics.getMillis();
+				add(goals, metrics.getGoal(), metrics.getMillis());
+				all.add(metrics);
+			}
+		}
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"projects\": ").append(EXECUTIONS.size()).append(",\n");
+		json.append("  \"millis\": ").append(millis).append(",\n");
+		json.append("  \"goals\": ");
+		appendMap(json, goals, "  ");
+		json.append(",\n  \"counters\": ");
+		appendMap(json, sumCounters(all), "  ");
+		json.append(",\n  \"modules\": [");
+		String separator = "\n    ";
+		for (Map.Entry<String,List<BuildMetrics>> project : EXECUTIONS.entrySet()) {
+			json.append(separator);
+			appendProject(json, project.getKey(), project.getValue(), "    ");
+			separator = ",\n    ";
+		}
+		json.append("\n  ]\n}\n");
+		return json;
+	}
+
+	private static void appendProject(StringBuilder json, String id, List<BuildMetrics> executions, String indent) {
+		long millis = 0;
+		for (BuildMetrics metrics : executions) {
+			millis += metrics.getMillis();
+		}
+		json.append("{\n");
+		json.append(indent).append("  \"project\": ");
+		appendString(json, id);
+		json.append(",\n").append(indent).append("  \"millis\": ").append(millis).append(",\n");
+		json.append(indent).append("  \"counters\": ");
+		appendMap(json, sumCounters(executions), indent + "  ");
+		json.append(",\n").append(indent).append("  \"executions\": [");
+		String separator = "\n";
+		for (BuildMetrics metrics : executions) {
+			json.append(separator).append(indent).append("    {\"goal\": ");
+			appendString(json, metrics.getGoal());
+			json.append(", \"millis\": ").append(metrics.getMillis());
+			json.append(",\n").append(indent).append("     \"phases\": ");
+			appendMap(json, metrics.getPhases(), indent + "     ");
+			json.append(",\n").append(indent).append("     \"counters\": ");
+			appendMap(json, metrics.getCounters(), indent + "     ");
+			json.append('}');
+			separator = ",\n";
+		}
+		json.append('\n').append(indent).append("  ]\n").append(indent).append('}');
+	}
+
+	private static Map<String,Long> sumCounters(Collection<BuildMetrics> executions) {
+		Map<String,Long> sums = new TreeMap<String,Long>();
+		for (BuildMetrics metrics : executions) {
+			for (Map.Entry<String,Long> counter : metrics.getCounters().entrySet()) {
+				add(sums, counter.getKey(), counter.getValue());
+			}
+		}
+		return sums;
+	}
+
+	private static void add(Map<String,Long> sums, String key, long value) {
+		Long sum = sums.get(key);
+		sums.put(key, sum == null ? value : sum + value);
+	}
+
+	private static void appendMap(StringBuilder json, Map<String,Long> values, String indent) {
+		if (values.isEmpty()) {
+			json.append("{}");
+			return;
+		}
+		json.append('{');
+		String separator = "\n";
+		for (Map.Entry<String,Long> value : values.entrySet()) {
+			json.append(separator).append(indent).append("  ");
+			appendString(json, value.getKey());
+			json.append(": ").append(value.getValue());
+			separator = ",\n";
+		}
+		json.append('\n').append(indent).append('}');
+	}
+
+	private static void appendString(StringBuilder json, String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				json.append('\\').append(c);
+			else if (c < 0x20)
+				json.append(String.format("\\u%04x", (int) c));
+			else
+				json.append(c);
+		}
+		json.append('"');
+	}
+
+	private static void write(File file, CharSequence content) throws IOException {
+		File tmp = BundleStore.createTempFile(file);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), ENCODING);
+		try {
+			writer.append(content);
+		} finally {
+			writer.close();
+		}
+		BundleStore.move(tmp.toPath(), file.toPath());
+	}
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The bundles of a package materialized lazily. The package stays in the
+ * package repository and only the manifests of its plugin folder entries are
+ * recorded, read straight from the archive without extracting anything. A
+ * bundle is extracted into the plugin folder once a resolution needs it.
+ * <p>
+ * Catalogs are kept in the <code>catalogs</code> folder of the target
+ * platform metadata, one file per package, together with the location, size
+ * and modification time of the package. Nested jars are read only up to their
+ * manifest, which is usually their first entry.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class PackageCatalog {
+
+	private static final String CATALOG_FOLDER = "catalogs";
+
+	private static final String CATALOG_SUFFIX = ".catalog";
+
+	private static final int MAGIC = 0x50434154;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File pkg;
+
+	private final long length;
+
+	private final long lastModified;
+
+	/** the archive entry of every bundle by its plugin folder name */
+	private final Map<String,String> entries = new LinkedHashMap<String,String>();
+
+	private final List<BundleDescriptor> bundles = new ArrayList<BundleDescriptor>();
+
+	private PackageCatalog(File pkg, long length, long lastModified) {
+		this.pkg = pkg;
+		this.length = length;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Catalogs the bundles of a zip package.
+	 */
+	public static PackageCatalog create(File pkg, File targetPlatformLocation) throws IOException {
+		File pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		PackageCatalog catalog = new PackageCatalog(pkg.getAbsoluteFile(), pkg.length(), pkg.lastModified());
+		ArchivePool.Lease lease = ArchivePool.getShared().lease(pkg);
+		try {
+			ZipFile zip = lease.getZipFile();
+			for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+				ZipEntry entry = e.nextElement();
+				if (entry.isDirectory())
+					continue;
+				String name = PackageExtractor.checkName(entry.getName());
+				File bundle = PackageExtractor.getBundle(pluginFolder, new File(targetPlatformLocation, name));
+				if (bundle == null)
+					continue;
+
+				Manifest manifest;
+				String bundleEntry;
+				if (BundleDescriptor.isExploded(bundle.getName())) {
+					InputStream in = zip.getInputStream(entry);
+					try {
+						manifest = new Manifest(in);
+					} finally {
+						in.close();
+					}
+					bundleEntry = name.substring(0, name.length() - JarFile.MANIFEST_NAME.length());
+				} else {
+					manifest = readManifest(zip, entry);
+					bundleEntry = name;
+				}
+				catalog.entries.put(bundle.getName(), bundleEntry);
+				catalog.bundles.add(BundleDescriptor.create(bundle, entry.getSize(), entry.getTime(),
+						manifest == null ? null : manifest.getMainAttributes()));
+			}
+		} finally {
+			lease.close();
+		}
+		return catalog;
+	}
+
+	/**
+	 * @return the catalog of the given package or <code>null</code> if it
+	 *         hasn't been catalogued
+	 */
+	public static PackageCatalog read(File targetPlatformLocation, String packageName) throws IOException {
+		File file = getCatalogFile(targetPlatformLocation, packageName);
+		if (!file.isFile())
+			return null;
+		return read(file, TargetPlatformLayout.getPluginFolder(targetPlatformLocation));
+	}
+
+	/**
+	 * @return the catalogs of all lazily materialized packages, ordered by
+	 *         package name
+	 */
+	public static List<PackageCatalog> readAll(File targetPlatformLocation) throws IOException {
+		File[] files = TargetPlatformLayout.getMetadataFile(targetPlatformLocation, CATALOG_FOLDER).listFiles();
+		List<PackageCatalog> catalogs = new ArrayList<PackageCatalog>();
+		if (files == null)
+			return catalogs;
+		Arrays.sort(files);
+		File pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		for (File file : files) {
+			if (file.getName().endsWith(CATALOG_SUFFIX))
+				catalogs.add(read(file, pluginFolder));
+		}
+		return catalogs;
+	}
+
+	/**
+	 * Appends the catalogued bundles that aren't in the plugin folder to the
+	 * bundles of a scan.
+	 *
+	 * @return the number of bundles added
+	 */
+	public static int addMissingBundles(File targetPlatformLocation, List<BundleDescriptor> bundles) throws IOException {
+		Set<String> present = new HashSet<String>();
+		for (BundleDescriptor bundle : bundles) {
+			present.add(bundle.getFile().getName());
+		}
+		Map<String,BundleDescriptor> missing = new LinkedHashMap<String,BundleDescriptor>();
+		for (PackageCatalog catalog : readAll(targetPlatformLocation)) {
+			for (BundleDescriptor bundle : catalog.bundles) {
+				if (!present.contains(bundle.getFile().getName()))
+					missing.put(bundle.getFile().getName(), bundle);
+			}
+		}
+		bundles.addAll(missing.values());
+		return missing.size();
+	}
+
+	/**
+	 * Extracts the given bundles from the packages they have been catalogued
+	 * in, unless they are in the plugin folder already, and adds them to the
+	 * bundle index.
+	 *
+	 * @return the number of bundles extracted
+	 */
+	public static int extractMissingBundles(File targetPlatformLocation, Collection<File> files, Log log) throws IOException {
+		Set<String> missing = new HashSet<String>();
+		for (File file : files) {
+			if (!file.exists())
+				missing.add(file.getName());
+		}
+		if (missing.isEmpty())
+			return 0;
+
+		Map<PackageCatalog,List<String>> byPackage = new LinkedHashMap<PackageCatalog,List<String>>();
+		Map<String,PackageCatalog> owners = new HashMap<String,PackageCatalog>();
+		for (PackageCatalog catalog : readAll(targetPlatformLocation)) {
+			for (String name : catalog.entries.keySet()) {
+				if (missing.contains(name))
+					owners.put(name, catalog);
+			}
+		}
+		for (Map.Entry<String,PackageCatalog> owner : owners.entrySet()) {
+			List<String> names = byPackage.get(owner.getValue());
+			if (names == null) {
+				names = new ArrayList<String>();
+				byPackage.put(owner.getValue(), names);
+			}
+			names.add(owner.getKey());
+		}
+
+		BundleIndex index = BundleIndex.load(targetPlatformLocation, log);
+		int extracted = 0;
+		File pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		for (Map.Entry<PackageCatalog,List<String>> names : byPackage.entrySet()) {
+			PackageCatalog catalog = names.getKey();
+			// one package at a time, another build may have extracted some of them meanwhile
+			FileLocks.Lock lock = FileLocks.lockPackage(targetPlatformLocation, catalog.pkg.getName());
+			try {
+				List<String> stillMissing = new ArrayList<String>();
+				for (String name : names.getValue()) {
+					if (!new File(pluginFolder, name).exists())
+						stillMissing.add(name);
+				}
+				for (File bundle : catalog.extract(targetPlatformLocation, stillMissing)) {
+					index.put(bundle, catalog.getBundle(bundle.getName()));
+					extracted++;
+					log.debug("Extracted " + bundle.getName() + " from " + catalog.pkg.getName());
+				}
+			} finally {
+				lock.close();
+			}
+		}
+		index.store();
+		return extracted;
+	}
+
+	/**
+	 * Computes a fingerprint of the catalogs of a target platform, which
+	 * changes whenever a package is catalogued again.
+	 */
+	public static String getFingerprint(File targetPlatformLocation) {
+		File[] files = TargetPlatformLayout.getMetadataFile(targetPlatformLocation, CATALOG_FOLDER).listFiles();
+		if (files == null)
+			return "";
+		Arrays.sort(files);
+		StringBuilder fingerprint = new StringBuilder();
+		for (File file : files) {
+			fingerprint.append(file.getName()).append(':').append(file.length()).append(':').append(file.lastModified()).append(';');
+		}
+		return fingerprint.toString();
+	}
+
+	/**
+	 * Drops the catalog of a package, e.g. once it has been extracted
+	 * completely.
+	 */
+	public static void delete(File targetPlatformLocation, String packageName) {
+		getCatalogFile(targetPlatformLocation, packageName).delete();
+	}
+
+	/**
+	 * Removes the bundles extracted from this package that a new catalog of
+	 * the package doesn't contain anymore.
+	 *
+	 * @return the number of bundles removed
+	 */
+	public int removeBundles(File targetPlatformLocation, PackageCatalog replacement) throws IOException {
+		File pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		int removed = 0;
+		for (String name : entries.keySet()) {
+			if (replacement.entries.containsKey(name))
+				continue;
+			File bundle = new File(pluginFolder, name);
+			if (bundle.isDirectory()) {
+				Files.walkFileTree(bundle.toPath(), new SimpleFileVisitor<Path>() {
+
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+						Files.delete(file);
+						return FileVisitResult.CONTINUE;
+					}
+
+					public FileVisitResult postVisitDirectory(Path dir, IOException ex) throws IOException {
+						if (ex != null)
+							throw ex;
+						Files.delete(dir);
+						return FileVisitResult.CONTINUE;
+					}
+				});
+				removed++;
+			} else if (bundle.delete()) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @return <code>true</code> if the package still has the size and
+	 *         modification time it had when it was catalogued
+	 */
+	public boolean matches(File pkg) {
+		return pkg.getAbsoluteFile().equals(this.pkg) && pkg.length() == length && pkg.lastModified() == lastModified;
+	}
+
+	private BundleDescriptor getBundle(String name) {
+		for (BundleDescriptor bundle : bundles) {
+			if (bundle.getFile().getName().equals(name))
+				return bundle;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the catalogued bundles, their files are in the plugin folder
+	 *         once extracted
+	 */
+	public List<BundleDescriptor> getBundles() {
+		return bundles;
+	}
+
+	public void write(File targetPlatformLocation) throws IOException {
+		File file = getCatalogFile(targetPlatformLocation, pkg.getName());
+		File tmp = BundleStore.createTempFile(file);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			BundleIndex.writeString(out, pkg.getPath());
+			out.writeLong(length);
+			out.writeLong(lastModified);
+			out.writeInt(bundles.size());
+			for (BundleDescriptor bundle : bundles) {
+				BundleIndex.writeString(out, bundle.getFile().getName());
+				BundleIndex.writeString(out, entries.get(bundle.getFile().getName()));
+				out.writeLong(bundle.getLength());
+				out.writeLong(bundle.getLastModified());
+				for (String header : bundle.getHeaders()) {
+					BundleIndex.writeString(out, header);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		BundleStore.move(tmp.toPath(), file.toPath());
+	}
+
+	private static PackageCatalog read(File file, File pluginFolder) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+				throw new IOException("Unsupported package catalog " + file.getAbsolutePath());
+			PackageCatalog catalog = new PackageCatalog(new File(BundleIndex.readString(buffer)), buffer.getLong(),
+					buffer.getLong());
+			int count = buffer.getInt();
+			for (int i = 0; i < count; i++) {
+				String name = BundleIndex.readString(buffer);
+				catalog.entries.put(name, BundleIndex.readString(buffer));
+				long length = buffer.getLong();
+				long lastModified = buffer.getLong();
+				String[] headers = new String[BundleDescriptor.HEADERS.length];
+				for (int h = 0; h < headers.length; h++) {
+					headers[h] = BundleIndex.readString(buffer);
+				}
+				catalog.bundles.add(new BundleDescriptor(new File(pluginFolder, name), length, lastModified, headers));
+			}
+			return catalog;
+		} catch (BufferUnderflowException ex) {
+			throw new IOException("Truncated package catalog " + file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Extracts bundles of this package, each file through a temporary file,
+	 * so a concurrent scan never sees a partially written jar.
+	 *
+	 * @return the extracted bundles
+	 */
+	private List<File> extract(File targetPlatformLocation, List<String> names) throws IOException {
+		if (names.isEmpty())
+			return Collections.emptyList();
+		Set<String> jars = new HashSet<String>();
+		List<String> directories = new ArrayList<String>();
+		for (String name : names) {
+			String entry = entries.get(name);
+			if (entry.endsWith("/"))
+				directories.add(entry);
+			else
+				jars.add(entry);
+		}
+
+		byte[] buffer = new byte[BUFFER_SIZE];
+		ArchivePool.Lease lease = ArchivePool.getShared().lease(pkg);
+		try {
+			ZipFile zip = lease.getZipFile();
+			for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+				ZipEntry entry = e.nextElement();
+				if (entry.isDirectory())
+					continue;
+				String name = PackageExtractor.checkName(entry.getName());
+				if (jars.contains(name) || isInside(name, directories))
+					extractEntry(zip, entry, new File(targetPlatformLocation, name), buffer);
+			}
+		} finally {
+			lease.close();
+		}
+
+		File pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		List<File> bundles = new ArrayList<File>(names.size());
+		for (String name : names) {
+			bundles.add(new File(pluginFolder, name));
+		}
+		return bundles;
+	}
+
+	private static boolean isInside(String name, List<String> directories) {
+		for (String directory : directories) {
+			if (name.startsWith(directory))
+				return true;
+		}
+		return false;
+	}
+
+	private static void extractEntry(ZipFile zip, ZipEntry entry, File file, byte[] buffer) throws IOException {
+		File tmp = BundleStore.createTempFile(file);
+		InputStream in = zip.getInputStream(entry);
+		try {
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				int read;
+				while ((read = in.read(buffer)) > 0) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		if (entry.getTime() != -1)
+			tmp.setLastModified(entry.getTime());
+		BundleStore.move(tmp.toPath(), file.toPath());
+	}
+
+	/**
+	 * Reads the manifest of a jar inside the package, inflating the jar only
+	 * up to its manifest unless the manifest isn't one of its first entries.
+	 */
+	private static Manifest readManifest(ZipFile zip, ZipEntry entry) throws IOException {
+		JarInputStream jar = new JarInputStream(zip.getInputStream(entry), false);
+		try {
+			Manifest manifest = jar.getManifest();
+			if (manifest != null)
+				return manifest;
+		} finally {
+			jar.close();
+		}
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : BUFFER_SIZE);
+		InputStream in = zip.getInputStream(entry);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				content.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return ManifestReader.read(ByteBuffer.wrap(content.toByteArray()));
+	}
+
+	private static File getCatalogFile(File targetPlatformLocation, String packageName) {
+		return new File(TargetPlatformLayout.getMetadataFile(targetPlatformLocation, CATALOG_FOLDER), packageName + CATALOG_SUFFIX);
+	}
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Downloads eclipse packages into the package repository, several at a time.
+ * <p>
+ * Packages are written through a {@link FileChannel} to a <code>.part</code>
+ * file which is renamed once the download is complete. An interrupted
+ * download is resumed with a HTTP range request, either by the next attempt
+ * or by the next build. The ETag or modification time of the response the
+ * partial file started with is kept next to it and sent as
+ * <code>If-Range</code>, so a package changed on the server meanwhile is
+ * downloaded completely instead of being appended to the old part. Packages
+ * already in the repository are only downloaded again if the server reports
+ * a newer modification time.
+ * <p>
+ * Alternatively a package can be {@link #open(URL, long, boolean) opened}
+ * and read while it is downloaded, without staging it in the repository.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class PackageDownloader {
+
+	private static final String PART_SUFFIX = ".part";
+
+	private static final String VALIDATOR_SUFFIX = ".validator";
+
+	private static final String ENCODING = "UTF-8";
+
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+	private static final int TRANSFER_CHUNK = 1024 * 1024;
+
+	private static final int TIMEOUT = 60 * 1000;
+
+	static final int ATTEMPTS = 3;
+
+	private final File packageRepository;
+
+	private final int connections;
+
+	private final Log log;
+
+	private final AtomicLong bytesTransferred = new AtomicLong();
+
+	/**
+	 * @param connections
+	 *            the maximum number of packages downloaded at the same time
+	 */
+	public PackageDownloader(File packageRepository, int connections, Log log) {
+		this.packageRepository = packageRepository;
+		this.connections = Math.max(1, connections);
+		this.log = log;
+	}
+
+	/**
+	 * @return the name of the file a package is stored as in the repository
+	 */
+	public static String getFileName(URL pkg) {
+		return pkg.getPath().substring(pkg.getPath().lastIndexOf("/") + 1);
+	}
+
+	/**
+	 * @return the number of bytes downloaded so far
+	 */
+	public long getBytesTransferred() {
+		return bytesTransferred.get();
+	}
+
+	/**
+	 * Downloads the given packages concurrently.
+	 *
+	 * @return the downloaded files, in the order of the given packages
+	 */
+	public List<File> download(URL[] packages) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(connections, packages.length)));
+		try {
+			List<Future<File>> futures = new ArrayList<Future<File>>(packages.length);
+			for (final URL pkg : packages) {
+				futures.add(executor.submit(new Callable<File>() {
+
+					public File call() throws IOException {
+						return download(pkg);
+					}
+				}));
+			}
+
+			List<File> files = new ArrayList<File>(packages.length);
+			for (Future<File> future : futures) {
+				files.add(future.get());
+			}
+			return files;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while downloading packages");
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException)
+				throw (IOException) ex.getCause();
+			throw new IllegalStateException("Unable to download packages", ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Downloads a single package, retrying and resuming a failed transfer.
+	 */
+	public File download(URL pkg) throws IOException {
+		String filename = getFileName(pkg);
+		File dest = new File(packageRepository, filename);
+		File part = new File(packageRepository, filename + PART_SUFFIX);
+
+		// another build may be downloading the same package, it is up to date afterwards
+		FileLocks.Lock lock = FileLocks.lock(FileLocks.getLockFile(packageRepository, filename));
+		try {
+			for (int attempt = 1;; attempt++) {
+				try {
+					transfer(pkg, dest, part);
+					return dest;
+				} catch (IOException ex) {
+					if (attempt >= ATTEMPTS)
+						throw ex;
+					log.warn("Downloading '" + filename + "' failed (" + ex.getMessage() + "), retrying.");
+				}
+			}
+		} finally {
+			lock.close();
+		}
+	}
+
+	/**
+	 * Opens a package to be read while it is downloaded. A transfer failing
+	 * half way isn't resumed, the package has to be opened again. A package
+	 * kept in the repository stays locked until the stream is closed.
+	 *
+	 * @param since
+	 *            the modification time of the package when it was read last,
+	 *            <code>0</code> to read it in any case
+	 * @param cache
+	 *            whether the package is kept in the repository too
+	 * @return the package or <code>null</code> if it hasn't been modified
+	 *         since
+	 */
+	public PackageStream open(URL pkg, long since, boolean cache) throws IOException {
+		String filename = getFileName(pkg);
+		FileLocks.Lock lock = cache ? FileLocks.lock(FileLocks.getLockFile(packageRepository, filename)) : null;
+		URLConnection connection = null;
+		boolean http = false;
+		try {
+			connection = pkg.openConnection();
+			connection.setConnectTimeout(TIMEOUT);
+			connection.setReadTimeout(TIMEOUT);
+			if (since > 0)
+				connection.setIfModifiedSince(since);
+			connection.connect();
+			http = connection instanceof HttpURLConnection;
+
+			if (http) {
+				int status = ((HttpURLConnection) connection).getResponseCode();
+				if (status == HttpURLConnection.HTTP_NOT_MODIFIED)
+					return null;
+				if (status != HttpURLConnection.HTTP_OK)
+					throw new IOException("Server returned " + status + " for " + pkg);
+			} else if (since > 0 && connection.getLastModified() != 0 && connection.getLastModified() <= since) {
+				return null;
+			}
+
+			log.info("Streaming '" + filename + "'.");
+			if (cache) {
+				// the part is written from scratch, a left over one can't be resumed anymore
+				new File(packageRepository, filename + PART_SUFFIX + VALIDATOR_SUFFIX).delete();
+			}
+			PackageStream stream = new PackageStream(connection, cache ? new File(packageRepository, filename) : null,
+					lock, bytesTransferred);
+			connection = null;
+			lock = null;
+			return stream;
+		} finally {
+			// only release what hasn't been handed over
+			if (http && connection != null)
+				((HttpURLConnection) connection).disconnect();
+			if (lock != null)
+				lock.close();
+		}
+	}
+
+	private void transfer(URL pkg, File dest, File part) throws IOException {
+		String filename = dest.getName();
+		File validatorFile = new File(part.getPath() + VALIDATOR_SUFFIX);
+		URLConnection connection = pkg.openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		if (dest.exists())
+			connection.setIfModifiedSince(dest.lastModified());
+
+		long offset = part.exists() ? part.length() : 0;
+		boolean http = connection instanceof HttpURLConnection;
+		if (http && offset > 0) {
+			String validator = readValidator(validatorFile);
+			if (validator != null) {
+				connection.setRequestProperty("Range", "bytes=" + offset + "-");
+				connection.setRequestProperty("If-Range", validator);
+			} else {
+				// without knowing which version the part belongs to it can't be resumed
+				offset = 0;
+			}
+		}
+
+		connection.connect();
+		try {
+			if (http) {
+				int status = ((HttpURLConnection) connection).getResponseCode();
+				if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					discard(part, validatorFile);
+					log.info("'" + filename + "' is up to date.");
+					return;
+				}
+				if (status == HTTP_RANGE_NOT_SATISFIABLE) {
+					// the partial file doesn't fit the package anymore
+					discard(part, validatorFile);
+					throw new IOException("Requested range not satisfiable for " + pkg);
+				}
+				if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_PARTIAL)
+					throw new IOException("Server returned " + status + " for " + pkg);
+				if (status == HttpURLConnection.HTTP_PARTIAL && getRangeStart(connection) != offset) {
+					discard(part, validatorFile);
+					throw new IOException("Server didn't resume " + pkg + " at byte " + offset);
+				}
+				if (status == HttpURLConnection.HTTP_OK) {
+					// a new download, the part is truncated by write
+					offset = 0;
+					writeValidator(validatorFile, getValidator(connection));
+				}
+			} else {
+				offset = 0;
+				if (dest.exists() && connection.getLastModified() != 0
+						&& connection.getLastModified() <= dest.lastModified()) {
+					log.info("'" + filename + "' is up to date.");
+					return;
+				}
+			}
+
+			long expected = connection.getContentLength() < 0 ? -1 : offset + connection.getContentLength();
+			log.info("Downloading '" + filename + "'" + (offset > 0 ? ", resuming at byte " + offset : "") + ".");
+			long start = System.currentTimeMillis();
+			long bytes = write(connection.getInputStream(), part, offset, expected);
+			bytesTransferred.addAndGet(bytes);
+			long millis = Math.max(1, System.currentTimeMillis() - start);
+
+			if (expected >= 0 && part.length() != expected)
+				throw new IOException("Incomplete download of " + pkg + ": " + part.length() + " of " + expected + " bytes");
+			if (connection.getLastModified() != 0)
+				part.setLastModified(connection.getLastModified());
+			BundleStore.move(part.toPath(), dest.toPath());
+			validatorFile.delete();
+
+			log.info("Downloaded '" + filename + "': " + bytes + " bytes in " + millis + " ms ("
+					+ (bytes * 1000 / 1024 / millis) + " KB/s).");
+		} finally {
+			if (http)
+				((HttpURLConnection) connection).disconnect();
+		}
+	}
+
+	/**
+	 * @return a strong ETag or else the modification time of the response,
+	 *         <code>null</code> if it has neither
+	 */
+	private static String getValidator(URLConnection connection) {
+		String etag = connection.getHeaderField("ETag");
+		// weak ETags aren't allowed in If-Range
+		if (etag != null && !etag.startsWith("W/"))
+			return etag;
+		return connection.getHeaderField("Last-Modified");
+	}
+
+	/**
+	 * @return the first byte of a partial response, <code>-1</code> if it
+	 *         doesn't say
+	 */
+	private static long getRangeStart(URLConnection connection) {
+		// bytes first-last/length
+		String range = connection.getHeaderField("Content-Range");
+		if (range == null || !range.startsWith("bytes ") || range.indexOf('-') < 0)
+			return -1;
+		try {
+			return Long.parseLong(range.substring("bytes ".length(), range.indexOf('-')).trim());
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	private static String readValidator(File validatorFile) throws IOException {
+		if (!validatorFile.isFile())
+			return null;
+		String validator = new String(Files.readAllBytes(validatorFile.toPath()), ENCODING).trim();
+		return validator.length() > 0 ? validator : null;
+	}
+
+	private static void writeValidator(File validatorFile, String validator) throws IOException {
+		if (validator == null)
+			validatorFile.delete();
+		else
+			Files.write(validatorFile.toPath(), validator.getBytes(ENCODING));
+	}
+
+	private static void discard(File part, File validatorFile) {
+		part.delete();
+		validatorFile.delete();
+	}
+
+	private long write(InputStream in, File part, long offset, long expected) throws IOException {
+		ReadableByteChannel source = Channels.newChannel(in);
+		RandomAccessFile file = new RandomAccessFile(part, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			channel.truncate(offset);
+			long position = offset;
+			long reportStep = expected > 0 ? Math.max(TRANSFER_CHUNK, expected / 10) : 0;
+			long nextReport = position + reportStep;
+			while (true) {
+				// the source blocks until data arrives, nothing transferred means end of stream
+				long transferred = channel.transferFrom(source, position, TRANSFER_CHUNK);
+				if (transferred <= 0)
+					break;
+				position += transferred;
+				if (reportStep > 0 && position >= nextReport) {
+					log.debug("'" + part.getName() + "': " + position + " of " + expected + " bytes.");
+					nextReport = position + reportStep;
+				}
+			}
+			return position - offset;
+		} finally {
+			file.close();
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Extracts zip packages into the target platform on several threads.
+ * <p>
+ * The entries are read through the zip central directory, so worker threads
+ * pick entries independently of each other. All directories are created up
+ * front, files are written through a {@link FileChannel} to a temporary file
+ * which is renamed once complete. An existing file at least as new as its
+ * entry is left untouched. An older one is only checksummed if it has the
+ * size of its entry, and kept if the CRC matches as well.
+ * <p>
+ * Plugin jars and manifests of exploded bundles are handed to a
+ * {@link BundleIndexer}, if one is set, as soon as they have been written.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class PackageExtractor {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The outcome of extracting a single package.
+	 */
+	public static class Result {
+
+		private final List<String> entries;
+
+		private final int written;
+
+		private final int skipped;
+
+		private final long bytes;
+
+		Result(List<String> entries, int written, int skipped, long bytes) {
+			this.entries = entries;
+			this.written = written;
+			this.skipped = skipped;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return the names of all file entries of the package
+		 */
+		public List<String> getEntries() {
+			return entries;
+		}
+
+		public int getWritten() {
+			return written;
+		}
+
+		public int getSkipped() {
+			return skipped;
+		}
+
+		/**
+		 * @return the number of bytes written
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+	}
+
+	private final File destination;
+
+	private final int threads;
+
+	private final Log log;
+
+	private final File pluginFolder;
+
+	private BundleIndexer indexer;
+
+	/**
+	 * @param threads
+	 *            the number of threads writing entries
+	 */
+	public PackageExtractor(File destination, int threads, Log log) {
+		this.destination = destination;
+		this.threads = Math.max(1, threads);
+		this.log = log;
+		this.pluginFolder = TargetPlatformLayout.getPluginFolder(destination);
+	}
+
+	/**
+	 * Hands the bundles written by following extractions to the given
+	 * indexer, <code>null</code> stops indexing.
+	 */
+	public void setIndexer(BundleIndexer indexer) {
+		this.indexer = indexer;
+	}
+
+	public Result extract(File pkg) throws IOException {
+		ArchivePool.Lease lease = ArchivePool.getShared().lease(pkg);
+		try {
+			final ZipFile zip = lease.getZipFile();
+			final List<ZipEntry> files = new ArrayList<ZipEntry>();
+			SortedSet<String> directories = new TreeSet<String>();
+			for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+				ZipEntry entry = e.nextElement();
+				String name = checkName(entry.getName());
+				if (entry.isDirectory()) {
+					directories.add(name);
+				} else {
+					files.add(entry);
+					if (name.lastIndexOf('/') > 0)
+						directories.add(name.substring(0, name.lastIndexOf('/')));
+				}
+			}
+
+			// sorted, so every parent is created before its children
+			for (String directory : directories) {
+				File dir = new File(destination, directory);
+				if (!dir.isDirectory() && !dir.mkdirs())
+					throw new IOException("Unable to create directory " + dir.getAbsolutePath());
+			}
+
+			final AtomicInteger next = new AtomicInteger();
+			final AtomicInteger written = new AtomicInteger();
+			final AtomicLong bytes = new AtomicLong();
+			int workers = Math.min(threads, Math.max(1, files.size()));
+			ExecutorService executor = Executors.newFixedThreadPool(workers);
+			try {
+				List<Future<Object>> futures = new ArrayList<Future<Object>>(workers);
+				for (int i = 0; i < workers; i++) {
+					futures.add(executor.submit(new Callable<Object>() {
+
+						public Object call() throws IOException {
+							byte[] buffer = new byte[BUFFER_SIZE];
+							for (int i = next.getAndIncrement(); i < files.size(); i = next.getAndIncrement()) {
+								long count = extractEntry(zip, files.get(i), buffer);
+								if (count >= 0) {
+									written.incrementAndGet();
+									bytes.addAndGet(count);
+								}
+							}
+							return null;
+						}
+					}));
+				}
+				for (Future<Object> future : futures) {
+					future.get();
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while extracting " + pkg.getName());
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof IOException)
+					throw (IOException) ex.getCause();
+				throw new IllegalStateException("Unable to extract " + pkg.getName(), ex.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+
+			List<String> names = new ArrayList<String>(files.size());
+			for (ZipEntry entry : files) {
+				names.add(entry.getName());
+			}
+			Result result = new Result(Collections.unmodifiableList(names), written.get(), files.size() - written.get(), bytes.get());
+			log.debug("Extracted '" + pkg.getName() + "': " + result.getWritten() + " entries written, "
+					+ result.getSkipped() + " unchanged, " + result.getBytes() + " bytes.");
+			return result;
+		} finally {
+			lease.close();
+		}
+	}
+
+	/**
+	 * @return the number of bytes written or <code>-1</code> if the existing
+	 *         file has been kept
+	 */
+	private long extractEntry(ZipFile zip, ZipEntry entry, byte[] buffer) throws IOException {
+		File file = new File(destination, entry.getName());
+		if (file.exists()) {
+			if (entry.getTime() != -1 && file.lastModified() >= entry.getTime())
+				return -1;
+			if (file.length() == entry.getSize() && entry.getCrc() != -1 && crc(file, buffer) == entry.getCrc()) {
+				// the next extraction keeps it by its modification time alone
+				if (entry.getTime() != -1)
+					file.setLastModified(entry.getTime());
+				return -1;
+			}
+		}
+
+		File bundle = indexer != null ? getBundle(pluginFolder, file) : null;
+		byte[] content = null;
+		if (bundle != null && entry.getSize() >= 0 && entry.getSize() <= BundleIndexer.MAX_CONTENT_LENGTH)
+			content = new byte[(int) entry.getSize()];
+
+		// written aside and renamed, so a concurrent build never reads a partial file
+		File tmp = BundleStore.createTempFile(file);
+		long count = 0;
+		InputStream in = zip.getInputStream(entry);
+		try {
+			FileChannel out = new FileOutputStream(tmp).getChannel();
+			try {
+				ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+				int read;
+				while ((read = in.read(buffer)) > 0) {
+					wrapper.clear().limit(read);
+					while (wrapper.hasRemaining()) {
+						out.write(wrapper);
+					}
+					if (content != null && count + read <= content.length)
+						System.arraycopy(buffer, 0, content, (int) count, read);
+					count += read;
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		if (entry.getTime() != -1)
+			tmp.setLastModified(entry.getTime());
+		BundleStore.move(tmp.toPath(), file.toPath());
+		if (bundle != null)
+			indexer.offer(bundle, content != null && count == content.length ? content : null);
+		return count;
+	}
+
+	/**
+	 * @return the bundle a file belongs to if it is a plugin jar or the
+	 *         manifest of an exploded bundle, otherwise <code>null</code>
+	 */
+	static File getBundle(File pluginFolder, File file) {
+		File parent = file.getParentFile();
+		if (pluginFolder.equals(parent))
+			return BundleDescriptor.isExploded(file.getName()) ? null : file;
+		if (!file.getName().equals("MANIFEST.MF") || !parent.getName().equals("META-INF"))
+			return null;
+		File bundle = parent.getParentFile();
+		return bundle != null && pluginFolder.equals(bundle.getParentFile()) ? bundle : null;
+	}
+
+	private static long crc(File file, byte[] buffer) throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream in = new FileInputStream(file);
+		try {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				crc.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Rejects entries that would end up outside of the destination.
+	 */
+	static String checkName(String name) throws IOException {
+		String normalized = name.replace('\\', '/');
+		if (normalized.startsWith("/") || normalized.equals("..") || normalized.startsWith("../")
+				|| normalized.contains("/../") || normalized.endsWith("/.."))
+			throw new IOException("Illegal entry name " + name);
+		if (normalized.endsWith("/"))
+			normalized = normalized.substring(0, normalized.length() - 1);
+		return normalized;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A package read while it is being downloaded.
+ * <p>
+ * If the package is to be kept in the package repository, every byte read is
+ * also written to a <code>.part</code> file, which replaces the package in
+ * the repository once the stream has been {@link #complete() completed}. A
+ * stream closed before that leaves the repository untouched.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class PackageStream extends FilterInputStream {
+
+	private static final String PART_SUFFIX = ".part";
+
+	private final URLConnection connection;
+
+	private final File dest;
+
+	private final File part;
+
+	private final OutputStream cache;
+
+	private final FileLocks.Lock lock;
+
+	private final long expected;
+
+	private final AtomicLong bytesTransferred;
+
+	private long length;
+
+	private boolean complete;
+
+	/**
+	 * @param dest
+	 *            the file the package is kept as in the repository or
+	 *            <code>null</code> if it isn't kept
+	 * @param lock
+	 *            the lock of the package in the repository, released on
+	 *            close, or <code>null</code>
+	 * @param bytesTransferred
+	 *            counts the bytes read
+	 */
+	PackageStream(URLConnection connection, File dest, FileLocks.Lock lock, AtomicLong bytesTransferred) throws IOException {
+		super(connection.getInputStream());
+		this.connection = connection;
+		this.dest = dest;
+		this.part = dest != null ? new File(dest.getParentFile(), dest.getName() + PART_SUFFIX) : null;
+		this.cache = part != null ? new FileOutputStream(part) : null;
+		this.lock = lock;
+		this.expected = connection.getContentLength();
+		this.bytesTransferred = bytesTransferred;
+	}
+
+	/**
+	 * @return the modification time reported for the package, <code>0</code>
+	 *         if unknown
+	 */
+	public long getLastModified() {
+		return connection.getLastModified();
+	}
+
+	/**
+	 * @return the number of bytes read so far
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	public int read() throws IOException {
+		int b = in.read();
+		if (b >= 0) {
+			if (cache != null)
+				cache.write(b);
+			transferred(1);
+		}
+		return b;
+	}
+
+	public int read(byte[] buffer, int offset, int count) throws IOException {
+		int read = in.read(buffer, offset, count);
+		if (read > 0) {
+			if (cache != null)
+				cache.write(buffer, offset, read);
+			transferred(read);
+		}
+		return read;
+	}
+
+	/**
+	 * Reads the skipped bytes, they have to end up in the repository too.
+	 */
+	public long skip(long count) throws IOException {
+		byte[] buffer = new byte[(int) Math.min(count, 8192)];
+		long skipped = 0;
+		while (skipped < count) {
+			int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+			if (read < 0)
+				break;
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Reads whatever the consumer of the stream left over, e.g. the central
+	 * directory of a zip package, checks that the package is complete and
+	 * moves it into the repository.
+	 */
+	public void complete() throws IOException {
+		byte[] buffer = new byte[64 * 1024];
+		while (read(buffer, 0, buffer.length) >= 0) {
+			// drain
+		}
+		if (expected >= 0 && length != expected)
+			throw new IOException("Incomplete download of " + connection.getURL() + ": " + length + " of " + expected + " bytes");
+		if (cache != null) {
+			cache.close();
+			if (getLastModified() != 0)
+				part.setLastModified(getLastModified());
+			BundleStore.move(part.toPath(), dest.toPath());
+		}
+		complete = true;
+	}
+
+	public void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			if (cache != null) {
+				cache.close();
+				if (!complete)
+					part.delete();
+			}
+			if (connection instanceof HttpURLConnection)
+				((HttpURLConnection) connection).disconnect();
+			if (lock != null)
+				lock.close();
+		}
+	}
+
+	private void transferred(int count) {
+		length += count;
+		bytesTransferred.addAndGet(count);
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+
+import org.apache.maven.plugin.logging.Log;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+
+/**
+ * Remembers the bundles a project's manifest resolved to, so an unchanged
+ * project isn't resolved again against an unchanged target platform.
+ * <p>
+ * The result is stored in the project's build directory together with a key
+ * hashed from the bundle manifest and the resolution settings. Along with it
+ * go the names the resolution depends on, i.e. the required bundles, imported
+ * packages and fragment hosts of the manifest and of every resolved bundle,
+ * and the stamps of the bundles providing one of these names, either by their
+ * symbolic name, as fragment or by an exported package. A result is only used
+ * if its key matches, all of its bundles still exist, including those of the
+ * classpaths of the other target environments, and the providers of its names
+ * are still the same. Bundles installed next to them that provide none of the
+ * names don't invalidate it.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class ResolutionCache {
+
+	public static final String CACHE_FILE = "build-eclipse-resolution.txt";
+
+	private static final int FORMAT_VERSION = 2;
+
+	private static final String ENCODING = "UTF-8";
+
+	private static final char PROBLEM = 'P';
+
+	private static final char BUNDLE = 'B';
+
+	private static final char ENVIRONMENT = 'E';
+
+	private static final char CLASSPATH = 'C';
+
+	private static final char NAME = 'N';
+
+	private static final char STAMP = 'S';
+
+	/**
+	 * The outcome of resolving a bundle manifest.
+	 */
+	public static class Resolution {
+
+		private final List<String> problems = new ArrayList<String>();
+
+		private final Map<String,File> bundles = new LinkedHashMap<String,File>();
+
+		private final Map<String,List<File>> classpaths = new LinkedHashMap<String,List<File>>();
+
+		public void addProblem(String problem) {
+			problems.add(problem);
+		}
+
+		public void addBundle(String symbolicName, File file) {
+			bundles.put(symbolicName, file);
+		}
+
+		public void addClasspath(String environment, List<File> files) {
+			classpaths.put(environment, files);
+		}
+
+		/**
+		 * @return the unsatisfied requirements of the manifest itself
+		 */
+		public List<String> getProblems() {
+			return problems;
+		}
+
+		/**
+		 * @return the files of the resolved bundles by symbolic name, in
+		 *         classpath order
+		 */
+		public Map<String,File> getBundles() {
+			return bundles;
+		}
+
+		/**
+		 * @return the classpath of every target environment by its
+		 *         {@link TargetEnvironment#getId() id}, the one of the first
+		 *         environment lists the files of {@link #getBundles()}
+		 */
+		public Map<String,List<File>> getClasspaths() {
+			return classpaths;
+		}
+	}
+
+	private final File cacheFile;
+
+	private final Log log;
+
+	public ResolutionCache(File buildDirectory, Log log) {
+		this.cacheFile = new File(buildDirectory, CACHE_FILE);
+		this.log = log;
+	}
+
+	/**
+	 * Computes the key of a resolution.
+	 *
+	 * @param settings
+	 *            the settings the resolution depends on, e.g. the target
+	 *            environments
+	 */
+	public static String getKey(byte[] manifest, Object... settings) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		digest.update(Integer.toString(FORMAT_VERSION).getBytes(ENCODING));
+		digest.update(manifest);
+		for (Object setting : settings) {
+			digest.update(('\n' + String.valueOf(setting)).getBytes(ENCODING));
+		}
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return the cached resolution for the given key or <code>null</code> if
+	 *         there is none or a provider of a name it depends on has been
+	 *         added to, removed from or replaced in the target platform
+	 */
+	public Resolution read(String key, File targetPlatformLocation) {
+		if (!cacheFile.isFile())
+			return null;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), ENCODING));
+			try {
+				if (!key.equals(reader.readLine()))
+					return null;
+				Resolution resolution = new Resolution();
+				List<File> classpath = null;
+				Set<String> names = new HashSet<String>();
+				Map<String,String> stamps = new TreeMap<String,String>();
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.length() < 2)
+						return null;
+					if (line.charAt(0) == PROBLEM) {
+						resolution.addProblem(line.substring(2));
+					} else if (line.charAt(0) == BUNDLE) {
+						int separator = line.indexOf('\t', 2);
+						if (separator < 0)
+							return null;
+						File file = new File(line.substring(separator + 1));
+						if (!file.exists())
+							return null;
+						resolution.addBundle(line.substring(2, separator), file);
+					} else if (line.charAt(0) == ENVIRONMENT) {
+						classpath = new ArrayList<File>();
+						resolution.addClasspath(line.substring(2), classpath);
+					} else if (line.charAt(0) == CLASSPATH && classpath != null) {
+						File file = new File(line.substring(2));
+						if (!file.exists())
+							return null;
+						classpath.add(file);
+					} else if (line.charAt(0) == NAME) {
+						names.add(line.substring(2));
+					} else if (line.charAt(0) == STAMP) {
+						int separator = line.indexOf('\t', 2);
+						if (separator < 0)
+							return null;
+						stamps.put(line.substring(2, separator), line.substring(separator + 1));
+					} else {
+						return null;
+					}
+				}
+				Map<String,String> providers = getProviderStamps(getBundles(targetPlatformLocation), names);
+				if (!providers.equals(stamps)) {
+					log.debug("Not reusing the resolution, the providers of its bundles and packages have changed.");
+					return null;
+				}
+				return resolution;
+			} finally {
+				reader.close();
+			}
+		} catch (IOException ex) {
+			log.debug("Ignoring unreadable resolution cache " + cacheFile.getAbsolutePath() + ": " + ex.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @param manifest
+	 *            the main attributes of the resolved bundle manifest
+	 */
+	public void write(String key, Resolution resolution, Attributes manifest, File targetPlatformLocation) throws IOException {
+		List<BundleDescriptor> bundles = getBundles(targetPlatformLocation);
+		Set<String> files = new HashSet<String>();
+		for (List<File> classpath : resolution.getClasspaths().values()) {
+			for (File file : classpath) {
+				files.add(file.getName());
+			}
+		}
+		HeaderTokenizer tokenizer = new HeaderTokenizer();
+		Set<String> names = new TreeSet<String>();
+		addNames(names, tokenizer, manifest.getValue(Constants.REQUIRE_BUNDLE));
+		addNames(names, tokenizer, manifest.getValue(Constants.IMPORT_PACKAGE));
+		for (BundleDescriptor bundle : bundles) {
+			if (!files.contains(bundle.getFile().getName()))
+				continue;
+			if (bundle.getSymbolicName() != null)
+				names.add(bundle.getSymbolicName());
+			addNames(names, tokenizer, bundle.getHeader(Constants.REQUIRE_BUNDLE));
+			addNames(names, tokenizer, bundle.getHeader(Constants.IMPORT_PACKAGE));
+			addNames(names, tokenizer, bundle.getHeader(Constants.FRAGMENT_HOST));
+		}
+
+		File tmp = BundleStore.createTempFile(cacheFile);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), ENCODING));
+		try {
+			writer.write(key);
+			writer.write('\n');
+			for (String problem : resolution.getProblems()) {
+				writer.write(PROBLEM + "\t" + problem.replace('\n', ' ') + '\n');
+			}
+			for (Map.Entry<String,File> bundle : resolution.getBundles().entrySet()) {
+				writer.write(BUNDLE + "\t" + bundle.getKey() + '\t' + bundle.getValue().getAbsolutePath() + '\n');
+			}
+			for (Map.Entry<String,List<File>> classpath : resolution.getClasspaths().entrySet()) {
+				writer.write(ENVIRONMENT + "\t" + classpath.getKey() + '\n');
+				for (File file : classpath.getValue()) {
+					writer.write(CLASSPATH + "\t" + file.getAbsolutePath() + '\n');
+				}
+			}
+			for (String name : names) {
+				writer.write(NAME + "\t" + name + '\n');
+			}
+			for (Map.Entry<String,String> stamp : getProviderStamps(bundles, names).entrySet()) {
+				writer.write(STAMP + "\t" + stamp.getKey() + '\t' + stamp.getValue() + '\n');
+			}
+		} finally {
+			writer.close();
+		}
+		BundleStore.move(tmp.toPath(), cacheFile.toPath());
+	}
+
+	/**
+	 * @return the bundles of the plugin folder and those catalogued in
+	 *         lazily materialized packages
+	 */
+	private List<BundleDescriptor> getBundles(File targetPlatformLocation) throws IOException {
+		// only bundles changed since the last scan are read
+		List<BundleDescriptor> bundles = BundleIndex.load(targetPlatformLocation, log).update(
+				TargetPlatformLayout.getPluginFolder(targetPlatformLocation));
+		PackageCatalog.addMissingBundles(targetPlatformLocation, bundles);
+		return bundles;
+	}
+
+	/**
+	 * @return the size and modification time of every bundle providing one
+	 *         of the given names, by file name
+	 */
+	private static Map<String,String> getProviderStamps(List<BundleDescriptor> bundles, Set<String> names) {
+		Map<String,String> stamps = new TreeMap<String,String>();
+		HeaderTokenizer tokenizer = new HeaderTokenizer();
+		for (BundleDescriptor bundle : bundles) {
+			if (names.contains(bundle.getSymbolicName()) || provides(tokenizer, bundle.getHeader(Constants.FRAGMENT_HOST), names)
+					|| provides(tokenizer, bundle.getHeader(Constants.EXPORT_PACKAGE), names))
+				stamps.put(bundle.getFile().getName(), bundle.getLength() + "\t" + bundle.getLastModified());
+		}
+		return stamps;
+	}
+
+	private static boolean provides(HeaderTokenizer tokenizer, String header, Set<String> names) {
+		tokenizer.reset(header);
+		try {
+			while (tokenizer.nextClause()) {
+				for (int i = 0; i < tokenizer.getValueCount(); i++) {
+					if (names.contains(tokenizer.getValue(i).toString()))
+						return true;
+				}
+			}
+		} catch (BundleException ex) {
+			// a broken header only loses the rest of its clauses, as in a scan
+		}
+		return false;
+	}
+
+	private static void addNames(Set<String> names, HeaderTokenizer tokenizer, String header) {
+		tokenizer.reset(header);
+		try {
+			while (tokenizer.nextClause()) {
+				for (int i = 0; i < tokenizer.getValueCount(); i++) {
+					names.add(tokenizer.getValue(i).toString());
+				}
+			}
+		} catch (BundleException ex) {
+			// a broken header only loses the rest of its clauses, as in a scan
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+
+/**
+ * Extracts packages from a stream, entry by entry in the order they arrive,
+ * e.g. while the package is still being downloaded.
+ * <p>
+ * Besides zip packages, tar packages like the <code>.tar.gz</code>
+ * distributions of eclipse are supported, which {@link PackageExtractor}
+ * can't read. An existing file newer than its entry is left untouched, as
+ * there is no central directory to compare sizes and CRCs with up front.
+ * Bundles are handed to a {@link BundleIndexer}, if one is set, like
+ * {@link PackageExtractor} does.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class StreamingExtractor {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File destination;
+
+	private final File pluginFolder;
+
+	private final Log log;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private BundleIndexer indexer;
+
+	private List<String> entries;
+
+	private int written;
+
+	private long bytes;
+
+	public StreamingExtractor(File destination, Log log) {
+		this.destination = destination;
+		this.pluginFolder = TargetPlatformLayout.getPluginFolder(destination);
+		this.log = log;
+	}
+
+	/**
+	 * @return <code>true</code> if the package is a tar package, optionally
+	 *         compressed with gzip
+	 */
+	public static boolean isTar(String packageName) {
+		String name = packageName.toLowerCase();
+		return name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+	}
+
+	/**
+	 * Hands the bundles written by following extractions to the given
+	 * indexer, <code>null</code> stops indexing.
+	 */
+	public void setIndexer(BundleIndexer indexer) {
+		this.indexer = indexer;
+	}
+
+	/**
+	 * Extracts a package, the format is told by its name. The stream is left
+	 * open and may have unread bytes left after the last entry.
+	 */
+	public PackageExtractor.Result extract(String packageName, InputStream in) throws IOException {
+		entries = new ArrayList<String>();
+		written = 0;
+		bytes = 0;
+		if (isTar(packageName)) {
+			String name = packageName.toLowerCase();
+			boolean gzip = name.endsWith(".gz") || name.endsWith(".tgz");
+			TarInputStream tar = new TarInputStream(gzip ? new GZIPInputStream(in, BUFFER_SIZE) : in);
+			for (TarEntry entry = tar.getNextEntry(); entry != null; entry = tar.getNextEntry()) {
+				if (entry.getLinkName() != null && entry.getLinkName().length() > 0) {
+					log.debug("Skipping link " + entry.getName() + " -> " + entry.getLinkName());
+					continue;
+				}
+				File file = extractEntry(entry.getName(), entry.isDirectory(), entry.getSize(), entry.getModTime().getTime(), tar);
+				if (file != null && (entry.getMode() & 0100) != 0)
+					file.setExecutable(true, (entry.getMode() & 0011) == 0);
+			}
+		} else {
+			ZipInputStream zip = new ZipInputStream(in);
+			for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+				extractEntry(entry.getName(), entry.isDirectory(), entry.getSize(), entry.getTime(), zip);
+			}
+		}
+
+		PackageExtractor.Result result = new PackageExtractor.Result(Collections.unmodifiableList(entries), written,
+				entries.size() - written, bytes);
+		log.debug("Extracted '" + packageName + "': " + result.getWritten() + " entries written, "
+				+ result.getSkipped() + " unchanged, " + result.getBytes() + " bytes.");
+		return result;
+	}
+
+	/**
+	 * @return the file written or <code>null</code> if the entry is a
+	 *         directory or the existing file has been kept
+	 */
+	private File extractEntry(String entryName, boolean directory, long size, long time, InputStream in) throws IOException {
+		String name = PackageExtractor.checkName(entryName);
+		File file = new File(destination, name);
+		if (directory) {
+			if (!file.isDirectory() && !file.mkdirs())
+				throw new IOException("Unable to create directory " + file.getAbsolutePath());
+			return null;
+		}
+		entries.add(name);
+		if (file.exists() && time != -1 && file.lastModified() >= time)
+			return null;
+		File bundle = indexer != null ? PackageExtractor.getBundle(pluginFolder, file) : null;
+		byte[] content = null;
+		if (bundle != null && size >= 0 && size <= BundleIndexer.MAX_CONTENT_LENGTH)
+			content = new byte[(int) size];
+
+		// written aside and renamed, so a concurrent build never reads a partial file
+		File tmp = BundleStore.createTempFile(file);
+		long count = 0;
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+				if (content != null && count + read <= content.length)
+					System.arraycopy(buffer, 0, content, (int) count, read);
+				count += read;
+			}
+		} finally {
+			out.close();
+		}
+		if (time != -1)
+			tmp.setLastModified(time);
+		BundleStore.move(tmp.toPath(), file.toPath());
+		if (bundle != null)
+			indexer.offer(bundle, content != null && count == content.length ? content : null);
+		written++;
+		bytes += count;
+		return file;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.util.Arrays;
+
+/**
+ * Maps the ids of a {@link SymbolTable} to values, backed by an array indexed
+ * by id.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class SymbolMap<V> {
+
+	private final SymbolTable symbols;
+
+	private Object[] values = new Object[64];
+
+	private int size;
+
+	public SymbolMap(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+
+	public SymbolTable getSymbols() {
+		return symbols;
+	}
+
+	/**
+	 * Interns the name and maps it to the given value.
+	 */
+	public void put(String name, V value) {
+		put(symbols.intern(name), value);
+	}
+
+	public void put(int id, V value) {
+		if (id >= values.length)
+			values = Arrays.copyOf(values, Math.max(values.length * 2, id + 1));
+		if (values[id] == null)
+			size++;
+		values[id] = value;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int id) {
+		return id >= 0 && id < values.length ? (V) values[id] : null;
+	}
+
+	public V get(String name) {
+		return get(symbols.lookup(name));
+	}
+
+	public boolean containsKey(String name) {
+		return get(name) != null;
+	}
+
+	/**
+	 * @return the number of mapped ids
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.util.Arrays;
+
+/**
+ * Interns dotted names like packages and symbolic names as dense int ids.
+ * <p>
+ * Names are stored as a trie of their dot separated segments, so
+ * <code>org.eclipse.core.runtime</code> and
+ * <code>org.eclipse.core.resources</code> share the nodes of
+ * <code>org.eclipse.core</code>. Every distinct segment is stored once in a
+ * shared character arena. A node is identified by its parent node and its
+ * segment, both kept in open addressed int tables, so neither interning nor
+ * looking up a name allocates objects.
+ * <p>
+ * Ids are assigned from <code>0</code> in interning order and never change.
+ * Every prefix of an interned name has an id as well. Interning isn't thread
+ * safe, lookups are once interning has finished.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class SymbolTable {
+
+	private static final int ROOT = -1;
+
+	private char[] arena = new char[4096];
+
+	private int arenaSize;
+
+	private int[] segmentOffsets = new int[256];
+
+	private int[] segmentLengths = new int[256];
+
+	private int segmentCount;
+
+	/** segment id + 1 per slot, 0 marks a free slot */
+	private int[] segmentSlots = new int[512];
+
+	private int[] nodeParents = new int[1024];
+
+	private int[] nodeSegments = new int[1024];
+
+	private int nodeCount;
+
+	/** node id + 1 per slot, 0 marks a free slot */
+	private int[] nodeSlots = new int[2048];
+
+	/**
+	 * @return the id of the given name, added if it isn't known yet
+	 */
+	public int intern(CharSequence name) {
+		int node = ROOT;
+		int start = 0;
+		for (int i = 0; i <= name.length(); i++) {
+			if (i == name.length() || name.charAt(i) == '.') {
+				int segment = findSegment(name, start, i);
+				if (segment < 0)
+					segment = addSegment(name, start, i);
+				int child = findNode(node, segment);
+				node = child < 0 ? addNode(node, segment) : child;
+				start = i + 1;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * @return the id of the given name or <code>-1</code> if it hasn't been
+	 *         interned
+	 */
+	public int lookup(CharSequence name) {
+		if (name == null)
+			return -1;
+		int node = ROOT;
+		int start = 0;
+		for (int i = 0; i <= name.length(); i++) {
+			if (i == name.length() || name.charAt(i) == '.') {
+				int segment = findSegment(name, start, i);
+				if (segment < 0)
+					return -1;
+				node = findNode(node, segment);
+				if (node < 0)
+					return -1;
+				start = i + 1;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * @return the name of the given id
+	 */
+	public String getName(int id) {
+		if (id < 0 || id >= nodeCount)
+			throw new IllegalArgumentException("Unknown symbol " + id);
+		int length = -1;
+		for (int node = id; node != ROOT; node = nodeParents[node]) {
+			length += segmentLengths[nodeSegments[node]] + 1;
+		}
+		char[] name = new char[length];
+		int end = length;
+		for (int node = id; node != ROOT; node = nodeParents[node]) {
+			int segment = nodeSegments[node];
+			end -= segmentLengths[segment];
+			System.arraycopy(arena, segmentOffsets[segment], name, end, segmentLengths[segment]);
+			if (end > 0)
+				name[--end] = '.';
+		}
+		return new String(name);
+	}
+
+	/**
+	 * @return the number of ids handed out, every id is below this value
+	 */
+	public int size() {
+		return nodeCount;
+	}
+
+	private int findSegment(CharSequence name, int start, int end) {
+		int mask = segmentSlots.length - 1;
+		for (int slot = hash(name, start, end) & mask;; slot = (slot + 1) & mask) {
+			int segment = segmentSlots[slot] - 1;
+			if (segment < 0)
+				return -1;
+			if (matches(segment, name, start, end))
+				return segment;
+		}
+	}
+
+	private int addSegment(CharSequence name, int start, int end) {
+		int length = end - start;
+		if (arenaSize + length > arena.length)
+			arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+		for (int i = 0; i < length; i++) {
+			arena[arenaSize + i] = name.charAt(start + i);
+		}
+		if (segmentCount == segmentOffsets.length) {
+			segmentOffsets = Arrays.copyOf(segmentOffsets, segmentCount * 2);
+			segmentLengths = Arrays.copyOf(segmentLengths, segmentCount * 2);
+		}
+		int segment = segmentCount++;
+		segmentOffsets[segment] = arenaSize;
+		segmentLengths[segment] = length;
+		arenaSize += length;
+
+		if (segmentCount * 2 > segmentSlots.length) {
+			segmentSlots = new int[segmentSlots.length * 2];
+			for (int s = 0; s < segmentCount; s++) {
+				insert(segmentSlots, hash(arena, segmentOffsets[s], segmentOffsets[s] + segmentLengths[s]), s);
+			}
+		} else {
+			insert(segmentSlots, hash(name, start, end), segment);
+		}
+		return segment;
+	}
+
+	private int findNode(int parent, int segment) {
+		int mask = nodeSlots.length - 1;
+		for (int slot = hash(parent, segment) & mask;; slot = (slot + 1) & mask) {
+			int node = nodeSlots[slot] - 1;
+			if (node < 0)
+				return -1;
+			if (nodeParents[node] == parent && nodeSegments[node] == segment)
+				return node;
+		}
+	}
+
+	private int addNode(int parent, int segment) {
+		if (nodeCount == nodeParents.length) {
+			nodeParents = Arrays.copyOf(nodeParents, nodeCount * 2);
+			nodeSegments = Arrays.copyOf(nodeSegments, nodeCount * 2);
+		}
+		int node = nodeCount++;
+		nodeParents[node] = parent;
+		nodeSegments[node] = segment;
+
+		if (nodeCount * 2 > nodeSlots.length) {
+			nodeSlots = new int[nodeSlots.length * 2];
+			for (int n = 0; n < nodeCount; n++) {
+				insert(nodeSlots, hash(nodeParents[n], nodeSegments[n]), n);
+			}
+		} else {
+			insert(nodeSlots, hash(parent, segment), node);
+		}
+		return node;
+	}
+
+	private boolean matches(int segment, CharSequence name, int start, int end) {
+		if (segmentLengths[segment] != end - start)
+			return false;
+		int offset = segmentOffsets[segment];
+		for (int i = start; i < end; i++) {
+			if (arena[offset++] != name.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private static void insert(int[] slots, int hash, int id) {
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while (slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = id + 1;
+	}
+
+	private static int hash(CharSequence name, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + name.charAt(i);
+		}
+		return spread(hash);
+	}
+
+	private static int hash(char[] chars, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		return spread(hash);
+	}
+
+	private static int hash(int parent, int segment) {
+		return spread(parent * 0x9E3779B9 + segment);
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+/**
+ * An operating system, windowing system, architecture and locale that
+ * Eclipse-PlatformFilter headers of fragments are matched against.
+ * <p>
+ * Configured in the POM as
+ *
+ * <pre>
+ * &lt;targetEnvironments&gt;
+ *   &lt;targetEnvironment&gt;
+ *     &lt;os&gt;linux&lt;/os&gt;
+ *     &lt;ws&gt;gtk&lt;/ws&gt;
+ *     &lt;arch&gt;x86_64&lt;/arch&gt;
+ *   &lt;/targetEnvironment&gt;
+ * &lt;/targetEnvironments&gt;
+ * </pre>
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class TargetEnvironment {
+
+	/**
+	 * The environment used when none is configured.
+	 */
+	public static final TargetEnvironment DEFAULT = new TargetEnvironment("win32", "win32", "x86", "en");
+
+	private String os;
+
+	private String ws;
+
+	private String arch;
+
+	private String nl = "en";
+
+	public TargetEnvironment() {
+	}
+
+	public TargetEnvironment(String os, String ws, String arch, String nl) {
+		this.os = os;
+		this.ws = ws;
+		this.arch = arch;
+		this.nl = nl;
+	}
+
+	public String getOs() {
+		return os;
+	}
+
+	public String getWs() {
+		return ws;
+	}
+
+	public String getArch() {
+		return arch;
+	}
+
+	public String getNl() {
+		return nl;
+	}
+
+	/**
+	 * @return the environment in the form used by the names of platform
+	 *         specific fragments, e.g. <code>linux.gtk.x86_64.en</code>
+	 */
+	public String getId() {
+		return os + "." + ws + "." + arch + "." + nl;
+	}
+
+	/**
+	 * @return the properties a platform filter is evaluated against
+	 */
+	public Dictionary<String,String> getPlatformFilterDictionary() {
+		Dictionary<String,String> dictionary = new Hashtable<String,String>();
+		put(dictionary, "osgi.os", os);
+		put(dictionary, "osgi.ws", ws);
+		put(dictionary, "osgi.arch", arch);
+		put(dictionary, "osgi.nl", nl);
+		return dictionary;
+	}
+
+	private static void put(Dictionary<String,String> dictionary, String key, String value) {
+		if (value != null)
+			dictionary.put(key, value);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof TargetEnvironment && toString().equals(obj.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return os + "/" + ws + "/" + arch + "/" + nl;
+	}
+}
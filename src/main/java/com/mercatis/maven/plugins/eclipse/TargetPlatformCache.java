@@ -0,0 +1,133 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Shares scanned {@link TargetPlatformModel}s between the modules of a reactor
+ * build. The plugin's classes are loaded once per build session, so every
+ * module resolving against the same target platform reuses the model of the
+ * first one.
+ * <p>
+ * Models are keyed by the canonical target platform location and the target
+ * environments they have been scanned for. The first
+ * caller scans, concurrent callers of a parallel build wait for its result.
+ * A model is dropped when {@link #invalidate(File)} is called or when bundles
+ * have been added to, removed from or replaced in the plugin folder since it
+ * was scanned.
+ * <p>
+ * A caller uses the model it scanned itself even if a concurrent module has
+ * changed the plugin folder meanwhile, rescanning wouldn't be any more
+ * current. A stale model of another caller is rescanned once at most. Only
+ * the scanning module's metrics record the <code>scan</code> phase, waiting
+ * modules record <code>scan.wait</code>.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public final class TargetPlatformCache {
+
+	private static final String KEY_SEPARATOR = "#";
+
+	private static final ConcurrentMap<String,Future<TargetPlatformModel>> MODELS = new ConcurrentHashMap<String,Future<TargetPlatformModel>>();
+
+	private TargetPlatformCache() {
+	}
+
+	public static TargetPlatformModel get(final File targetPlatformLocation,
+			final List<TargetEnvironment> environments, final int threads, final BuildMetrics metrics, final Log log)
+			throws MojoExecutionException {
+		String key = getKey(targetPlatformLocation) + KEY_SEPARATOR + environments;
+		for (int attempt = 0;; attempt++) {
+			Future<TargetPlatformModel> future = MODELS.get(key);
+			boolean scanned = false;
+			if (future == null) {
+				FutureTask<TargetPlatformModel> task = new FutureTask<TargetPlatformModel>(new Callable<TargetPlatformModel>() {
+
+					public TargetPlatformModel call() throws MojoExecutionException {
+						return TargetPlatformModel.scan(targetPlatformLocation, environments, threads, metrics, log);
+					}
+				});
+				future = MODELS.putIfAbsent(key, task);
+				if (future == null) {
+					future = task;
+					metrics.phase("scan");
+					task.run();
+					scanned = true;
+				} else {
+					metrics.phase("scan.wait");
+					log.debug("Waiting for concurrent scan of target platform " + key);
+				}
+			}
+
+			TargetPlatformModel model;
+			try {
+				model = future.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException("Interrupted while waiting for target platform scan.");
+			} catch (ExecutionException ex) {
+				MODELS.remove(key, future);
+				if (ex.getCause() instanceof MojoExecutionException)
+					throw (MojoExecutionException) ex.getCause();
+				throw new MojoExecutionException(ex.getCause().getMessage(), ex.getCause());
+			}
+
+			if (scanned)
+				return model;
+			if (!model.isStale(targetPlatformLocation)) {
+				log.debug("Using target platform model of " + key);
+				return model;
+			}
+			MODELS.remove(key, future);
+			if (attempt > 0) {
+				log.debug("Target platform " + key + " keeps changing, using the model scanned last.");
+				return model;
+			}
+		}
+	}
+
+	/**
+	 * Drops the cached model of a target platform, the next module will scan
+	 * it again.
+	 */
+	public static void invalidate(File targetPlatformLocation) {
+		String prefix = getKey(targetPlatformLocation) + KEY_SEPARATOR;
+		for (String key : MODELS.keySet()) {
+			if (key.startsWith(prefix))
+				MODELS.remove(key);
+		}
+	}
+
+	private static String getKey(File targetPlatformLocation) {
+		try {
+			return targetPlatformLocation.getCanonicalPath();
+		} catch (IOException ex) {
+			return targetPlatformLocation.getAbsolutePath();
+		}
+	}
+}
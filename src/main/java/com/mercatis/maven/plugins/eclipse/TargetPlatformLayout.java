@@ -0,0 +1,55 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+
+/**
+ * Well known locations inside an eclipse target platform.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public final class TargetPlatformLayout {
+
+	/**
+	 * Folder holding the files maintained by this plugin, relative to the
+	 * target platform location.
+	 */
+	public static final String METADATA_FOLDER = ".build-eclipse-plugin";
+
+	private TargetPlatformLayout() {
+	}
+
+	public static File getPluginFolder(File targetPlatformLocation) {
+		return new File(new File(targetPlatformLocation, "eclipse"), "plugins");
+	}
+
+	public static File getMetadataFolder(File targetPlatformLocation) {
+		return new File(targetPlatformLocation, METADATA_FOLDER);
+	}
+
+	public static File getMetadataFile(File targetPlatformLocation, String name) {
+		return new File(getMetadataFolder(targetPlatformLocation), name);
+	}
+
+	/**
+	 * @return the lock file of a package extracted into or a bundle written to
+	 *         the target platform, see {@link FileLocks}
+	 */
+	public static File getLockFile(File targetPlatformLocation, String name) {
+		return FileLocks.getLockFile(getMetadataFolder(targetPlatformLocation), name);
+	}
+}
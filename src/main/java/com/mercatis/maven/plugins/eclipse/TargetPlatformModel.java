@@ -0,0 +1,260 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.osgi.framework.internal.core.FilterImpl;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.Version;
+
+/**
+ * The scanned content of a target platform: the bundles by symbolic name,
+ * their exported packages, the fragments matching the platform and the
+ * dependency graph between them.
+ * <p>
+ * Fragments are matched against several target environments in the same
+ * scan, every environment gets its own fragment lookup and bundle graph.
+ * Each distinct Eclipse-PlatformFilter is compiled only once.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class TargetPlatformModel {
+
+	private final List<TargetEnvironment> environments;
+
+	private final SymbolTable symbols = new SymbolTable();
+
+	private final Map<TargetEnvironment,SymbolMap<File>> symbolicNameLookups = new HashMap<TargetEnvironment,SymbolMap<File>>();
+
+	private final ExportPackageIndex exportPackageIndex = new ExportPackageIndex(symbols);
+
+	private final Map<TargetEnvironment,SymbolMap<Integer>> fragmentHostLookups = new HashMap<TargetEnvironment,SymbolMap<Integer>>();
+
+	private final Map<TargetEnvironment,BundleGraph> bundleGraphs = new HashMap<TargetEnvironment,BundleGraph>();
+
+	/** the fingerprint of plugin folder and catalogs when the scan started */
+	private final String fingerprint;
+
+	private TargetPlatformModel(List<TargetEnvironment> environments, String fingerprint) {
+		this.environments = environments;
+		this.fingerprint = fingerprint;
+		for (TargetEnvironment environment : environments) {
+			symbolicNameLookups.put(environment, new SymbolMap<File>(symbols));
+			fragmentHostLookups.put(environment, new SymbolMap<Integer>(symbols));
+		}
+	}
+
+	/**
+	 * Scans the plugin folder of a target platform, updating its bundle index.
+	 *
+	 * @param environments
+	 *            the environments fragments are matched against, the first
+	 *            one is the primary environment
+	 * @param threads
+	 *            the number of threads reading changed bundles
+	 * @param metrics
+	 *            counts the scanned bundles and parsed manifests
+	 */
+	public static TargetPlatformModel scan(File targetPlatformLocation, List<TargetEnvironment> environments,
+			int threads, BuildMetrics metrics, Log log) throws MojoExecutionException {
+		File pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		TargetPlatformModel model;
+		try {
+			// taken first, a bundle changing during the scan makes the model stale
+			model = new TargetPlatformModel(environments, getFingerprint(targetPlatformLocation));
+		} catch (IOException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+		BundleIndex index = BundleIndex.load(targetPlatformLocation, log);
+
+		List<Dictionary<String,String>> dictionaries = new ArrayList<Dictionary<String,String>>(environments.size());
+		for (TargetEnvironment environment : environments) {
+			dictionaries.add(environment.getPlatformFilterDictionary());
+		}
+		Map<String,Filter> filters = new HashMap<String,Filter>();
+		HeaderTokenizer tokenizer = new HeaderTokenizer();
+		boolean debug = log.isDebugEnabled();
+
+		try {
+			List<BundleDescriptor> bundles = index.update(pluginFolder, threads);
+			int catalogued = PackageCatalog.addMissingBundles(targetPlatformLocation, bundles);
+			if (catalogued > 0)
+				log.debug(catalogued + " bundles of lazily materialized packages aren't extracted yet.");
+			metrics.count(BuildMetrics.BUNDLES_SCANNED, bundles.size());
+			metrics.count(BuildMetrics.MANIFESTS_PARSED, index.getReadCount());
+			for (BundleDescriptor bundle : bundles) {
+				String symbolicName = bundle.getSymbolicName();
+				if (symbolicName == null)
+					continue; // no osgi bundle
+				int symbol = model.symbols.intern(symbolicName);
+
+				tokenizer.reset(bundle.getHeader(Constants.FRAGMENT_HOST));
+				if (tokenizer.nextClause() && tokenizer.getValueCount() > 0) {
+					//this bundle is actually a fragment
+					//now lets look if it fits our platforms
+					int host = model.symbols.intern(tokenizer.getValue(0));
+
+					// the platform filter is a single LDAP filter, not a list of clauses
+					String filter = bundle.getHeader(BundleDescriptor.PLATFORM_FILTER);
+					if (filter != null && filter.trim().length() > 0) {
+						filter = filter.trim();
+						Filter f = filters.get(filter);
+						if (f == null) {
+							f = new FilterImpl(filter);
+							filters.put(filter, f);
+						}
+						for (int i = 0; i < environments.size(); i++) {
+							if (f.match(dictionaries.get(i))) {
+								TargetEnvironment environment = environments.get(i);
+								model.fragmentHostLookups.get(environment).put(host, symbol);
+								model.symbolicNameLookups.get(environment).put(symbol, bundle.getFile());
+							}
+						}
+					}
+					continue;
+				}
+
+				if (debug)
+					log.debug("Identified bundle " + symbolicName + " / " + bundle.getHeader(Constants.BUNDLE_VERSION));
+				for (SymbolMap<File> symbolicNameLookup : model.symbolicNameLookups.values()) {
+					symbolicNameLookup.put(symbol, bundle.getFile());
+				}
+
+				// a broken third party manifest only loses the broken exports
+				tokenizer.reset(bundle.getHeader(Constants.EXPORT_PACKAGE));
+				try {
+					while (tokenizer.nextClause()) {
+						Version exportVersion;
+						try {
+							exportVersion = ExportPackageIndex.getVersion(tokenizer);
+						} catch (IllegalArgumentException ex) {
+							log.warn("Ignoring an Export-Package clause of " + symbolicName + ": " + ex.getMessage());
+							continue;
+						}
+						for (int i = 0; i < tokenizer.getValueCount(); i++) {
+							if (debug)
+								log.debug(" Exports: " + tokenizer.getValue(i) + " / " + exportVersion);
+							model.exportPackageIndex.add(model.symbols.intern(tokenizer.getValue(i)), exportVersion, symbol);
+						}
+					}
+				} catch (BundleException ex) {
+					log.warn("Ignoring the rest of the Export-Package header of " + symbolicName + ": " + ex.getMessage());
+				}
+			}
+			log.debug("Compiled " + filters.size() + " distinct platform filters, interned " + model.symbols.size() + " names.");
+
+			for (TargetEnvironment environment : environments) {
+				BundleGraph bundleGraph = new BundleGraph(bundles, model.symbolicNameLookups.get(environment),
+						model.exportPackageIndex, model.fragmentHostLookups.get(environment));
+				model.bundleGraphs.put(environment, bundleGraph);
+				log.debug("Bundle graph for " + environment + ": " + bundleGraph.size() + " bundles, "
+						+ bundleGraph.getEdgeCount() + " edges.");
+			}
+
+			index.store();
+		} catch (Exception ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+		return model;
+	}
+
+	/**
+	 * @return the environments this model has been scanned for
+	 */
+	public List<TargetEnvironment> getEnvironments() {
+		return environments;
+	}
+
+	/**
+	 * @return the bundle file to use for every symbolic name in the primary
+	 *         environment
+	 */
+	public SymbolMap<File> getSymbolicNameLookup() {
+		return getSymbolicNameLookup(environments.get(0));
+	}
+
+	public SymbolMap<File> getSymbolicNameLookup(TargetEnvironment environment) {
+		return symbolicNameLookups.get(environment);
+	}
+
+	/**
+	 * @return the table all package and bundle names are interned in
+	 */
+	public SymbolTable getSymbols() {
+		return symbols;
+	}
+
+	public ExportPackageIndex getExportPackageIndex() {
+		return exportPackageIndex;
+	}
+
+	/**
+	 * @return the symbol id of the fragment attached to every host bundle in
+	 *         the primary environment
+	 */
+	public SymbolMap<Integer> getFragmentHostLookup() {
+		return getFragmentHostLookup(environments.get(0));
+	}
+
+	public SymbolMap<Integer> getFragmentHostLookup(TargetEnvironment environment) {
+		return fragmentHostLookups.get(environment);
+	}
+
+	/**
+	 * @return the bundle graph of the primary environment
+	 */
+	public BundleGraph getBundleGraph() {
+		return getBundleGraph(environments.get(0));
+	}
+
+	public BundleGraph getBundleGraph(TargetEnvironment environment) {
+		return bundleGraphs.get(environment);
+	}
+
+	/**
+	 * @return <code>true</code> if bundles have been added to, removed from
+	 *         or replaced in the plugin folder or packages have been
+	 *         catalogued since this model was scanned
+	 */
+	public boolean isStale(File targetPlatformLocation) {
+		try {
+			return !getFingerprint(targetPlatformLocation).equals(fingerprint);
+		} catch (IOException ex) {
+			return true;
+		}
+	}
+
+	/**
+	 * Fingerprints the name, size and modification time of every bundle and
+	 * catalog, a jar rewritten in place doesn't change the plugin folder's
+	 * own modification time.
+	 */
+	private static String getFingerprint(File targetPlatformLocation) throws IOException {
+		return BundleIndex.getFingerprint(TargetPlatformLayout.getPluginFolder(targetPlatformLocation)) + "#"
+				+ PackageCatalog.getFingerprint(targetPlatformLocation);
+	}
+}
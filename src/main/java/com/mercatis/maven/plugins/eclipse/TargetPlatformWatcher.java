@@ -0,0 +1,183 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Keeps the {@link BundleIndex} of a target platform current while bundles
+ * are added to, replaced in or removed from its plugin folder.
+ * <p>
+ * The plugin folder is watched for created, modified and deleted entries,
+ * exploded bundles additionally for changes of their manifest. Events are
+ * collected until the folder has been quiet for a moment, then only the
+ * affected entries are read again and the index is stored. A build started
+ * afterwards finds every manifest already in the index. If the watch service
+ * loses events, the whole plugin folder is compared with the index again.
+ * <p>
+ * Builds run in other processes, a model they share within their reactor
+ * notices the changes by the fingerprint of the plugin folder.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class TargetPlatformWatcher implements Closeable {
+
+	private static final String META_INF = JarFile.MANIFEST_NAME.substring(0, JarFile.MANIFEST_NAME.indexOf('/'));
+
+	private final File pluginFolder;
+
+	private final Log log;
+
+	private final WatchService watchService;
+
+	private final WatchKey pluginFolderKey;
+
+	/** the plugin folder entry every key of an exploded bundle belongs to */
+	private final Map<WatchKey,String> bundleKeys = new HashMap<WatchKey,String>();
+
+	private final BundleIndex index;
+
+	public TargetPlatformWatcher(File targetPlatformLocation, Log log) throws IOException {
+		this.pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatformLocation);
+		this.log = log;
+		if (!pluginFolder.isDirectory())
+			throw new IOException("Plugin folder " + pluginFolder.getAbsolutePath() + " doesn't exist.");
+		Path folder = pluginFolder.toPath();
+		watchService = folder.getFileSystem().newWatchService();
+		pluginFolderKey = folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+		index = BundleIndex.load(targetPlatformLocation, log);
+		refresh();
+	}
+
+	/**
+	 * Applies changes of the plugin folder to the index until the timeout
+	 * elapses or the calling thread is interrupted.
+	 *
+	 * @param timeout
+	 *            milliseconds to watch, <code>0</code> watches until
+	 *            interrupted
+	 * @param quietPeriod
+	 *            milliseconds without further events before collected
+	 *            changes are applied
+	 */
+	public void watch(long timeout, long quietPeriod) throws IOException, InterruptedException {
+		long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+		while (true) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+				return;
+			WatchKey key = watchService.poll(remaining, TimeUnit.MILLISECONDS);
+			if (key == null)
+				return;
+
+			Set<String> changed = new TreeSet<String>();
+			boolean overflow = false;
+			while (key != null) {
+				overflow |= collect(key, changed);
+				key = watchService.poll(quietPeriod, TimeUnit.MILLISECONDS);
+			}
+			if (overflow) {
+				log.debug("Lost events of " + pluginFolder.getAbsolutePath() + ", comparing the whole plugin folder.");
+				refresh();
+			} else {
+				apply(changed);
+			}
+		}
+	}
+
+	public void close() throws IOException {
+		watchService.close();
+	}
+
+	private boolean collect(WatchKey key, Set<String> changed) {
+		boolean overflow = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+				overflow = true;
+			else if (key == pluginFolderKey)
+				changed.add(((Path) event.context()).toString());
+			else if (bundleKeys.containsKey(key))
+				changed.add(bundleKeys.get(key));
+		}
+		if (!key.reset())
+			bundleKeys.remove(key);
+		return overflow;
+	}
+
+	private void refresh() throws IOException {
+		List<BundleDescriptor> bundles = index.update(pluginFolder);
+		for (BundleDescriptor bundle : bundles) {
+			watchExplodedBundle(bundle.getFile().getName());
+		}
+		index.store();
+		ArchivePool.getShared().closeIdle(log);
+		log.info("Watching " + bundles.size() + " bundles in " + pluginFolder.getAbsolutePath());
+	}
+
+	private void apply(Set<String> changed) throws IOException {
+		boolean modified = false;
+		for (String name : changed) {
+			watchExplodedBundle(name);
+			try {
+				if (index.update(pluginFolder, name)) {
+					modified = true;
+					log.info("Updated " + name);
+				}
+			} catch (IOException ex) {
+				// most likely still being written, the next event reads it again
+				log.debug("Unable to read " + name + ": " + ex.getMessage());
+			}
+		}
+		if (modified)
+			index.store();
+		// a watched jar stays replaceable on every platform
+		ArchivePool.getShared().closeIdle(log);
+	}
+
+	/**
+	 * Watches the manifest folder of an exploded bundle, or the bundle
+	 * directory itself until the manifest folder has been created.
+	 */
+	private void watchExplodedBundle(String name) throws IOException {
+		if (!BundleDescriptor.isExploded(name))
+			return;
+		File bundle = new File(pluginFolder, name);
+		File metaInf = new File(bundle, META_INF);
+		File dir = metaInf.isDirectory() ? metaInf : bundle;
+		if (!dir.isDirectory())
+			return;
+		WatchKey key = dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+		bundleKeys.put(key, name);
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Keeps the bundle index of the target platform current while sibling
+ * modules are installed into it, so gatherDependencies doesn't have to read
+ * any manifest again. Runs until it is interrupted, e.g. with Ctrl-C.
+ * 
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ * 
+ * @goal watchTargetPlatform
+ * 
+ * @description Keeps the bundle index of the target platform current
+ * @requiresProject
+ */
+public class WatchTargetPlatformMojo extends AbstractMojo {
+
+	/**
+	 * @parameter
+	 * @required
+	 */
+	private File targetPlatformLocation;
+	
+	/**
+	 * Milliseconds the plugin folder has to be quiet before changes are
+	 * applied to the index, so a bundle being copied is read only once.
+	 * 
+	 * @parameter expression="${watchQuietPeriod}" default-value="500"
+	 */
+	private long watchQuietPeriod;
+	
+	/**
+	 * Seconds after which watching stops. <code>0</code> watches until
+	 * the build is interrupted.
+	 * 
+	 * @parameter expression="${watchTimeout}" default-value="0"
+	 */
+	private long watchTimeout;
+	
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		try {
+			TargetPlatformWatcher watcher = new TargetPlatformWatcher(targetPlatformLocation, getLog());
+			try {
+				watcher.watch(watchTimeout * 1000, watchQuietPeriod);
+			} finally {
+				watcher.close();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (IOException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+	}
+
+}
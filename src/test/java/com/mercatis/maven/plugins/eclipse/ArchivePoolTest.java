@@ -0,0 +1,150 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class ArchivePoolTest extends TestCase {
+
+	private File folder;
+
+	private ArchivePool pool;
+
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("pool").toFile();
+		pool = new ArchivePool(2);
+	}
+
+	protected void tearDown() throws Exception {
+		pool.closeIdle(new SystemStreamLog());
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testLeasesShareAnOpenArchive() throws Exception {
+		File a = writeJar("a.jar", "a");
+		ArchivePool.Lease first = pool.lease(a);
+		ArchivePool.Lease second = pool.lease(a);
+		assertSame(first.getZipFile(), second.getZipFile());
+		first.close();
+		second.close();
+
+		ArchivePool.Lease third = pool.lease(a);
+		assertSame(first.getZipFile(), third.getZipFile());
+		assertEquals("a", third.getJarFile().getManifest().getMainAttributes().getValue("Bundle-SymbolicName"));
+		third.close();
+	}
+
+	public void testIdleArchivesAreEvictedLeastRecentlyUsedFirst() throws Exception {
+		File a = writeJar("a.jar", "a");
+		File b = writeJar("b.jar", "b");
+		File c = writeJar("c.jar", "c");
+		ArchivePool.Lease leaseA = pool.lease(a);
+		leaseA.close();
+		ArchivePool.Lease leaseB = pool.lease(b);
+		leaseB.close();
+		ArchivePool.Lease leaseC = pool.lease(c);
+		leaseC.close();
+
+		assertClosed(leaseA);
+		ArchivePool.Lease again = pool.lease(b);
+		assertSame(leaseB.getZipFile(), again.getZipFile());
+		again.close();
+	}
+
+	public void testLeasedArchivesStayOpenAboveTheMaximum() throws Exception {
+		ArchivePool.Lease a = pool.lease(writeJar("a.jar", "a"));
+		ArchivePool.Lease b = pool.lease(writeJar("b.jar", "b"));
+		ArchivePool.Lease c = pool.lease(writeJar("c.jar", "c"));
+		assertNotNull(a.getZipFile().getEntry("META-INF/MANIFEST.MF"));
+
+		a.close();
+		assertClosed(a);
+		// closing twice has no effect
+		a.close();
+		b.close();
+		c.close();
+	}
+
+	public void testChangedArchiveIsOpenedAgain() throws Exception {
+		File a = writeJar("a.jar", "a");
+		ArchivePool.Lease before = pool.lease(a);
+		before.close();
+
+		writeJar("a.jar", "changed");
+		a.setLastModified(a.lastModified() + 60000);
+		ArchivePool.Lease after = pool.lease(a);
+		assertNotSame(before.getZipFile(), after.getZipFile());
+		assertEquals("changed", after.getJarFile().getManifest().getMainAttributes().getValue("Bundle-SymbolicName"));
+		after.close();
+		assertClosed(before);
+	}
+
+	public void testChannelLeases() throws Exception {
+		File a = writeJar("a.jar", "a");
+		ArchivePool.Lease channel = pool.leaseChannel(a);
+		ArchivePool.Lease zip = pool.lease(a);
+		assertEquals(a.length(), channel.getChannel().size());
+		ArchivePool.Lease shared = pool.leaseChannel(a);
+		assertSame(channel.getChannel(), shared.getChannel());
+		assertTrue(zip.getZipFile() != null);
+		shared.close();
+		zip.close();
+		channel.close();
+	}
+
+	public void testIdleArchivesAreClosed() throws Exception {
+		ArchivePool.Lease idle = pool.leaseChannel(writeJar("a.jar", "a"));
+		idle.close();
+		ArchivePool.Lease leased = pool.lease(writeJar("b.jar", "b"));
+
+		pool.closeIdle(new SystemStreamLog());
+		assertFalse(idle.getChannel().isOpen());
+		assertNotNull(leased.getZipFile().getEntry("META-INF/MANIFEST.MF"));
+		leased.close();
+	}
+
+	public void testMaximumIsValidated() {
+		try {
+			new ArchivePool(0);
+			fail();
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	private static void assertClosed(ArchivePool.Lease lease) {
+		try {
+			lease.getZipFile().size();
+			fail("archive still open");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	private File writeJar(String fileName, String symbolicName) throws IOException {
+		return TestBundles.writeJar(new File(folder, fileName), symbolicName);
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+
+import junit.framework.TestCase;
+
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class BundleGraphTest extends TestCase {
+
+	private final SymbolTable symbols = new SymbolTable();
+
+	private final SymbolMap<File> symbolicNameLookup = new SymbolMap<File>(symbols);
+
+	private final ExportPackageIndex exports = new ExportPackageIndex(symbols);
+
+	private final SymbolMap<Integer> fragmentHostLookup = new SymbolMap<Integer>(symbols);
+
+	private final List<BundleDescriptor> bundles = new ArrayList<BundleDescriptor>();
+
+	public void testCycleOfRequiredBundles() {
+		addBundle("a", "b", null, null);
+		addBundle("b", "c", null, null);
+		addBundle("c", "a", null, null);
+		addBundle("d", "a", null, null);
+		addBundle("e", null, null, null);
+		BundleGraph graph = build();
+
+		assertEquals("[a, b, c, d]", closure(graph, "d"));
+		assertEquals("[a, b, c]", closure(graph, "b"));
+		assertEquals("[e]", closure(graph, "e"));
+	}
+
+	public void testSelfRequirement() {
+		addBundle("a", "a", null, null);
+		assertEquals("[a]", closure(build(), "a"));
+	}
+
+	public void testCycleOfImportedPackages() {
+		addBundle("a", null, "q", "p");
+		addBundle("b", null, "p", "q");
+		addBundle("c", null, null, "p;version=\"[1.0,2.0)\"");
+		BundleGraph graph = build();
+
+		assertEquals("[a, b, c]", closure(graph, "c"));
+		assertEquals("[a, b]", closure(graph, "a"));
+	}
+
+	public void testImportOfOwnExportIsIgnored() {
+		addBundle("a", null, "p", "p");
+		addBundle("b", "a", null, null);
+		BundleGraph graph = build();
+		assertEquals("[a, b]", closure(graph, "b"));
+		assertEquals(0, graph.getEdgeCount(Collections.singletonList("a")));
+	}
+
+	public void testMalformedImportRangeIsSkipped() {
+		addBundle("a", null, "p,q", null);
+		addBundle("b", null, null, "p;version=\"[1.0,oops)\",q");
+		BundleGraph graph = build();
+
+		assertEquals("[a, b]", closure(graph, "b"));
+		assertEquals(1, graph.getProblems("b").size());
+		assertTrue(graph.getProblems("b").get(0), graph.getProblems("b").get(0).contains("[1.0,oops)"));
+	}
+
+	public void testUnsatisfiedRequirements() {
+		addBundle("a", null, null, null);
+		BundleGraph graph = build();
+		BundleGraph.Requirements requirements = graph.resolve("x", "a,missing",
+				"p.missing,p.optional;resolution:=optional");
+		assertEquals(2, requirements.getProblems().size());
+		assertEquals("[a]", graph.getClosure(requirements).toString());
+	}
+
+	public void testVisibleBundlesFollowReexports() {
+		addBundle("a", "b;visibility:=reexport,c", null, null);
+		addBundle("b", "d;visibility:=reexport", null, null);
+		addBundle("c", "e", null, null);
+		addBundle("d", null, null, null);
+		addBundle("e", null, null, null);
+		BundleGraph graph = build();
+
+		BundleGraph.Requirements requirements = graph.resolve("x", "a", null);
+		assertEquals("[a, b, d]", graph.getVisibleBundles(requirements).toString());
+		assertEquals("[a, b, c, d, e]", graph.getClosure(requirements).toString());
+	}
+
+	public void testVisibleBundlesKeepDeclarationOrder() {
+		addBundle("a", "b;visibility:=reexport", null, null);
+		addBundle("b", "a;visibility:=reexport", null, null);
+		addBundle("c", null, null, null);
+		BundleGraph graph = build();
+
+		// the re-export cycle ends, b follows its re-exporter
+		assertEquals("[c, a, b]", graph.getVisibleBundles(graph.resolve("x", "c,a", null)).toString());
+		assertEquals("[b, a, c]", graph.getVisibleBundles(graph.resolve("x", "b,c", null)).toString());
+	}
+
+	public void testExportersOfImportedPackagesAreVisible() {
+		addBundle("a", "b", "p", null);
+		addBundle("b", null, "q", null);
+		BundleGraph graph = build();
+
+		BundleGraph.Requirements requirements = graph.resolve("x", null, "p");
+		assertEquals("[a]", graph.getVisibleBundles(requirements).toString());
+		assertEquals("[a, b]", graph.getClosure(requirements).toString());
+	}
+
+	public void testFragmentsFollowVisibleHosts() {
+		addBundle("swt", null, "org.eclipse.swt", null);
+		addBundle("swt.win32", null, null, null);
+		addBundle("ui", "swt;visibility:=reexport", null, null);
+		fragmentHostLookup.put("swt", symbols.intern("swt.win32"));
+		BundleGraph graph = build();
+
+		assertEquals("[swt, swt.win32]", graph.getVisibleBundles(graph.resolve("x", null, "org.eclipse.swt")).toString());
+		assertEquals("[ui, swt, swt.win32]", graph.getVisibleBundles(graph.resolve("x", "ui", null)).toString());
+	}
+
+	private void addBundle(String symbolicName, String requireBundle, String exportPackage, String importPackage) {
+		Attributes attributes = new Attributes();
+		attributes.putValue(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+		if (requireBundle != null)
+			attributes.putValue(Constants.REQUIRE_BUNDLE, requireBundle);
+		if (exportPackage != null)
+			attributes.putValue(Constants.EXPORT_PACKAGE, exportPackage);
+		if (importPackage != null)
+			attributes.putValue(Constants.IMPORT_PACKAGE, importPackage);
+		File file = new File(symbolicName + "_1.0.jar");
+		bundles.add(BundleDescriptor.create(file, 0, 0, attributes));
+
+		int symbol = symbols.intern(symbolicName);
+		symbolicNameLookup.put(symbol, file);
+		if (exportPackage != null) {
+			for (String pkg : exportPackage.split(",")) {
+				exports.add(pkg, new Version("1.0"), symbolicName);
+			}
+		}
+	}
+
+	private BundleGraph build() {
+		return new BundleGraph(bundles, symbolicNameLookup, exports, fragmentHostLookup);
+	}
+
+	private static String closure(BundleGraph graph, String symbolicName) {
+		return graph.getClosure(graph.resolve("x", symbolicName, null)).toString();
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.osgi.framework.Constants;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class BundleIndexTest extends TestCase {
+
+	private File targetPlatform;
+
+	private File pluginFolder;
+
+	protected void setUp() throws Exception {
+		targetPlatform = File.createTempFile("index", "");
+		targetPlatform.delete();
+		pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatform);
+		pluginFolder.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(targetPlatform);
+	}
+
+	public void testRoundTrip() throws Exception {
+		TestBundles.writeJar(new File(pluginFolder, "a_1.0.jar"), "a", Constants.BUNDLE_VERSION, "1.0.0",
+				Constants.EXPORT_PACKAGE, "p;version=1.0");
+		TestBundles.writeJar(new File(pluginFolder, "b_2.0.jar"), "b;singleton:=true", Constants.REQUIRE_BUNDLE, "a");
+		TestBundles.write(new File(pluginFolder, "readme.txt"), new byte[] { 1 });
+
+		BundleIndex index = BundleIndex.load(targetPlatform, new SystemStreamLog());
+		assertEquals(2, index.update(pluginFolder).size());
+		index.store();
+		assertTrue(TargetPlatformLayout.getMetadataFile(targetPlatform, BundleIndex.INDEX_FILE).isFile());
+
+		// the jars can't be read anymore, their manifests have to come from the index
+		breakJar("a_1.0.jar");
+		breakJar("b_2.0.jar");
+		Map<String,BundleDescriptor> bundles = update();
+		assertEquals(2, bundles.size());
+		BundleDescriptor a = bundles.get("a_1.0.jar");
+		assertEquals(new File(pluginFolder, "a_1.0.jar"), a.getFile());
+		assertEquals("a", a.getHeader(Constants.BUNDLE_SYMBOLICNAME));
+		assertEquals("1.0.0", a.getHeader(Constants.BUNDLE_VERSION));
+		assertEquals("p;version=1.0", a.getHeader(Constants.EXPORT_PACKAGE));
+		assertNull(a.getHeader(Constants.REQUIRE_BUNDLE));
+		assertEquals("a", bundles.get("b_2.0.jar").getHeader(Constants.REQUIRE_BUNDLE));
+	}
+
+	public void testStaleStampsAreRead() throws Exception {
+		File a = TestBundles.writeJar(new File(pluginFolder, "a_1.0.jar"), "a");
+		File b = TestBundles.writeJar(new File(pluginFolder, "b_1.0.jar"), "b");
+		a.setLastModified(1200000000000L);
+		BundleIndex index = BundleIndex.load(targetPlatform, new SystemStreamLog());
+		index.update(pluginFolder);
+		index.store();
+
+		// rewritten with the same length, only the modification time tells
+		TestBundles.writeJar(a, "x");
+		a.setLastModified(1200000060000L);
+		assertTrue(b.delete());
+		TestBundles.writeJar(new File(pluginFolder, "c_1.0.jar"), "c");
+
+		Map<String,BundleDescriptor> bundles = update();
+		assertEquals(2, bundles.size());
+		assertEquals("x", bundles.get("a_1.0.jar").getHeader(Constants.BUNDLE_SYMBOLICNAME));
+		assertEquals("c", bundles.get("c_1.0.jar").getHeader(Constants.BUNDLE_SYMBOLICNAME));
+	}
+
+	public void testExplodedBundles() throws Exception {
+		File a = TestBundles.writeExploded(new File(pluginFolder, "a_1.0"), "a");
+		new File(pluginFolder, "no_manifest").mkdir();
+		File manifest = new File(a, "META-INF/MANIFEST.MF");
+		manifest.setLastModified(1200000000000L);
+		Map<String,BundleDescriptor> bundles = update();
+		assertEquals(1, bundles.size());
+		assertEquals(manifest.length(), bundles.get("a_1.0").getLength());
+
+		// the manifest stands for the directory
+		TestBundles.writeExploded(a, "x");
+		manifest.setLastModified(1200000060000L);
+		assertEquals("x", update().get("a_1.0").getHeader(Constants.BUNDLE_SYMBOLICNAME));
+	}
+
+	public void testCorruptIndexIsRebuilt() throws Exception {
+		TestBundles.writeJar(new File(pluginFolder, "a_1.0.jar"), "a");
+		File indexFile = TargetPlatformLayout.getMetadataFile(targetPlatform, BundleIndex.INDEX_FILE);
+		TestBundles.write(indexFile, new byte[] { 0x42, 0x49, 0x44, 0x58, 0, 0 });
+		assertEquals("a", update().get("a_1.0.jar").getHeader(Constants.BUNDLE_SYMBOLICNAME));
+
+		TestBundles.write(indexFile, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+		assertEquals("a", update().get("a_1.0.jar").getHeader(Constants.BUNDLE_SYMBOLICNAME));
+	}
+
+	/**
+	 * Loads and updates the index as a scan would, storing it again.
+	 */
+	private Map<String,BundleDescriptor> update() throws Exception {
+		BundleIndex index = BundleIndex.load(targetPlatform, new SystemStreamLog());
+		List<BundleDescriptor> bundles = index.update(pluginFolder);
+		index.store();
+		Map<String,BundleDescriptor> descriptors = new HashMap<String,BundleDescriptor>();
+		for (BundleDescriptor bundle : bundles) {
+			descriptors.put(bundle.getFile().getName(), bundle);
+		}
+		return descriptors;
+	}
+
+	/**
+	 * Overwrites a jar with garbage of the same length and modification time.
+	 */
+	private void breakJar(String name) throws Exception {
+		File jar = new File(pluginFolder, name);
+		long lastModified = jar.lastModified();
+		TestBundles.write(jar, new byte[(int) jar.length()]);
+		jar.setLastModified(lastModified);
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class BundleIndexerTest extends TestCase {
+
+	private File folder;
+
+	private File targetPlatform;
+
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("indexer").toFile();
+		targetPlatform = new File(folder, "tp");
+		targetPlatform.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		ArchivePool.getShared().closeIdle(new SystemStreamLog());
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testExtractedBundlesAreIndexed() throws Exception {
+		File pkg = new File(folder, "eclipse.zip");
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(pkg));
+		try {
+			TestBundles.put(out, "eclipse/plugins/a_1.0.jar", TestBundles.jar("a"));
+			TestBundles.put(out, "eclipse/plugins/b_1.0/META-INF/MANIFEST.MF", TestBundles.manifest("b"));
+			TestBundles.put(out, "eclipse/plugins/b_1.0/plugin.xml", "<plugin/>".getBytes("UTF-8"));
+			TestBundles.put(out, "eclipse/readme.txt", "readme".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+
+		BundleIndexer indexer = new BundleIndexer(targetPlatform, 1, new SystemStreamLog());
+		PackageExtractor extractor = new PackageExtractor(targetPlatform, 2, new SystemStreamLog());
+		extractor.setIndexer(indexer);
+		extractor.extract(pkg);
+		assertEquals(2, indexer.finish());
+
+		assertIndexed("a", "b");
+	}
+
+	public void testBundlesWithoutContentAreReadFromDisk() throws Exception {
+		File pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatform);
+		File a = TestBundles.writeJar(new File(pluginFolder, "a_1.0.jar"), "a");
+		File b = TestBundles.writeExploded(new File(pluginFolder, "b_1.0"), "b");
+		File broken = new File(pluginFolder, "c_1.0.jar");
+		TestBundles.write(broken, new byte[] { 1, 2, 3 });
+
+		BundleIndexer indexer = new BundleIndexer(targetPlatform, 1, new SystemStreamLog());
+		indexer.offer(a, null);
+		indexer.offer(b, null);
+		// unreadable bundles are left to the next scan
+		indexer.offer(broken, Files.readAllBytes(broken.toPath()));
+		assertEquals(2, indexer.finish());
+
+		assertTrue(broken.delete());
+		assertIndexed("a", "b");
+	}
+
+	private void assertIndexed(String... symbolicNames) throws IOException {
+		BundleIndex index = BundleIndex.load(targetPlatform, new SystemStreamLog());
+		List<BundleDescriptor> bundles = index.update(TargetPlatformLayout.getPluginFolder(targetPlatform));
+		assertEquals(0, index.getReadCount());
+		assertEquals(symbolicNames.length, bundles.size());
+		for (BundleDescriptor bundle : bundles) {
+			assertEquals(bundle.getFile().getName().substring(0, 1), bundle.getSymbolicName());
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class BundleLedgerTest extends TestCase {
+
+	private File targetPlatform;
+
+	private File pluginFolder;
+
+	protected void setUp() throws Exception {
+		targetPlatform = Files.createTempDirectory("tp").toFile();
+		pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatform);
+		pluginFolder.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(targetPlatform);
+	}
+
+	public void testRecordedEntriesMatchUntilReplaced() throws Exception {
+		File a = write("a_1.0.jar", "a", 1200000000000L);
+		File b = write("b_1.0.jar", "b", 1200000000000L);
+		BundleLedger.record(targetPlatform, Arrays.asList(a, b));
+
+		Map<String,BundleLedger.Entry> entries = BundleLedger.read(targetPlatform);
+		assertEquals("[a_1.0.jar, b_1.0.jar]", entries.keySet().toString());
+		assertTrue(entries.get("a_1.0.jar").matches(pluginFolder));
+		assertTrue(entries.get("b_1.0.jar").matches(pluginFolder));
+
+		// materialized from a package under the same name
+		write("a_1.0.jar", "a from the platform", 1200000000000L);
+		b.setLastModified(1200000060000L);
+		assertFalse(entries.get("a_1.0.jar").matches(pluginFolder));
+		assertFalse(entries.get("b_1.0.jar").matches(pluginFolder));
+		assertTrue(b.delete());
+		assertFalse(entries.get("b_1.0.jar").matches(pluginFolder));
+	}
+
+	public void testRecordingAgainTakesTheNewStamp() throws Exception {
+		File a = write("a_1.0.jar", "a", 1200000000000L);
+		BundleLedger.record(targetPlatform, Collections.singleton(a));
+		write("a_1.0.jar", "rebuilt", 1200000060000L);
+		BundleLedger.record(targetPlatform, Collections.singleton(a));
+
+		Map<String,BundleLedger.Entry> entries = BundleLedger.read(targetPlatform);
+		assertEquals(1, entries.size());
+		assertTrue(entries.get("a_1.0.jar").matches(pluginFolder));
+	}
+
+	public void testExplodedBundlesAreStampedByTheirManifest() throws Exception {
+		File bundle = new File(pluginFolder, "c_1.0");
+		File manifest = new File(bundle, "META-INF/MANIFEST.MF");
+		manifest.getParentFile().mkdirs();
+		Files.write(manifest.toPath(), "Manifest-Version: 1.0\n".getBytes("UTF-8"));
+		BundleLedger.record(targetPlatform, Collections.singleton(bundle));
+
+		BundleLedger.Entry entry = BundleLedger.read(targetPlatform).get("c_1.0");
+		assertTrue(entry.matches(pluginFolder));
+		manifest.setLastModified(manifest.lastModified() + 60000);
+		assertFalse(entry.matches(pluginFolder));
+	}
+
+	public void testEntriesOfOlderLedgersNeverMatch() throws Exception {
+		write("a_1.0.jar", "a", 1200000000000L);
+		File ledger = TargetPlatformLayout.getMetadataFile(targetPlatform, "ledger");
+		ledger.getParentFile().mkdirs();
+		Files.write(ledger.toPath(), "a_1.0.jar\nb_1.0.jar\tbroken\t1\n".getBytes("UTF-8"));
+
+		Map<String,BundleLedger.Entry> entries = BundleLedger.read(targetPlatform);
+		assertEquals("[a_1.0.jar, b_1.0.jar]", entries.keySet().toString());
+		assertFalse(entries.get("a_1.0.jar").matches(pluginFolder));
+		assertFalse(entries.get("b_1.0.jar").matches(pluginFolder));
+	}
+
+	public void testClear() throws Exception {
+		BundleLedger.record(targetPlatform, Collections.singleton(write("a_1.0.jar", "a", 1200000000000L)));
+		BundleLedger.clear(targetPlatform);
+		assertTrue(BundleLedger.read(targetPlatform).isEmpty());
+	}
+
+	private File write(String name, String content, long lastModified) throws IOException {
+		File file = new File(pluginFolder, name);
+		Files.write(file.toPath(), content.getBytes("UTF-8"));
+		file.setLastModified(lastModified);
+		return file;
+	}
+}
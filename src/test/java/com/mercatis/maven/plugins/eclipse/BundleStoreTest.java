@@ -0,0 +1,133 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class BundleStoreTest extends TestCase {
+
+	private final Log log = new SystemStreamLog();
+
+	private File folder;
+
+	private File targetPlatform;
+
+	private File pluginFolder;
+
+	private File source;
+
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("store").toFile();
+		targetPlatform = new File(folder, "tp");
+		pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatform);
+		pluginFolder.mkdirs();
+		source = new File(folder, "repository/a_1.0.jar");
+		source.getParentFile().mkdirs();
+		write(source, "content", 1200000000000L);
+	}
+
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testRebuiltIdenticalSourceIsDigestedOnce() throws Exception {
+		assertTrue(place(true, 1));
+
+		// rebuilt: same content, the stored file keeps the first modification time
+		write(source, "content", 1200000060000L);
+		assertFalse(place(true, 2));
+		assertFalse(place(true, 0));
+		assertFalse(place(false, 0));
+	}
+
+	public void testChangedSourceReplacesTarget() throws Exception {
+		assertTrue(place(true, 1));
+
+		write(source, "changed", 1200000060000L);
+		assertTrue(place(true, 2));
+		assertEquals("changed", read(new File(pluginFolder, source.getName())));
+		assertFalse(place(true, 0));
+	}
+
+	public void testRebuiltIdenticalSourceIsNotCopiedAgain() throws Exception {
+		DigestCache digests = DigestCache.load(targetPlatform, log);
+		assertTrue(BundleStore.copy(source, pluginFolder, true, digests));
+		assertEquals(0, digests.getDigestCount());
+
+		write(source, "content", 1200000060000L);
+		assertFalse(BundleStore.copy(source, pluginFolder, true, digests));
+		assertEquals(2, digests.getDigestCount());
+		digests.store();
+
+		digests = DigestCache.load(targetPlatform, log);
+		assertFalse(BundleStore.copy(source, pluginFolder, true, digests));
+		assertEquals(0, digests.getDigestCount());
+	}
+
+	public void testDigestCacheMergesRecordsOfConcurrentBuilds() throws Exception {
+		File other = new File(folder, "repository/b\t1.0.jar");
+		write(other, "other", 1200000000000L);
+		DigestCache first = DigestCache.load(targetPlatform, log);
+		DigestCache second = DigestCache.load(targetPlatform, log);
+		String digest = first.digest(source);
+		second.digest(other);
+		first.store();
+		second.store();
+
+		DigestCache merged = DigestCache.load(targetPlatform, log);
+		assertEquals(digest, merged.digest(source));
+		merged.digest(other);
+		assertEquals(0, merged.getDigestCount());
+
+		// gone files are dropped, changed ones digested again
+		assertTrue(other.delete());
+		write(source, "changed", 1200000060000L);
+		assertFalse(digest.equals(merged.digest(source)));
+		merged.store();
+		String records = read(TargetPlatformLayout.getMetadataFile(targetPlatform, "digests"));
+		assertEquals(1, records.split("\n").length);
+		assertTrue(records, records.startsWith(source.getAbsolutePath() + "\t7\t1200000060000\t"));
+	}
+
+	private boolean place(boolean compareDigest, int expectedDigests) throws IOException {
+		DigestCache digests = DigestCache.load(targetPlatform, log);
+		BundleStore store = new BundleStore(new File(folder, "store"), digests, log);
+		boolean changed = store.place(source, pluginFolder, compareDigest);
+		assertEquals(expectedDigests, digests.getDigestCount());
+		digests.store();
+		return changed;
+	}
+
+	private static void write(File file, String content, long lastModified) throws IOException {
+		Files.write(file.toPath(), content.getBytes("UTF-8"));
+		file.setLastModified(lastModified);
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+	}
+}
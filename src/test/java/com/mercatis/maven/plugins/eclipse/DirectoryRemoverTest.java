@@ -0,0 +1,75 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class DirectoryRemoverTest extends TestCase {
+
+	private File folder;
+
+	private File platform;
+
+	private DirectoryRemover remover;
+
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("remover").toFile();
+		platform = new File(folder, "platform");
+		TestBundles.write(new File(platform, "plugins/a/b.txt"), new byte[] { 1 });
+		remover = new DirectoryRemover(1, new SystemStreamLog());
+	}
+
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testMovedAsideTreeIsALeftover() throws Exception {
+		File trash = remover.moveAside(platform);
+		assertNotNull(trash);
+		assertFalse(platform.exists());
+		List<File> leftovers = remover.getLeftovers(platform);
+		assertEquals(1, leftovers.size());
+		assertEquals(trash.getName(), leftovers.get(0).getName());
+	}
+
+	public void testOtherSiblingsAreNoLeftovers() throws Exception {
+		new File(folder, "other").mkdirs();
+		new File(folder, ".other.trash-1").mkdirs();
+		assertTrue(remover.getLeftovers(platform).isEmpty());
+	}
+
+	public void testLeftoversAreRemoved() throws Exception {
+		File trash = remover.moveAside(platform);
+		platform.mkdirs();
+		assertEquals(1, remover.removeLeftovers(platform));
+		long deadline = System.currentTimeMillis() + 10000;
+		while (trash.exists() && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+		assertFalse(trash.exists());
+		assertTrue(platform.isDirectory());
+		assertTrue(remover.getLeftovers(platform).isEmpty());
+	}
+}
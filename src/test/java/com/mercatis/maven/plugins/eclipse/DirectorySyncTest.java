@@ -0,0 +1,115 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class DirectorySyncTest extends TestCase {
+
+	private File folder;
+
+	private File source;
+
+	private File target;
+
+	private DirectorySync sync;
+
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("sync").toFile();
+		source = new File(folder, "classes");
+		target = new File(folder, "plugins/a_1.0");
+		sync = new DirectorySync(new SystemStreamLog());
+	}
+
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testFirstSyncCopiesEverything() throws Exception {
+		write(new File(source, "a/A.class"), "A");
+		write(new File(source, "plugin.xml"), "<plugin/>");
+
+		assertTrue(sync.sync(source, target));
+		assertEquals(2, sync.getFilesCopied());
+		assertEquals(10, sync.getBytesCopied());
+		assertEquals("A", read(new File(target, "a/A.class")));
+		assertEquals(new File(source, "a/A.class").lastModified(), new File(target, "a/A.class").lastModified());
+	}
+
+	public void testUnchangedFilesAreNotCopiedAgain() throws Exception {
+		write(new File(source, "a/A.class"), "A");
+		sync.sync(source, target);
+
+		assertFalse(sync.sync(source, target));
+		assertEquals(1, sync.getFilesCopied());
+
+		File changed = new File(source, "a/A.class");
+		write(changed, "B");
+		changed.setLastModified(changed.lastModified() + 60000);
+		assertTrue(sync.sync(source, target));
+		assertEquals(2, sync.getFilesCopied());
+		assertEquals("B", read(new File(target, "a/A.class")));
+	}
+
+	public void testRemovedFilesAndEmptyDirectoriesAreDeleted() throws Exception {
+		write(new File(source, "a/A.class"), "A");
+		write(new File(source, "b/B.class"), "B");
+		sync.sync(source, target);
+
+		assertTrue(new File(source, "b/B.class").delete());
+		assertTrue(sync.sync(source, target));
+		assertEquals(1, sync.getFilesRemoved());
+		assertFalse(new File(target, "b").exists());
+		assertTrue(new File(target, "a/A.class").isFile());
+	}
+
+	public void testIncludedFilesReplaceSourceFiles() throws Exception {
+		write(new File(source, "META-INF/MANIFEST.MF"), "generated");
+		File manifest = new File(folder, "META-INF/MANIFEST.MF");
+		write(manifest, "Manifest-Version: 1.0\n");
+		sync.include(manifest, "META-INF/MANIFEST.MF");
+
+		sync.sync(source, target);
+		assertEquals("Manifest-Version: 1.0\n", read(new File(target, "META-INF/MANIFEST.MF")));
+	}
+
+	public void testMissingSourceEmptiesTarget() throws Exception {
+		write(new File(target, "stale.class"), "stale");
+
+		assertTrue(sync.sync(source, target));
+		assertTrue(target.isDirectory());
+		assertEquals(0, target.list().length);
+	}
+
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes("UTF-8"));
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+	}
+}
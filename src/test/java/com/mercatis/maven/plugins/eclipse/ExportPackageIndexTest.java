@@ -0,0 +1,117 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import junit.framework.TestCase;
+
+import org.eclipse.osgi.service.resolver.VersionRange;
+import org.osgi.framework.Version;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class ExportPackageIndexTest extends TestCase {
+
+	private ExportPackageIndex index;
+
+	protected void setUp() throws Exception {
+		index = new ExportPackageIndex(new SymbolTable());
+		// added out of order
+		index.add("org.example", new Version("1.5.0"), "b15");
+		index.add("org.example", new Version("1.0.0"), "b10");
+		index.add("org.example", new Version("2.0.0"), "b20");
+		index.add("org.example", new Version("1.5.0.qualifier"), "b15q");
+	}
+
+	public void testAnyVersionFindsHighest() {
+		assertEquals("b20", index.lookup("org.example", null));
+		assertEquals("b20", lookup("0.0.0"));
+	}
+
+	public void testMinimumOnly() {
+		assertEquals("b20", lookup("1.2"));
+		assertNull(lookup("2.0.1"));
+	}
+
+	public void testExcludedMaximum() {
+		assertEquals("b15q", lookup("[1.0,2.0)"));
+		assertEquals("b10", lookup("[1.0,1.5)"));
+	}
+
+	public void testIncludedMaximum() {
+		assertEquals("b20", lookup("[1.0,2.0]"));
+		assertEquals("b15", lookup("[1.0,1.5.0]"));
+	}
+
+	public void testMaximumBetweenExports() {
+		assertEquals("b15q", lookup("[1.0,1.7]"));
+		assertEquals("b15q", lookup("[1.0,1.7)"));
+	}
+
+	public void testExcludedMinimum() {
+		assertEquals("b15", lookup("(1.0,1.5.0]"));
+		assertNull(lookup("(1.0,1.5)"));
+		assertNull(lookup("(2.0,3.0)"));
+	}
+
+	public void testExactVersion() {
+		assertEquals("b10", lookup("[1.0,1.0]"));
+		assertNull(lookup("[1.1,1.1]"));
+	}
+
+	public void testDegenerateRangeMatchesNothing() {
+		// excludes its own minimum, so nothing can be in it
+		assertNull(lookup("(1.0,1.0]"));
+		assertNull(lookup("[1.0,1.0)"));
+	}
+
+	public void testRangeOutsideExports() {
+		assertNull(lookup("[0.1,0.9]"));
+		assertNull(lookup("[3.0,4.0)"));
+	}
+
+	public void testUnknownPackage() {
+		assertNull(index.lookup("org.unknown", null));
+		assertFalse(index.contains("org.unknown"));
+		assertTrue(index.contains("org.example"));
+	}
+
+	public void testSameVersionLastWins() {
+		index.add("org.example", new Version("1.0.0"), "other");
+		assertEquals("other", lookup("[1.0,1.0]"));
+	}
+
+	public void testSingleExport() {
+		index.add("org.single", new Version("1.0.0"), "single");
+		assertEquals("single", index.lookup("org.single", new VersionRange("[1.0,2.0)")));
+		assertNull(index.lookup("org.single", new VersionRange("(1.0,2.0)")));
+	}
+
+	public void testVersionAttributes() throws Exception {
+		HeaderTokenizer clause = new HeaderTokenizer("a;version=\"1.2.3\",b;specification-version=2,c");
+		assertTrue(clause.nextClause());
+		assertEquals(new Version("1.2.3"), ExportPackageIndex.getVersion(clause));
+		assertTrue(clause.nextClause());
+		assertEquals(new Version("2.0.0"), ExportPackageIndex.getVersion(clause));
+		assertTrue(clause.nextClause());
+		assertEquals(Version.emptyVersion, ExportPackageIndex.getVersion(clause));
+		assertNull(ExportPackageIndex.getVersionRange(clause));
+	}
+
+	private String lookup(String range) {
+		return index.lookup("org.example", new VersionRange(range));
+	}
+}
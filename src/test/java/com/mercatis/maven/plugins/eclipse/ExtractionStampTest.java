@@ -0,0 +1,116 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class ExtractionStampTest extends TestCase {
+
+	private static final long ENTRY_TIME = 1200000000000L;
+
+	private File folder;
+
+	private File targetPlatform;
+
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("stamp").toFile();
+		targetPlatform = new File(folder, "tp");
+		targetPlatform.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		ArchivePool.getShared().closeIdle(new SystemStreamLog());
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testRoundTrip() throws Exception {
+		assertNull(ExtractionStamp.read(targetPlatform, "a.zip"));
+		File pkg = writePackage("a.zip", "eclipse/readme.txt");
+		new ExtractionStamp(pkg.length(), pkg.lastModified(), Arrays.asList("eclipse/readme.txt", "eclipse/b.txt"))
+				.write(targetPlatform, "a.zip");
+
+		ExtractionStamp stamp = ExtractionStamp.read(targetPlatform, "a.zip");
+		assertTrue(stamp.matches(pkg));
+		assertEquals(pkg.lastModified(), stamp.getLastModified());
+		assertEquals("[eclipse/readme.txt, eclipse/b.txt]", stamp.getEntries().toString());
+
+		assertTrue(pkg.setLastModified(pkg.lastModified() - 60000));
+		assertFalse(stamp.matches(pkg));
+	}
+
+	public void testEntriesOfOtherPackagesAreNotStale() throws Exception {
+		new ExtractionStamp(1, 1, Arrays.asList("shared", "a", "dropped")).write(targetPlatform, "a.zip");
+		new ExtractionStamp(1, 1, Arrays.asList("shared", "b")).write(targetPlatform, "b.zip");
+
+		ExtractionStamp a = ExtractionStamp.read(targetPlatform, "a.zip");
+		assertEquals("[dropped]", a.getStaleEntries(targetPlatform, "a.zip", Arrays.asList("a")).toString());
+		assertEquals("[a, dropped]", a.getStaleEntries(targetPlatform, "a.zip", Collections.<String>emptyList()).toString());
+	}
+
+	public void testChangedPackageKeepsSharedEntries() throws Exception {
+		PackageExtractor extractor = new PackageExtractor(targetPlatform, 2, new SystemStreamLog());
+		File a = writePackage("a.zip", "eclipse/plugins/shared_1.0.jar", "eclipse/plugins/a_1.0.jar", "eclipse/a.txt");
+		File b = writePackage("b.zip", "eclipse/plugins/shared_1.0.jar", "eclipse/plugins/b_1.0.jar");
+		extract(extractor, a);
+		extract(extractor, b);
+
+		// the new version of a no longer ships the shared bundle nor a.txt
+		ExtractionStamp previous = ExtractionStamp.read(targetPlatform, "a.zip");
+		a = writePackage("a.zip", "eclipse/plugins/a_1.0.jar", "eclipse/plugins/a.test_1.0.jar");
+		assertFalse(previous.matches(a));
+		PackageExtractor.Result result = extractor.extract(a);
+		assertEquals(1, result.getWritten());
+		assertEquals(1, result.getSkipped());
+
+		assertEquals("[eclipse/a.txt]", previous.getStaleEntries(targetPlatform, "a.zip", result.getEntries()).toString());
+	}
+
+	private void extract(PackageExtractor extractor, File pkg) throws IOException {
+		PackageExtractor.Result result = extractor.extract(pkg);
+		new ExtractionStamp(pkg.length(), pkg.lastModified(), result.getEntries()).write(targetPlatform, pkg.getName());
+	}
+
+	private File writePackage(String fileName, String... entries) throws IOException {
+		File file = new File(folder, fileName);
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+		try {
+			for (String name : entries) {
+				ZipEntry entry = new ZipEntry(name);
+				entry.setTime(ENTRY_TIME);
+				out.putNextEntry(entry);
+				out.write(name.getBytes("UTF-8"));
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class FileLocksTest extends TestCase {
+
+	private File folder;
+
+	private ExecutorService executor;
+
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("locks").toFile();
+		executor = Executors.newCachedThreadPool();
+	}
+
+	protected void tearDown() throws Exception {
+		executor.shutdownNow();
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testLockIsReentrant() throws Exception {
+		File lockFile = FileLocks.getLockFile(folder, "a");
+		FileLocks.Lock outer = FileLocks.lock(lockFile);
+		FileLocks.Lock inner = FileLocks.lock(lockFile);
+		inner.close();
+		inner.close();
+		assertFalse(tryLockElsewhere(lockFile));
+		outer.close();
+		assertTrue(tryLockElsewhere(lockFile));
+		assertTrue(lockFile.isFile());
+	}
+
+	public void testSameLockFileExcludes() throws Exception {
+		File lockFile = FileLocks.getLockFile(folder, "a");
+		FileLocks.Lock lock = FileLocks.lock(lockFile);
+		try {
+			assertFalse(tryLockElsewhere(lockFile));
+			// another path to the same file is the same lock
+			assertFalse(tryLockElsewhere(new File(folder, "locks/../locks/a.lock")));
+		} finally {
+			lock.close();
+		}
+		assertTrue(tryLockElsewhere(lockFile));
+	}
+
+	public void testOtherLockFilesDontWait() throws Exception {
+		FileLocks.Lock lock = FileLocks.lock(FileLocks.getLockFile(folder, "a"));
+		try {
+			for (int i = 0; i < 200; i++) {
+				assertTrue(tryLockElsewhere(FileLocks.getLockFile(folder, "b" + i)));
+			}
+		} finally {
+			lock.close();
+		}
+	}
+
+	/**
+	 * Threads nesting a package lock and a repository lock of different
+	 * packages must never wait for each other.
+	 */
+	public void testNestedLocksOfDifferentPackages() throws Exception {
+		final File targetPlatform = new File(folder, "tp");
+		final File repository = new File(folder, "repository");
+		final AtomicInteger inside = new AtomicInteger();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (int t = 0; t < 8; t++) {
+			final String name = "package" + t + ".zip";
+			futures.add(executor.submit(new Callable<Object>() {
+
+				public Object call() throws IOException {
+					for (int i = 0; i < 200; i++) {
+						FileLocks.Lock outer = FileLocks.lockPackage(targetPlatform, name);
+						try {
+							FileLocks.Lock inner = FileLocks.lock(FileLocks.getLockFile(repository, name));
+							try {
+								inside.incrementAndGet();
+							} finally {
+								inner.close();
+							}
+						} finally {
+							outer.close();
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Object> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		assertEquals(8 * 200, inside.get());
+	}
+
+	public void testWaitingThreadGetsLockOnRelease() throws Exception {
+		final File lockFile = FileLocks.getLockFile(folder, "a");
+		FileLocks.Lock lock = FileLocks.lock(lockFile);
+		final CountDownLatch started = new CountDownLatch(1);
+		Future<Object> waiting = executor.submit(new Callable<Object>() {
+
+			public Object call() throws IOException {
+				started.countDown();
+				FileLocks.lock(lockFile).close();
+				return null;
+			}
+		});
+		started.await();
+		try {
+			waiting.get(200, TimeUnit.MILLISECONDS);
+			fail("Lock acquired while held by another thread");
+		} catch (TimeoutException ex) {
+			// expected
+		}
+		lock.close();
+		waiting.get(10, TimeUnit.SECONDS);
+	}
+
+	private boolean tryLockElsewhere(final File lockFile) throws Exception {
+		Future<Object> future = executor.submit(new Callable<Object>() {
+
+			public Object call() throws IOException {
+				FileLocks.lock(lockFile).close();
+				return null;
+			}
+		});
+		try {
+			future.get(200, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (TimeoutException ex) {
+			// keeps waiting, the lock is released at the latest by the caller
+			return false;
+		}
+	}
+}
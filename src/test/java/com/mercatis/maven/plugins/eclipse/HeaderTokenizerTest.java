@@ -0,0 +1,139 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.osgi.framework.BundleException;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class HeaderTokenizerTest extends TestCase {
+
+	private final HeaderTokenizer tokenizer = new HeaderTokenizer();
+
+	public void testClausesAndValues() throws Exception {
+		tokenizer.reset(" a.b ; c.d ;version=1.0 , e.f");
+		assertTrue(tokenizer.nextClause());
+		assertEquals(2, tokenizer.getValueCount());
+		assertEquals("a.b", tokenizer.getValue(0).toString());
+		assertEquals("c.d", tokenizer.getValue(1).toString());
+		assertEquals("1.0", tokenizer.getAttribute("version"));
+		assertTrue(tokenizer.nextClause());
+		assertEquals("[e.f]", values().toString());
+		assertNull(tokenizer.getAttribute("version"));
+		assertFalse(tokenizer.nextClause());
+	}
+
+	public void testQuotedCommasAndSemicolons() throws Exception {
+		tokenizer.reset("a;uses:=\"b,c;d\";version=\"[1.0,2.0)\",e;x-note=\"f;g\"");
+		assertTrue(tokenizer.nextClause());
+		assertEquals("[a]", values().toString());
+		assertEquals("b,c;d", tokenizer.getDirective("uses"));
+		assertEquals("[1.0,2.0)", tokenizer.getAttribute("version"));
+		assertTrue(tokenizer.nextClause());
+		assertEquals("[e]", values().toString());
+		assertEquals("f;g", tokenizer.getAttribute("x-note"));
+		assertFalse(tokenizer.nextClause());
+	}
+
+	public void testDirectivesAreNotAttributes() throws Exception {
+		tokenizer.reset("a;resolution:=optional;visibility=reexport");
+		assertTrue(tokenizer.nextClause());
+		assertEquals("optional", tokenizer.getDirective("resolution"));
+		assertNull(tokenizer.getAttribute("resolution"));
+		assertTrue(tokenizer.hasDirective("resolution", "optional"));
+		assertFalse(tokenizer.hasDirective("resolution", "mandatory"));
+		assertFalse(tokenizer.hasDirective("visibility", "reexport"));
+		assertEquals("reexport", tokenizer.getAttribute("visibility"));
+		assertNull(tokenizer.getDirective("visibility"));
+	}
+
+	public void testEscapesInQuotedStrings() throws Exception {
+		tokenizer.reset("a;x=\"say \\\"hi\\\", then \\\\ leave\";y = plain ");
+		assertTrue(tokenizer.nextClause());
+		assertEquals("say \"hi\", then \\ leave", tokenizer.getAttribute("x"));
+		assertEquals("plain", tokenizer.getAttribute("y"));
+		assertFalse(tokenizer.nextClause());
+	}
+
+	public void testLastOfEquallyNamedParametersWins() throws Exception {
+		tokenizer.reset("a;version=1.0;version=2.0");
+		assertTrue(tokenizer.nextClause());
+		assertEquals("2.0", tokenizer.getAttribute("version"));
+	}
+
+	public void testUnterminatedQuoteRunsToTheEnd() throws Exception {
+		tokenizer.reset("a;x=\"b,c");
+		assertTrue(tokenizer.nextClause());
+		assertEquals("b,c", tokenizer.getAttribute("x"));
+		assertFalse(tokenizer.nextClause());
+	}
+
+	public void testEmptyClausesAreSkipped() throws Exception {
+		tokenizer.reset(" , a,, ;,b ,");
+		assertTrue(tokenizer.nextClause());
+		assertEquals("[a]", values().toString());
+		assertTrue(tokenizer.nextClause());
+		assertEquals("[b]", values().toString());
+		assertFalse(tokenizer.nextClause());
+
+		assertFalse(tokenizer.reset(null).nextClause());
+		assertFalse(tokenizer.reset("").nextClause());
+	}
+
+	public void testParameterWithoutName() throws Exception {
+		assertInvalid("a;=1.0");
+		assertInvalid("a;:=optional");
+		assertInvalid("a;\"quoted\"");
+	}
+
+	public void testValuesAreViewsOfTheHeader() throws Exception {
+		tokenizer.reset("org.eclipse.core.runtime;bundle-version=\"3.4.0\"");
+		assertTrue(tokenizer.nextClause());
+		CharSequence value = tokenizer.getValue(0);
+		assertEquals(24, value.length());
+		assertEquals("eclipse", value.subSequence(4, 11).toString());
+		try {
+			tokenizer.getValue(1);
+			fail();
+		} catch (IndexOutOfBoundsException ex) {
+			// expected
+		}
+	}
+
+	private void assertInvalid(String header) {
+		tokenizer.reset(header);
+		try {
+			tokenizer.nextClause();
+			fail(header);
+		} catch (BundleException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().startsWith("Invalid manifest header, expected a name"));
+		}
+	}
+
+	private List<String> values() {
+		List<String> values = new ArrayList<String>();
+		for (int i = 0; i < tokenizer.getValueCount(); i++) {
+			values.add(tokenizer.getValue(i).toString());
+		}
+		return values;
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class ManifestReaderTest extends TestCase {
+
+	private static final String MANIFEST = "Manifest-Version: 1.0\r\nBundle-SymbolicName: a\r\n\r\n";
+
+	private File folder;
+
+	protected void setUp() throws Exception {
+		folder = File.createTempFile("manifest", "");
+		folder.delete();
+		folder.mkdir();
+	}
+
+	protected void tearDown() throws Exception {
+		ArchivePool.getShared().closeIdle(new SystemStreamLog());
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testDeflatedManifest() throws Exception {
+		byte[] jar = zip(ZipEntry.DEFLATED, "META-INF/MANIFEST.MF", null);
+		assertSymbolicName("a", ManifestReader.read(ByteBuffer.wrap(jar)));
+		assertSymbolicName("a", ManifestReader.read(write("a.jar", jar)));
+	}
+
+	public void testStoredManifestAfterOtherEntries() throws Exception {
+		byte[] jar = zip(ZipEntry.STORED, "meta-inf/manifest.mf", null, "plugin.xml", "about.html");
+		assertSymbolicName("a", ManifestReader.read(ByteBuffer.wrap(jar)));
+	}
+
+	public void testArchiveComment() throws Exception {
+		char[] comment = new char[1000];
+		Arrays.fill(comment, 'x');
+		byte[] jar = zip(ZipEntry.DEFLATED, "META-INF/MANIFEST.MF", new String(comment));
+		assertSymbolicName("a", ManifestReader.read(ByteBuffer.wrap(jar)));
+	}
+
+	public void testMissingManifest() throws Exception {
+		byte[] jar = zip(ZipEntry.DEFLATED, null, null, "plugin.xml");
+		assertNull(ManifestReader.read(ByteBuffer.wrap(jar)));
+		assertNull(ManifestReader.read(write("a.jar", jar)));
+	}
+
+	public void testZip64ArchiveIsHandedToJarFile() throws Exception {
+		// more entries than the end of central directory record can count
+		String[] names = new String[0x10000];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = Integer.toString(i, 36);
+		}
+		byte[] jar = zip(ZipEntry.STORED, "META-INF/MANIFEST.MF", null, names);
+		assertZipException("Zip64 archives are not supported", jar);
+		assertSymbolicName("a", ManifestReader.read(write("zip64.jar", jar)));
+	}
+
+	public void testMissingEndOfCentralDirectory() throws Exception {
+		byte[] jar = zip(ZipEntry.DEFLATED, "META-INF/MANIFEST.MF", null);
+		byte[] truncated = new byte[jar.length - 10];
+		System.arraycopy(jar, 0, truncated, 0, truncated.length);
+		assertZipException("No end of central directory record", truncated);
+		assertZipException("Not a zip archive", new byte[10]);
+		try {
+			ManifestReader.read(write("truncated.jar", truncated));
+			fail();
+		} catch (IOException ex) {
+			// neither reader understands it
+		}
+	}
+
+	public void testCentralDirectoryOutsideOfArchive() throws Exception {
+		byte[] jar = zip(ZipEntry.DEFLATED, "META-INF/MANIFEST.MF", null);
+		ByteBuffer buffer = ByteBuffer.wrap(jar).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(jar.length - 6, jar.length);
+		assertZipException("Invalid central directory", jar);
+	}
+
+	public void testCorruptCentralDirectoryEntry() throws Exception {
+		byte[] jar = zip(ZipEntry.DEFLATED, "META-INF/MANIFEST.MF", null);
+		ByteBuffer buffer = ByteBuffer.wrap(jar).order(ByteOrder.LITTLE_ENDIAN);
+		int directory = buffer.getInt(jar.length - 6);
+		buffer.putInt(directory, 0);
+		assertZipException("Invalid central directory entry", jar);
+	}
+
+	public void testEncryptedManifest() throws Exception {
+		byte[] jar = zip(ZipEntry.DEFLATED, "META-INF/MANIFEST.MF", null);
+		ByteBuffer buffer = ByteBuffer.wrap(jar).order(ByteOrder.LITTLE_ENDIAN);
+		int directory = buffer.getInt(jar.length - 6);
+		buffer.putShort(directory + 8, (short) (buffer.getShort(directory + 8) | 1));
+		assertZipException("Encrypted manifest", jar);
+	}
+
+	public void testExplodedBundle() throws Exception {
+		File bundle = new File(folder, "a_1.0");
+		assertNull(ManifestReader.readExploded(bundle));
+		TestBundles.write(new File(bundle, "META-INF/MANIFEST.MF"), MANIFEST.getBytes("UTF-8"));
+		assertSymbolicName("a", ManifestReader.readExploded(bundle));
+	}
+
+	private static void assertSymbolicName(String expected, Manifest manifest) {
+		assertNotNull(manifest);
+		assertEquals(expected, manifest.getMainAttributes().getValue("Bundle-SymbolicName"));
+	}
+
+	private static void assertZipException(String message, byte[] jar) throws IOException {
+		try {
+			ManifestReader.read(ByteBuffer.wrap(jar));
+			fail(message);
+		} catch (ZipException ex) {
+			assertEquals(message, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Writes an archive holding the manifest, if named, after empty entries
+	 * of the other names.
+	 */
+	private static byte[] zip(int method, String manifestName, String comment, String... names) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ZipOutputStream out = new ZipOutputStream(bytes);
+		try {
+			out.setMethod(method);
+			if (comment != null)
+				out.setComment(comment);
+			for (String name : names) {
+				putEntry(out, method, name, new byte[0]);
+			}
+			if (manifestName != null)
+				putEntry(out, method, manifestName, MANIFEST.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void putEntry(ZipOutputStream out, int method, String name, byte[] content) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		if (method == ZipEntry.STORED) {
+			// stored entries are written with their sizes up front
+			CRC32 crc = new CRC32();
+			crc.update(content);
+			entry.setSize(content.length);
+			entry.setCompressedSize(content.length);
+			entry.setCrc(crc.getValue());
+		}
+		out.putNextEntry(entry);
+		out.write(content);
+		out.closeEntry();
+	}
+
+	private File write(String name, byte[] content) throws IOException {
+		File file = new File(folder, name);
+		TestBundles.write(file, content);
+		return file;
+	}
+}
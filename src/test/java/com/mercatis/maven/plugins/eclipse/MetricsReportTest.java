@@ -0,0 +1,106 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class MetricsReportTest extends TestCase {
+
+	private File folder;
+
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("metrics").toFile();
+	}
+
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testPhasesAndCounters() throws Exception {
+		BuildMetrics metrics = new BuildMetrics("gatherDependencies");
+		metrics.phase("scan");
+		metrics.phase("resolve");
+		metrics.phase("scan");
+		metrics.count(BuildMetrics.BUNDLES_SCANNED, 3);
+		metrics.count(BuildMetrics.BUNDLES_SCANNED, 4);
+		metrics.count("a.first", 1);
+		assertEquals(-1, metrics.getMillis());
+		metrics.finish();
+
+		assertEquals("[scan, resolve]", metrics.getPhases().keySet().toString());
+		assertEquals("{a.first=1, bundles.scanned=7}", metrics.getCounters().toString());
+		long millis = metrics.getMillis();
+		assertTrue(millis >= 0);
+		metrics.finish();
+		assertEquals(millis, metrics.getMillis());
+	}
+
+	public void testReports() throws Exception {
+		MavenProject root = project("root", true);
+		MavenProject module = project("module\"quoted\"", false);
+		BuildMetrics first = new BuildMetrics("materializeTargetPlatform");
+		first.count(BuildMetrics.BYTES_EXTRACTED, 100);
+		MetricsReport.record(module, Arrays.asList(root, module), first, new SystemStreamLog());
+		BuildMetrics second = new BuildMetrics("gatherDependencies");
+		second.phase("scan");
+		second.count(BuildMetrics.BYTES_EXTRACTED, 20);
+		MetricsReport.record(module, Arrays.asList(root, module), second, new SystemStreamLog());
+
+		String report = read(new File(module.getBuild().getDirectory(), MetricsReport.PROJECT_REPORT));
+		assertTrue(report, report.contains("\"project\": \"g:module\\\"quoted\\\":jar:1\""));
+		assertTrue(report, report.contains("\"bytes.extracted\": 120"));
+		assertTrue(report, report.contains("{\"goal\": \"materializeTargetPlatform\""));
+		assertTrue(report, report.contains("{\"goal\": \"gatherDependencies\""));
+		assertTrue(report, report.contains("\"scan\": "));
+
+		// the reactor report goes to the execution root, not the module
+		assertFalse(new File(module.getBuild().getDirectory(), MetricsReport.REACTOR_REPORT).exists());
+		String reactor = read(new File(root.getBuild().getDirectory(), MetricsReport.REACTOR_REPORT));
+		assertTrue(reactor, reactor.contains("\"goals\": {"));
+		assertTrue(reactor, reactor.contains("\"materializeTargetPlatform\": "));
+		assertTrue(reactor, reactor.contains("\"project\": \"g:module\\\"quoted\\\":jar:1\""));
+	}
+
+	private MavenProject project(String artifactId, boolean executionRoot) {
+		Model model = new Model();
+		model.setGroupId("g");
+		model.setArtifactId(artifactId);
+		model.setVersion("1");
+		Build build = new Build();
+		build.setDirectory(new File(folder, artifactId.replace('"', '_') + "/target").getPath());
+		model.setBuild(build);
+		MavenProject project = new MavenProject(model);
+		project.setExecutionRoot(executionRoot);
+		return project;
+	}
+
+	private static String read(File file) throws Exception {
+		return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+	}
+}
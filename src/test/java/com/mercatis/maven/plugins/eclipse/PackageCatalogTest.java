@@ -0,0 +1,126 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class PackageCatalogTest extends TestCase {
+
+	private File folder;
+
+	private File targetPlatform;
+
+	private File pluginFolder;
+
+	private File pkg;
+
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("catalog").toFile();
+		targetPlatform = new File(folder, "tp");
+		pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatform);
+		pluginFolder.mkdirs();
+		pkg = new File(folder, "eclipse.zip");
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(pkg));
+		try {
+			TestBundles.put(out, "eclipse/plugins/a_1.0.jar", TestBundles.jar("a"));
+			TestBundles.put(out, "eclipse/plugins/b_1.0/META-INF/MANIFEST.MF", TestBundles.manifest("b"));
+			TestBundles.put(out, "eclipse/plugins/b_1.0/plugin.xml", "<plugin/>".getBytes("UTF-8"));
+			TestBundles.put(out, "eclipse/readme.txt", "readme".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		ArchivePool.getShared().closeIdle(new SystemStreamLog());
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testCataloguesWithoutExtracting() throws Exception {
+		PackageCatalog catalog = PackageCatalog.create(pkg, targetPlatform);
+		assertEquals(2, catalog.getBundles().size());
+		assertEquals("a", catalog.getBundles().get(0).getSymbolicName());
+		assertEquals("b", catalog.getBundles().get(1).getSymbolicName());
+		assertEquals(0, pluginFolder.list().length);
+	}
+
+	public void testWriteAndRead() throws Exception {
+		assertNull(PackageCatalog.read(targetPlatform, pkg.getName()));
+		String fingerprint = PackageCatalog.getFingerprint(targetPlatform);
+		PackageCatalog.create(pkg, targetPlatform).write(targetPlatform);
+		assertFalse(fingerprint.equals(PackageCatalog.getFingerprint(targetPlatform)));
+
+		PackageCatalog catalog = PackageCatalog.read(targetPlatform, pkg.getName());
+		assertNotNull(catalog);
+		assertTrue(catalog.matches(pkg));
+		assertEquals(2, catalog.getBundles().size());
+		assertEquals(new File(pluginFolder, "a_1.0.jar"), catalog.getBundles().get(0).getFile());
+		assertEquals("b", catalog.getBundles().get(1).getSymbolicName());
+
+		assertTrue(pkg.setLastModified(pkg.lastModified() - 10000));
+		assertFalse(catalog.matches(pkg));
+
+		PackageCatalog.delete(targetPlatform, pkg.getName());
+		assertNull(PackageCatalog.read(targetPlatform, pkg.getName()));
+	}
+
+	public void testAddMissingBundles() throws Exception {
+		PackageCatalog.create(pkg, targetPlatform).write(targetPlatform);
+		File a = new File(pluginFolder, "a_1.0.jar");
+		TestBundles.writeJar(a, "a");
+
+		List<BundleDescriptor> bundles = new ArrayList<BundleDescriptor>();
+		bundles.add(BundleDescriptor.create(a, a.length(), a.lastModified(), null));
+		assertEquals(1, PackageCatalog.addMissingBundles(targetPlatform, bundles));
+		assertEquals(2, bundles.size());
+		assertEquals("b", bundles.get(1).getSymbolicName());
+	}
+
+	public void testExtractMissingBundles() throws Exception {
+		PackageCatalog.create(pkg, targetPlatform).write(targetPlatform);
+		File a = new File(pluginFolder, "a_1.0.jar");
+		File b = new File(pluginFolder, "b_1.0");
+
+		assertEquals(1, PackageCatalog.extractMissingBundles(targetPlatform, Arrays.asList(b), new SystemStreamLog()));
+		assertTrue(new File(b, "META-INF/MANIFEST.MF").isFile());
+		assertTrue(new File(b, "plugin.xml").isFile());
+		assertFalse(a.exists());
+		assertFalse(new File(targetPlatform, "readme.txt").exists());
+
+		// bundles in the plugin folder already are left alone
+		assertEquals(1, PackageCatalog.extractMissingBundles(targetPlatform, Arrays.asList(a, b), new SystemStreamLog()));
+		assertTrue(a.isFile());
+		assertEquals(0, PackageCatalog.extractMissingBundles(targetPlatform, Arrays.asList(a, b), new SystemStreamLog()));
+
+		BundleIndex index = BundleIndex.load(targetPlatform, new SystemStreamLog());
+		assertEquals(2, index.update(pluginFolder).size());
+		assertEquals(0, index.getReadCount());
+	}
+}
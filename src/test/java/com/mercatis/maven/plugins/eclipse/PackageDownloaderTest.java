@@ -0,0 +1,238 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Downloads packages from an embedded HTTP server supporting range,
+ * <code>If-Range</code> and <code>If-Modified-Since</code> requests.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class PackageDownloaderTest extends TestCase {
+
+	private static final String NAME = "package.zip";
+
+	private static final long LAST_MODIFIED = 1200000000000L;
+
+	private HttpServer server;
+
+	private File repository;
+
+	private URL url;
+
+	/** the package the server currently serves */
+	private byte[] content;
+
+	private String etag;
+
+	/** the requests seen by the server, e.g. <code>GET bytes=100- "v1"</code> */
+	private final List<String> requests = new ArrayList<String>();
+
+	protected void setUp() throws Exception {
+		repository = Files.createTempDirectory("repository").toFile();
+		content = randomBytes(100000, 1);
+		etag = "\"v1\"";
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		server.start();
+		url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/" + NAME);
+	}
+
+	protected void tearDown() throws Exception {
+		server.stop(0);
+		FileUtils.deleteDirectory(repository);
+	}
+
+	public void testDownload() throws Exception {
+		PackageDownloader downloader = newDownloader();
+		File file = downloader.download(url);
+		assertTrue(Arrays.equals(content, Files.readAllBytes(file.toPath())));
+		assertEquals(LAST_MODIFIED, file.lastModified());
+		assertEquals(content.length, downloader.getBytesTransferred());
+		assertFalse(getPart().exists());
+		assertFalse(getValidator().exists());
+	}
+
+	public void testResume() throws Exception {
+		Files.write(getPart().toPath(), Arrays.copyOf(content, 40000));
+		Files.write(getValidator().toPath(), etag.getBytes("UTF-8"));
+
+		PackageDownloader downloader = newDownloader();
+		File file = downloader.download(url);
+		assertTrue(Arrays.equals(content, Files.readAllBytes(file.toPath())));
+		assertEquals(content.length - 40000, downloader.getBytesTransferred());
+		assertEquals("GET bytes=40000- " + etag, requests.get(0));
+	}
+
+	public void testChangedOnServer() throws Exception {
+		Files.write(getPart().toPath(), Arrays.copyOf(content, 40000));
+		Files.write(getValidator().toPath(), etag.getBytes("UTF-8"));
+		content = randomBytes(90000, 2);
+		etag = "\"v2\"";
+
+		PackageDownloader downloader = newDownloader();
+		File file = downloader.download(url);
+		// the server ignores the range of an outdated part and sends everything
+		assertTrue(Arrays.equals(content, Files.readAllBytes(file.toPath())));
+		assertEquals(content.length, downloader.getBytesTransferred());
+		assertFalse(getValidator().exists());
+	}
+
+	public void testPartWithoutValidatorIsNotResumed() throws Exception {
+		Files.write(getPart().toPath(), randomBytes(40000, 3));
+
+		File file = newDownloader().download(url);
+		assertTrue(Arrays.equals(content, Files.readAllBytes(file.toPath())));
+		assertEquals("GET - -", requests.get(0));
+	}
+
+	public void testNotModified() throws Exception {
+		File dest = new File(repository, NAME);
+		byte[] old = randomBytes(1000, 4);
+		Files.write(dest.toPath(), old);
+		dest.setLastModified(LAST_MODIFIED);
+		Files.write(getPart().toPath(), Arrays.copyOf(content, 40000));
+		Files.write(getValidator().toPath(), etag.getBytes("UTF-8"));
+
+		PackageDownloader downloader = newDownloader();
+		File file = downloader.download(url);
+		assertTrue(Arrays.equals(old, Files.readAllBytes(file.toPath())));
+		assertEquals(0, downloader.getBytesTransferred());
+		assertFalse(getPart().exists());
+		assertFalse(getValidator().exists());
+	}
+
+	public void testRangeNotSatisfiable() throws Exception {
+		// longer than the package, the server can't resume it
+		Files.write(getPart().toPath(), randomBytes(content.length + 10, 5));
+		Files.write(getValidator().toPath(), etag.getBytes("UTF-8"));
+
+		File file = newDownloader().download(url);
+		assertTrue(Arrays.equals(content, Files.readAllBytes(file.toPath())));
+		assertEquals(2, requests.size());
+		assertEquals("GET bytes=" + (content.length + 10) + "- " + etag, requests.get(0));
+		assertEquals("GET - -", requests.get(1));
+	}
+
+	public void testMissingPackageFails() throws Exception {
+		try {
+			newDownloader().download(new URL(url, "missing.zip"));
+			fail("Downloaded a missing package");
+		} catch (IOException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("404"));
+		}
+		assertEquals(PackageDownloader.ATTEMPTS, requests.size());
+	}
+
+	private PackageDownloader newDownloader() {
+		return new PackageDownloader(repository, 1, new SystemStreamLog());
+	}
+
+	private File getPart() {
+		return new File(repository, NAME + ".part");
+	}
+
+	private File getValidator() {
+		return new File(repository, NAME + ".part.validator");
+	}
+
+	private static byte[] randomBytes(int length, long seed) {
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static SimpleDateFormat getDateFormat() {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format;
+	}
+
+	private synchronized void serve(HttpExchange exchange) throws IOException {
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+		requests.add(exchange.getRequestMethod() + " " + (range != null ? range : "-")
+				+ " " + (ifRange != null ? ifRange : "-"));
+		try {
+			if (!exchange.getRequestURI().getPath().endsWith("/" + NAME)) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			exchange.getResponseHeaders().set("ETag", etag);
+			exchange.getResponseHeaders().set("Last-Modified", getDateFormat().format(new Date(LAST_MODIFIED)));
+			if (ifModifiedSince != null) {
+				try {
+					if (getDateFormat().parse(ifModifiedSince).getTime() >= LAST_MODIFIED) {
+						exchange.sendResponseHeaders(304, -1);
+						return;
+					}
+				} catch (java.text.ParseException ex) {
+					// not a date, the package is sent
+				}
+			}
+
+			int start = 0;
+			if (range != null && (ifRange == null || ifRange.equals(etag))) {
+				start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+				if (start >= content.length) {
+					exchange.getResponseHeaders().set("Content-Range", "bytes */" + content.length);
+					exchange.sendResponseHeaders(416, -1);
+					return;
+				}
+				exchange.getResponseHeaders().set("Content-Range",
+						"bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+				exchange.sendResponseHeaders(206, content.length - start);
+			} else {
+				exchange.sendResponseHeaders(200, content.length);
+			}
+			OutputStream out = exchange.getResponseBody();
+			out.write(content, start, content.length - start);
+			out.close();
+		} finally {
+			exchange.close();
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class PackageExtractorTest extends TestCase {
+
+	private static final long ENTRY_TIME = 1200000000000L;
+
+	private File folder;
+
+	private File destination;
+
+	private PackageExtractor extractor;
+
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("extract").toFile();
+		destination = new File(folder, "tp");
+		destination.mkdirs();
+		extractor = new PackageExtractor(destination, 2, new SystemStreamLog());
+	}
+
+	protected void tearDown() throws Exception {
+		ArchivePool.getShared().closeIdle(new SystemStreamLog());
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testExtract() throws Exception {
+		File pkg = writePackage("pkg.zip", "eclipse/readme.txt", "readme", "eclipse/plugins/a/META-INF/MANIFEST.MF",
+				"Manifest-Version: 1.0\n");
+
+		PackageExtractor.Result result = extractor.extract(pkg);
+		assertEquals(2, result.getWritten());
+		assertEquals(0, result.getSkipped());
+		assertEquals("readme", read("eclipse/readme.txt"));
+		assertEquals(ENTRY_TIME, new File(destination, "eclipse/readme.txt").lastModified());
+	}
+
+	public void testNewerFilesAreKeptWithoutChecksum() throws Exception {
+		File pkg = writePackage("pkg.zip", "readme.txt", "readme");
+		extractor.extract(pkg);
+
+		// same size, different content: a checksum would rewrite it
+		File file = new File(destination, "readme.txt");
+		write(file, "README");
+		file.setLastModified(ENTRY_TIME + 60000);
+
+		PackageExtractor.Result result = extractor.extract(pkg);
+		assertEquals(0, result.getWritten());
+		assertEquals(1, result.getSkipped());
+		assertEquals("README", read("readme.txt"));
+	}
+
+	public void testOlderIdenticalFilesAreKeptAndRestamped() throws Exception {
+		File pkg = writePackage("pkg.zip", "readme.txt", "readme");
+		extractor.extract(pkg);
+		File file = new File(destination, "readme.txt");
+		file.setLastModified(ENTRY_TIME - 60000);
+
+		PackageExtractor.Result result = extractor.extract(pkg);
+		assertEquals(1, result.getSkipped());
+		assertEquals(ENTRY_TIME, file.lastModified());
+	}
+
+	public void testOlderChangedFilesAreRewritten() throws Exception {
+		File pkg = writePackage("pkg.zip", "readme.txt", "readme");
+		extractor.extract(pkg);
+		File file = new File(destination, "readme.txt");
+		write(file, "README");
+		file.setLastModified(ENTRY_TIME - 60000);
+
+		PackageExtractor.Result result = extractor.extract(pkg);
+		assertEquals(1, result.getWritten());
+		assertEquals("readme", read("readme.txt"));
+	}
+
+	public void testEntriesOutsideOfTheDestinationAreRejected() throws Exception {
+		String[] names = { "../evil.txt", "eclipse/../../evil.txt", "/evil.txt", "..\\evil.txt" };
+		for (int i = 0; i < names.length; i++) {
+			File pkg = writePackage("slip" + i + ".zip", "eclipse/readme.txt", "readme", names[i], "evil");
+			try {
+				extractor.extract(pkg);
+				fail(names[i] + " has been extracted");
+			} catch (IOException ex) {
+				assertTrue(ex.getMessage(), ex.getMessage().startsWith("Illegal entry name"));
+			}
+			assertFalse(new File(folder, "evil.txt").exists());
+			// rejected before anything is written
+			assertFalse(new File(destination, "eclipse").exists());
+		}
+	}
+
+	public void testCheckName() throws Exception {
+		assertEquals("eclipse/plugins", PackageExtractor.checkName("eclipse/plugins/"));
+		assertEquals("eclipse/plugins/a", PackageExtractor.checkName("eclipse\\plugins\\a"));
+		assertEquals("eclipse/a..b/c", PackageExtractor.checkName("eclipse/a..b/c"));
+		assertEquals("eclipse/..a", PackageExtractor.checkName("eclipse/..a"));
+	}
+
+	public void testGetBundle() {
+		File pluginFolder = new File(destination, "plugins");
+		assertEquals(new File(pluginFolder, "a_1.0.jar"), PackageExtractor.getBundle(pluginFolder, new File(pluginFolder, "a_1.0.jar")));
+		assertEquals(new File(pluginFolder, "b_1.0"), PackageExtractor.getBundle(pluginFolder,
+				new File(pluginFolder, "b_1.0/META-INF/MANIFEST.MF")));
+		assertNull(PackageExtractor.getBundle(pluginFolder, new File(pluginFolder, "b_1.0/plugin.xml")));
+		assertNull(PackageExtractor.getBundle(pluginFolder, new File(destination, "readme.txt")));
+	}
+
+	private File writePackage(String fileName, String... entries) throws IOException {
+		File file = new File(folder, fileName);
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+		try {
+			for (int i = 0; i < entries.length; i += 2) {
+				ZipEntry entry = new ZipEntry(entries[i]);
+				entry.setTime(ENTRY_TIME);
+				out.putNextEntry(entry);
+				out.write(entries[i + 1].getBytes("UTF-8"));
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes("UTF-8"));
+	}
+
+	private String read(String name) throws IOException {
+		return new String(Files.readAllBytes(new File(destination, name).toPath()), "UTF-8");
+	}
+}
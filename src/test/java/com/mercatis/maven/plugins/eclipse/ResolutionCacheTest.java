@@ -0,0 +1,163 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.osgi.framework.Constants;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class ResolutionCacheTest extends TestCase {
+
+	private static final byte[] MANIFEST = "Manifest-Version: 1.0\nRequire-Bundle: a\n".getBytes();
+
+	private File targetPlatform;
+
+	private File pluginFolder;
+
+	private File bundle;
+
+	private Attributes attributes;
+
+	private ResolutionCache cache;
+
+	protected void setUp() throws Exception {
+		targetPlatform = Files.createTempDirectory("resolution").toFile();
+		pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatform);
+		bundle = new File(pluginFolder, "a_1.0.jar");
+		TestBundles.writeJar(bundle, "a", Constants.EXPORT_PACKAGE, "org.a", Constants.IMPORT_PACKAGE, "org.c");
+		bundle.setLastModified(1200000000000L);
+		attributes = new Manifest(new ByteArrayInputStream(MANIFEST)).getMainAttributes();
+		cache = new ResolutionCache(new File(targetPlatform, "target"), new SystemStreamLog());
+	}
+
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(targetPlatform);
+	}
+
+	public void testRoundTrip() throws Exception {
+		String key = ResolutionCache.getKey(MANIFEST, "full");
+		ResolutionCache.Resolution resolution = new ResolutionCache.Resolution();
+		resolution.addProblem("Bundle b is not available\nat all");
+		resolution.addBundle("a", bundle);
+		resolution.addClasspath("win32.win32.x86.en", Arrays.asList(bundle));
+		resolution.addClasspath("linux.gtk.x86_64.en", Collections.<File>emptyList());
+		cache.write(key, resolution, attributes, targetPlatform);
+
+		ResolutionCache.Resolution read = cache.read(key, targetPlatform);
+		assertNotNull(read);
+		assertEquals("[Bundle b is not available at all]", read.getProblems().toString());
+		assertEquals(bundle.getAbsoluteFile(), read.getBundles().get("a"));
+		assertEquals(Arrays.asList(bundle.getAbsoluteFile()), read.getClasspaths().get("win32.win32.x86.en"));
+		assertEquals(Collections.emptyList(), read.getClasspaths().get("linux.gtk.x86_64.en"));
+		assertNull(cache.read(ResolutionCache.getKey(MANIFEST, "minimal"), targetPlatform));
+	}
+
+	public void testKeyCoversManifestAndSettings() throws Exception {
+		String key = ResolutionCache.getKey(MANIFEST, "full", "linux");
+		assertEquals(key, ResolutionCache.getKey(MANIFEST, "full", "linux"));
+		assertFalse(key.equals(ResolutionCache.getKey("Require-Bundle: b\n".getBytes(), "full", "linux")));
+		assertFalse(key.equals(ResolutionCache.getKey(MANIFEST, "full", "win32")));
+	}
+
+	public void testUnrelatedBundleKeepsTheResolution() throws Exception {
+		write();
+		// e.g. installed by a sibling module
+		TestBundles.writeJar(new File(pluginFolder, "b_1.0.jar"), "b", Constants.EXPORT_PACKAGE, "org.b",
+				Constants.IMPORT_PACKAGE, "org.a");
+		assertNotNull(cache.read("key", targetPlatform));
+	}
+
+	public void testChangedBundleInvalidatesTheResolution() throws Exception {
+		write();
+		bundle.setLastModified(1200000060000L);
+		assertNull(cache.read("key", targetPlatform));
+	}
+
+	public void testNewProviderInvalidatesTheResolution() throws Exception {
+		write();
+		File exporter = new File(pluginFolder, "c_1.0.jar");
+		TestBundles.writeJar(exporter, "c", Constants.EXPORT_PACKAGE, "org.c");
+		assertNull(cache.read("key", targetPlatform));
+
+		write();
+		assertNotNull(cache.read("key", targetPlatform));
+		TestBundles.writeJar(new File(pluginFolder, "a.win32_1.0.jar"), "a.win32", Constants.FRAGMENT_HOST, "a");
+		assertNull(cache.read("key", targetPlatform));
+
+		write();
+		TestBundles.writeJar(new File(pluginFolder, "a_2.0.jar"), "a");
+		assertNull(cache.read("key", targetPlatform));
+
+		write();
+		assertTrue(exporter.delete());
+		assertNull(cache.read("key", targetPlatform));
+	}
+
+	public void testResolutionWithMissingBundleIsIgnored() throws Exception {
+		write();
+		assertNotNull(cache.read("key", targetPlatform));
+
+		assertTrue(bundle.delete());
+		assertNull(cache.read("key", targetPlatform));
+	}
+
+	public void testResolutionWithMissingBundleOfAnotherEnvironmentIsIgnored() throws Exception {
+		File fragment = new File(pluginFolder, "a.linux_1.0.jar");
+		TestBundles.writeJar(fragment, "a.linux", Constants.FRAGMENT_HOST, "a");
+		ResolutionCache.Resolution resolution = new ResolutionCache.Resolution();
+		resolution.addBundle("a", bundle);
+		resolution.addClasspath("win32.win32.x86.en", Arrays.asList(bundle));
+		resolution.addClasspath("linux.gtk.x86_64.en", Arrays.asList(bundle, fragment));
+		cache.write("key", resolution, attributes, targetPlatform);
+		assertNotNull(cache.read("key", targetPlatform));
+
+		assertTrue(fragment.delete());
+		assertNull(cache.read("key", targetPlatform));
+	}
+
+	public void testCorruptCacheIsIgnored() throws Exception {
+		assertNull(cache.read("key", targetPlatform));
+		File file = new File(targetPlatform, "target/" + ResolutionCache.CACHE_FILE);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), "key\nX\tsomething\n".getBytes("UTF-8"));
+		assertNull(cache.read("key", targetPlatform));
+		Files.write(file.toPath(), "key\nB\tno-separator\n".getBytes("UTF-8"));
+		assertNull(cache.read("key", targetPlatform));
+	}
+
+	/**
+	 * Caches the resolution of the manifest to bundle a.
+	 */
+	private void write() throws Exception {
+		ResolutionCache.Resolution resolution = new ResolutionCache.Resolution();
+		resolution.addBundle("a", bundle);
+		resolution.addClasspath("win32.win32.x86.en", Arrays.asList(bundle));
+		cache.write("key", resolution, attributes, targetPlatform);
+	}
+}
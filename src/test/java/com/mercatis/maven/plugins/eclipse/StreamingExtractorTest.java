@@ -0,0 +1,178 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.tools.tar.TarConstants;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarOutputStream;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class StreamingExtractorTest extends TestCase {
+
+	private static final long ENTRY_TIME = 1200000000000L;
+
+	private File folder;
+
+	private File destination;
+
+	private StreamingExtractor extractor;
+
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("stream").toFile();
+		destination = new File(folder, "tp");
+		destination.mkdirs();
+		extractor = new StreamingExtractor(destination, new SystemStreamLog());
+	}
+
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(folder);
+	}
+
+	public void testIsTar() {
+		assertTrue(StreamingExtractor.isTar("eclipse-SDK-3.4-linux-gtk.tar.gz"));
+		assertTrue(StreamingExtractor.isTar("ECLIPSE.TGZ"));
+		assertTrue(StreamingExtractor.isTar("eclipse.tar"));
+		assertFalse(StreamingExtractor.isTar("eclipse-SDK-3.4-win32.zip"));
+		assertFalse(StreamingExtractor.isTar("eclipse.gz"));
+	}
+
+	public void testTarGz() throws Exception {
+		byte[] pkg = gzip(tar("eclipse/", null, "eclipse/eclipse", "#!/bin/sh", "eclipse/readme.txt", "readme"));
+
+		PackageExtractor.Result result = extractor.extract("eclipse.tar.gz", new ByteArrayInputStream(pkg));
+		assertEquals("[eclipse/eclipse, eclipse/readme.txt]", result.getEntries().toString());
+		assertEquals(2, result.getWritten());
+		assertEquals(15, result.getBytes());
+		assertEquals("readme", read("eclipse/readme.txt"));
+		assertEquals(ENTRY_TIME, new File(destination, "eclipse/readme.txt").lastModified());
+		assertTrue(new File(destination, "eclipse/eclipse").canExecute());
+		assertFalse(new File(destination, "eclipse/readme.txt").canExecute());
+	}
+
+	public void testZipStream() throws Exception {
+		byte[] pkg = zip("eclipse/", null, "eclipse/readme.txt", "readme");
+
+		PackageExtractor.Result result = extractor.extract("eclipse.zip", new ByteArrayInputStream(pkg));
+		assertEquals("[eclipse/readme.txt]", result.getEntries().toString());
+		assertEquals("readme", read("eclipse/readme.txt"));
+	}
+
+	public void testNewerFilesAreKept() throws Exception {
+		byte[] pkg = zip("readme.txt", "readme", "other.txt", "other");
+		extractor.extract("eclipse.zip", new ByteArrayInputStream(pkg));
+		File readme = new File(destination, "readme.txt");
+		Files.write(readme.toPath(), "changed".getBytes("UTF-8"));
+		readme.setLastModified(ENTRY_TIME + 60000);
+		new File(destination, "other.txt").setLastModified(ENTRY_TIME - 60000);
+
+		PackageExtractor.Result result = extractor.extract("eclipse.zip", new ByteArrayInputStream(pkg));
+		assertEquals(1, result.getWritten());
+		assertEquals(1, result.getSkipped());
+		assertEquals("changed", read("readme.txt"));
+	}
+
+	public void testEntriesOutsideOfTheDestinationAreRejected() throws Exception {
+		assertRejected("eclipse.zip", zip("../evil.txt", "evil"));
+		assertRejected("eclipse.zip", zip("eclipse/../../evil.txt", "evil"));
+		assertRejected("eclipse.tar.gz", gzip(tar("../evil.txt", "evil")));
+		assertRejected("eclipse.tar", tar("eclipse/../../evil.txt", "evil"));
+	}
+
+	private void assertRejected(String packageName, byte[] pkg) {
+		try {
+			extractor.extract(packageName, new ByteArrayInputStream(pkg));
+			fail(packageName + " has been extracted");
+		} catch (IOException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().startsWith("Illegal entry name"));
+		}
+		assertFalse(new File(folder, "evil.txt").exists());
+	}
+
+	/**
+	 * @param entries
+	 *            names and contents, a <code>null</code> content makes a
+	 *            directory
+	 */
+	private static byte[] tar(String... entries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TarOutputStream out = new TarOutputStream(bytes);
+		try {
+			for (int i = 0; i < entries.length; i += 2) {
+				byte[] content = entries[i + 1] != null ? entries[i + 1].getBytes("UTF-8") : null;
+				TarEntry entry = content != null ? new TarEntry(entries[i]) : new TarEntry(entries[i], TarConstants.LF_DIR);
+				entry.setModTime(ENTRY_TIME);
+				if (content != null) {
+					entry.setSize(content.length);
+					entry.setMode(content.length > 0 && content[0] == '#' ? 0100755 : 0100644);
+				}
+				out.putNextEntry(entry);
+				if (content != null)
+					out.write(content);
+				out.closeEntry();
+			}
+		} finally {
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] gzip(byte[] content) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] zip(String... entries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ZipOutputStream out = new ZipOutputStream(bytes);
+		try {
+			for (int i = 0; i < entries.length; i += 2) {
+				ZipEntry entry = new ZipEntry(entries[i]);
+				entry.setTime(ENTRY_TIME);
+				out.putNextEntry(entry);
+				if (entries[i + 1] != null)
+					out.write(entries[i + 1].getBytes("UTF-8"));
+			}
+		} finally {
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private String read(String name) throws IOException {
+		return new String(Files.readAllBytes(new File(destination, name).toPath()), "UTF-8");
+	}
+}
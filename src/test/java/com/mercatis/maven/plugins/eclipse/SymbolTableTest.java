@@ -0,0 +1,109 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class SymbolTableTest extends TestCase {
+
+	private final SymbolTable symbols = new SymbolTable();
+
+	public void testInternIsStable() {
+		int runtime = symbols.intern("org.eclipse.core.runtime");
+		int resources = symbols.intern("org.eclipse.core.resources");
+		assertTrue(runtime != resources);
+		assertEquals(runtime, symbols.intern(new StringBuilder("org.eclipse.core.runtime")));
+		assertEquals(runtime, symbols.lookup("org.eclipse.core.runtime"));
+		assertEquals("org.eclipse.core.runtime", symbols.getName(runtime));
+		assertEquals("org.eclipse.core.resources", symbols.getName(resources));
+	}
+
+	public void testPrefixesShareIds() {
+		int runtime = symbols.intern("org.eclipse.core.runtime");
+		// org, org.eclipse, org.eclipse.core and the name itself
+		assertEquals(4, symbols.size());
+		int core = symbols.lookup("org.eclipse.core");
+		assertTrue(core >= 0 && core != runtime);
+		assertEquals(core, symbols.intern("org.eclipse.core"));
+		assertEquals(4, symbols.size());
+		assertEquals("org.eclipse.core", symbols.getName(core));
+	}
+
+	public void testUnknownNames() {
+		symbols.intern("org.eclipse.core");
+		assertEquals(-1, symbols.lookup("org.eclipse.ui"));
+		assertEquals(-1, symbols.lookup("org.eclipse.core.runtime"));
+		assertEquals(-1, symbols.lookup("eclipse"));
+		assertEquals(-1, symbols.lookup(null));
+		try {
+			symbols.getName(symbols.size());
+			fail();
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testEmptySegments() {
+		String[] names = { "", "a..b", ".a", "a.", "." };
+		int[] ids = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			ids[i] = symbols.intern(names[i]);
+		}
+		for (int i = 0; i < names.length; i++) {
+			assertEquals(names[i], symbols.getName(ids[i]));
+			assertEquals(ids[i], symbols.lookup(names[i]));
+		}
+	}
+
+	public void testManyNamesGrowTheTables() {
+		int[] ids = new int[5000];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = symbols.intern("org.example.segment" + (i % 97) + ".bundle" + i);
+		}
+		for (int i = 0; i < ids.length; i++) {
+			String name = "org.example.segment" + (i % 97) + ".bundle" + i;
+			assertEquals(name, symbols.getName(ids[i]));
+			assertEquals(ids[i], symbols.lookup(name));
+		}
+		assertEquals(2 + 97 + ids.length, symbols.size());
+	}
+
+	public void testSymbolMap() {
+		SymbolMap<String> map = new SymbolMap<String>(symbols);
+		map.put("org.eclipse.core.runtime", "runtime");
+		assertEquals("runtime", map.get("org.eclipse.core.runtime"));
+		assertTrue(map.containsKey("org.eclipse.core.runtime"));
+		assertNull(map.get("org.eclipse.core"));
+		assertNull(map.get("org.eclipse.ui"));
+		assertNull(map.get(-1));
+		assertEquals(1, map.size());
+
+		int far = symbols.intern("org.example.many.segments.to.grow.beyond.the.initial.capacity");
+		for (int i = 0; i < 100; i++) {
+			symbols.intern("org.example.n" + i);
+		}
+		int last = symbols.intern("org.example.last");
+		map.put(last, "last");
+		map.put(far, "far");
+		map.put(far, "replaced");
+		assertEquals("last", map.get(last));
+		assertEquals("replaced", map.get(far));
+		assertEquals(3, map.size());
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.osgi.framework.Constants;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class TargetEnvironmentTest extends TestCase {
+
+	private static final TargetEnvironment LINUX = new TargetEnvironment("linux", "gtk", "x86_64", "en");
+
+	private static final TargetEnvironment LINUX_32 = new TargetEnvironment("linux", "gtk", "x86", "en");
+
+	private File targetPlatform;
+
+	private File pluginFolder;
+
+	protected void setUp() throws Exception {
+		targetPlatform = Files.createTempDirectory("environments").toFile();
+		pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatform);
+		pluginFolder.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(targetPlatform);
+	}
+
+	public void testPlatformFilterDictionary() {
+		Dictionary<String,String> dictionary = LINUX.getPlatformFilterDictionary();
+		assertEquals("linux", dictionary.get("osgi.os"));
+		assertEquals("gtk", dictionary.get("osgi.ws"));
+		assertEquals("x86_64", dictionary.get("osgi.arch"));
+		assertEquals("en", dictionary.get("osgi.nl"));
+
+		// unset properties are left out instead of matching as null
+		TargetEnvironment configured = new TargetEnvironment();
+		assertEquals(1, configured.getPlatformFilterDictionary().size());
+		assertEquals(LINUX, new TargetEnvironment("linux", "gtk", "x86_64", "en"));
+		assertFalse(LINUX.equals(LINUX_32));
+	}
+
+	public void testFragmentsAreMatchedAgainstEveryEnvironment() throws Exception {
+		writeBundle("swt", null, null);
+		writeBundle("swt.win32.x86", "(& (osgi.os=win32) (osgi.ws=win32) (osgi.arch=x86))", "swt");
+		writeBundle("swt.gtk.linux.x86_64", "(& (osgi.os=linux) (osgi.ws=gtk) (osgi.arch=x86_64))", "swt");
+		writeBundle("swt.gtk.linux.x86", "(& (osgi.os=linux) (osgi.ws=gtk) (osgi.arch=x86))", "swt");
+
+		List<TargetEnvironment> environments = Arrays.asList(TargetEnvironment.DEFAULT, LINUX, LINUX_32);
+		TargetPlatformModel model = TargetPlatformModel.scan(targetPlatform, environments, 1, new BuildMetrics("test"),
+				new SystemStreamLog());
+		assertSame(model.getBundleGraph(), model.getBundleGraph(TargetEnvironment.DEFAULT));
+		assertClosure(model.getBundleGraph(TargetEnvironment.DEFAULT), "swt.win32.x86");
+		assertClosure(model.getBundleGraph(LINUX), "swt.gtk.linux.x86_64");
+		assertClosure(model.getBundleGraph(LINUX_32), "swt.gtk.linux.x86");
+	}
+
+	public void testFragmentIsOnlyOnTheClasspathOfItsEnvironment() throws Exception {
+		writeBundle("swt", null, null);
+		writeBundle("swt.gtk.linux.x86_64", "(& (osgi.os=linux) (osgi.ws=gtk) (osgi.arch=x86_64))", "swt");
+
+		List<TargetEnvironment> environments = Arrays.asList(TargetEnvironment.DEFAULT, LINUX, LINUX_32);
+		BuildMetrics metrics = new BuildMetrics("test");
+		TargetPlatformModel model = TargetPlatformModel.scan(targetPlatform, environments, 1, metrics, new SystemStreamLog());
+		Attributes attributes = new Attributes();
+		attributes.putValue(Constants.BUNDLE_SYMBOLICNAME, "x");
+		attributes.putValue(Constants.IMPORT_PACKAGE, "org.eclipse.swt");
+		ResolutionCache.Resolution resolution = GatherDependencies.resolve(model, environments, "full", attributes,
+				metrics, new SystemStreamLog());
+
+		File swt = new File(pluginFolder, "swt_3.4.0.jar");
+		File fragment = new File(pluginFolder, "swt.gtk.linux.x86_64_3.4.0.jar");
+		Map<String,List<File>> classpaths = resolution.getClasspaths();
+		assertEquals(Arrays.asList("win32.win32.x86.en", "linux.gtk.x86_64.en", "linux.gtk.x86.en"),
+				new ArrayList<String>(classpaths.keySet()));
+		assertEquals(Arrays.asList(swt), classpaths.get("win32.win32.x86.en"));
+		assertEquals(2, classpaths.get("linux.gtk.x86_64.en").size());
+		assertTrue(classpaths.get("linux.gtk.x86_64.en").contains(fragment));
+		assertEquals(Arrays.asList(swt), classpaths.get("linux.gtk.x86.en"));
+		// the project is compiled against the first environment
+		assertEquals(Arrays.asList(swt), new ArrayList<File>(resolution.getBundles().values()));
+	}
+
+	/**
+	 * Checks a bundle importing swt gets exactly the given fragment along
+	 * with the host.
+	 */
+	private static void assertClosure(BundleGraph graph, String fragment) {
+		List<String> closure = graph.getClosure(graph.resolve("x", null, "org.eclipse.swt"));
+		assertEquals(2, closure.size());
+		assertTrue(closure.contains("swt"));
+		assertTrue(closure.toString(), closure.contains(fragment));
+		// the fragments for other environments aren't part of the graph at all
+		assertEquals(2, graph.size());
+		assertNotNull(graph.getFile(fragment));
+	}
+
+	private void writeBundle(String symbolicName, String platformFilter, String host) throws Exception {
+		File file = new File(pluginFolder, symbolicName + "_3.4.0.jar");
+		if (host == null)
+			TestBundles.writeJar(file, symbolicName, Constants.EXPORT_PACKAGE, "org.eclipse.swt");
+		else
+			TestBundles.writeJar(file, symbolicName, Constants.FRAGMENT_HOST, host, BundleDescriptor.PLATFORM_FILTER,
+					platformFilter);
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class TargetPlatformCacheTest extends TestCase {
+
+	private static final List<TargetEnvironment> ENVIRONMENTS = Collections.singletonList(TargetEnvironment.DEFAULT);
+
+	private File targetPlatform;
+
+	private File pluginFolder;
+
+	protected void setUp() throws Exception {
+		targetPlatform = Files.createTempDirectory("cache").toFile();
+		pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatform);
+		TestBundles.writeJar(new File(pluginFolder, "a_1.0.jar"), "a");
+	}
+
+	protected void tearDown() throws Exception {
+		TargetPlatformCache.invalidate(targetPlatform);
+		FileUtils.deleteDirectory(targetPlatform);
+	}
+
+	public void testOnlyTheScanningModuleRecordsTheScan() throws Exception {
+		BuildMetrics first = new BuildMetrics("first");
+		TargetPlatformModel model = TargetPlatformCache.get(targetPlatform, ENVIRONMENTS, 1, first, new SystemStreamLog());
+		first.finish();
+		assertTrue(first.getPhases().containsKey("scan"));
+		assertEquals(Long.valueOf(1), first.getCounters().get(BuildMetrics.BUNDLES_SCANNED));
+
+		BuildMetrics second = new BuildMetrics("second");
+		assertSame(model, TargetPlatformCache.get(targetPlatform, ENVIRONMENTS, 1, second, new SystemStreamLog()));
+		second.finish();
+		assertFalse(second.getPhases().containsKey("scan"));
+		assertNull(second.getCounters().get(BuildMetrics.BUNDLES_SCANNED));
+
+		TestBundles.writeJar(new File(pluginFolder, "b_1.0.jar"), "b");
+		BuildMetrics third = new BuildMetrics("third");
+		assertNotSame(model, TargetPlatformCache.get(targetPlatform, ENVIRONMENTS, 1, third, new SystemStreamLog()));
+		assertEquals(Long.valueOf(2), third.getCounters().get(BuildMetrics.BUNDLES_SCANNED));
+	}
+
+	public void testOwnScanIsUsedWhileThePlatformKeepsChanging() throws Exception {
+		// a concurrent module installing a bundle during every scan
+		SystemStreamLog log = new SystemStreamLog() {
+
+			private int installed;
+
+			public boolean isDebugEnabled() {
+				return true;
+			}
+
+			public void debug(CharSequence content) {
+				if (content.toString().startsWith("Compiled ")) {
+					try {
+						TestBundles.writeJar(new File(pluginFolder, "installed_" + installed++ + ".jar"), "installed");
+					} catch (IOException ex) {
+						throw new IllegalStateException(ex);
+					}
+				}
+			}
+		};
+
+		BuildMetrics metrics = new BuildMetrics("test");
+		TargetPlatformModel model = TargetPlatformCache.get(targetPlatform, ENVIRONMENTS, 1, metrics, log);
+		assertTrue(model.isStale(targetPlatform));
+		assertEquals(Long.valueOf(1), metrics.getCounters().get(BuildMetrics.BUNDLES_SCANNED));
+	}
+}
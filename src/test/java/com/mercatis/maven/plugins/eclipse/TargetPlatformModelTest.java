@@ -0,0 +1,106 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class TargetPlatformModelTest extends TestCase {
+
+	private static final List<TargetEnvironment> ENVIRONMENTS = Collections.singletonList(TargetEnvironment.DEFAULT);
+
+	private File targetPlatform;
+
+	private File pluginFolder;
+
+	protected void setUp() throws Exception {
+		targetPlatform = Files.createTempDirectory("tp").toFile();
+		pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatform);
+		pluginFolder.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(targetPlatform);
+	}
+
+	public void testMalformedExportVersionsAreSkipped() throws Exception {
+		writeBundle("a_1.0.jar", "a", "Export-Package", "good;version=1.0,bad;version=\"not.a.version\",other");
+		writeBundle("b_1.0.jar", "b", "Export-Package", "first,=nameless,second");
+		writeBundle("c_1.0.jar", "c", "Import-Package", "good;version=\"[1.0,oops)\",other");
+
+		TargetPlatformModel model = scan();
+		ExportPackageIndex exports = model.getExportPackageIndex();
+		assertEquals("a", exports.lookup("good", null));
+		assertEquals("a", exports.lookup("other", null));
+		assertFalse(exports.contains("bad"));
+		assertEquals("b", exports.lookup("first", null));
+		assertFalse(exports.contains("second"));
+
+		// c's broken import doesn't keep the scan or its other imports from resolving
+		BundleGraph graph = model.getBundleGraph();
+		assertEquals(3, graph.size());
+		List<String> closure = graph.getClosure(graph.resolve("x", "c", null));
+		Collections.sort(closure);
+		assertEquals("[a, c]", closure.toString());
+		assertEquals(1, graph.getProblems("c").size());
+	}
+
+	public void testModelIsStaleOnceBundleIsRewrittenInPlace() throws Exception {
+		File a = writeBundle("a_1.0.jar", "a", "Export-Package", "p");
+		writeBundle("b_1.0.jar", "b", "Export-Package", "q");
+		a.setLastModified(1200000000000L);
+		pluginFolder.setLastModified(1200000000000L);
+		TargetPlatformModel model = scan();
+		assertFalse(model.isStale(targetPlatform));
+
+		// same name, new content, the plugin folder itself doesn't change
+		writeBundle("a_1.0.jar", "a", "Export-Package", "p,r");
+		a.setLastModified(1200000060000L);
+		pluginFolder.setLastModified(1200000000000L);
+		assertTrue(model.isStale(targetPlatform));
+
+		TargetPlatformModel rescanned = scan();
+		assertFalse(rescanned.isStale(targetPlatform));
+		assertEquals("a", rescanned.getExportPackageIndex().lookup("r", null));
+	}
+
+	public void testModelIsStaleOnceBundleIsAdded() throws Exception {
+		writeBundle("a_1.0.jar", "a", null, null);
+		TargetPlatformModel model = scan();
+		writeBundle("b_1.0.jar", "b", null, null);
+		assertTrue(model.isStale(targetPlatform));
+	}
+
+	private TargetPlatformModel scan() throws Exception {
+		return TargetPlatformModel.scan(targetPlatform, ENVIRONMENTS, 1, new BuildMetrics("test"), new SystemStreamLog());
+	}
+
+	private File writeBundle(String fileName, String symbolicName, String header, String value) throws IOException {
+		return TestBundles.writeJar(new File(pluginFolder, fileName), symbolicName, "Bundle-Version", "1.0.0", header,
+				value);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+public class TargetPlatformWatcherTest extends TestCase {
+
+	private File targetPlatform;
+
+	private File pluginFolder;
+
+	private TargetPlatformWatcher watcher;
+
+	protected void setUp() throws Exception {
+		targetPlatform = Files.createTempDirectory("tp").toFile();
+		pluginFolder = TargetPlatformLayout.getPluginFolder(targetPlatform);
+		pluginFolder.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		if (watcher != null)
+			watcher.close();
+		FileUtils.deleteDirectory(targetPlatform);
+	}
+
+	public void testInitialIndexIsStored() throws Exception {
+		writeBundle("a_1.0.jar", "a", "1.0.0");
+		watcher = new TargetPlatformWatcher(targetPlatform, new SystemStreamLog());
+
+		assertEquals("1.0.0", loadIndex().get("a_1.0.jar").getHeader("Bundle-Version"));
+	}
+
+	public void testTouchedJarsAreReadAgain() throws Exception {
+		File a = writeBundle("a_1.0.jar", "a", "1.0.0");
+		File b = writeBundle("b_1.0.jar", "b", "1.0.0");
+		a.setLastModified(1200000000000L);
+		b.setLastModified(1200000000000L);
+		watcher = new TargetPlatformWatcher(targetPlatform, new SystemStreamLog());
+
+		// rewritten in place and merely touched
+		writeBundle("a_1.0.jar", "a", "1.0.1");
+		a.setLastModified(1200000060000L);
+		b.setLastModified(1200000060000L);
+		watcher.watch(2000, 200);
+
+		Map<String,BundleDescriptor> index = loadIndex();
+		assertEquals("1.0.1", index.get("a_1.0.jar").getHeader("Bundle-Version"));
+		assertEquals(1200000060000L, index.get("a_1.0.jar").getLastModified());
+		assertEquals(1200000060000L, index.get("b_1.0.jar").getLastModified());
+	}
+
+	public void testAddedAndRemovedJarsUpdateTheIndex() throws Exception {
+		File a = writeBundle("a_1.0.jar", "a", "1.0.0");
+		watcher = new TargetPlatformWatcher(targetPlatform, new SystemStreamLog());
+
+		writeBundle("b_1.0.jar", "b", "1.0.0");
+		assertTrue(a.delete());
+		watcher.watch(2000, 200);
+
+		Map<String,BundleDescriptor> index = loadIndex();
+		assertEquals(1, index.size());
+		assertEquals("b", index.get("b_1.0.jar").getSymbolicName());
+	}
+
+	/**
+	 * Loads the stored index as a build would and checks it is current
+	 * without reading a single manifest.
+	 */
+	private Map<String,BundleDescriptor> loadIndex() throws IOException {
+		BundleIndex index = BundleIndex.load(targetPlatform, new SystemStreamLog());
+		List<BundleDescriptor> bundles = index.update(pluginFolder);
+		assertEquals(0, index.getReadCount());
+		Map<String,BundleDescriptor> descriptors = new HashMap<String,BundleDescriptor>();
+		for (BundleDescriptor bundle : bundles) {
+			descriptors.put(bundle.getFile().getName(), bundle);
+		}
+		return descriptors;
+	}
+
+	private File writeBundle(String fileName, String symbolicName, String version) throws IOException {
+		return TestBundles.writeJar(new File(pluginFolder, fileName), symbolicName, "Bundle-Version", version);
+	}
+}
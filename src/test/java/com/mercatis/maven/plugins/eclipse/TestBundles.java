@@ -0,0 +1,104 @@
+/*
+ * Copyright 2008 mercatis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mercatis.maven.plugins.eclipse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Creates the bundles and packages the tests scan, extract and resolve.
+ *
+ * @author <a href="mailto:volker.fritzsch@mercatis.com">Volker Fritzsch</a>
+ */
+final class TestBundles {
+
+	private TestBundles() {
+	}
+
+	/**
+	 * @param headers
+	 *            further header names and values in pairs, a header without a
+	 *            name is left out
+	 */
+	static Manifest createManifest(String symbolicName, String... headers) {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.putValue("Bundle-SymbolicName", symbolicName);
+		for (int i = 0; i < headers.length; i += 2) {
+			if (headers[i] != null)
+				attributes.putValue(headers[i], headers[i + 1]);
+		}
+		return manifest;
+	}
+
+	/**
+	 * @return the content of a <code>META-INF/MANIFEST.MF</code>
+	 */
+	static byte[] manifest(String symbolicName, String... headers) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		createManifest(symbolicName, headers).write(bytes);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return a jar holding nothing but its manifest
+	 */
+	static byte[] jar(String symbolicName, String... headers) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new JarOutputStream(bytes, createManifest(symbolicName, headers)).close();
+		return bytes.toByteArray();
+	}
+
+	static File writeJar(File file, String symbolicName, String... headers) throws IOException {
+		write(file, jar(symbolicName, headers));
+		return file;
+	}
+
+	/**
+	 * Writes a bundle extracted into a directory.
+	 */
+	static File writeExploded(File directory, String symbolicName, String... headers) throws IOException {
+		write(new File(directory, JarFile.MANIFEST_NAME), manifest(symbolicName, headers));
+		return directory;
+	}
+
+	/**
+	 * Adds an entry to a package.
+	 */
+	static void put(ZipOutputStream out, String name, byte[] content) throws IOException {
+		out.putNextEntry(new ZipEntry(name));
+		out.write(content);
+	}
+
+	static void write(File file, byte[] content) throws IOException {
+		file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+	}
+}